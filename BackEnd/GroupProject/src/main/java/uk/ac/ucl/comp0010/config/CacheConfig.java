@@ -0,0 +1,65 @@
+package uk.ac.ucl.comp0010.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.boot.actuate.metrics.cache.CaffeineCacheMeterBinderProvider;
+import org.springframework.boot.autoconfigure.cache.CacheProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class enabling the caches declared on repositories, such as the module catalogue.
+ * <p>
+ * The caches are the bounded Caffeine caches set by {@code spring.cache.cache-names} and
+ * {@code spring.cache.caffeine.spec}, each wrapped in a {@link ModuleCatalogueCache} so cached
+ * modules are copied rather than shared and writes clear the cache once committed. Their hits,
+ * misses and evictions are reported as the {@code cache.*} metrics.
+ * </p>
+ */
+@Configuration
+@EnableCaching
+@EnableConfigurationProperties(CacheProperties.class)
+public class CacheConfig {
+
+  /**
+   * Creates the cache manager holding the configured caches.
+   *
+   * @param cacheProperties the configured cache names and Caffeine specification
+   * @return the cache manager
+   */
+  @Bean
+  public CaffeineCacheManager cacheManager(CacheProperties cacheProperties) {
+    CaffeineCacheManager cacheManager = new CaffeineCacheManager() {
+      @Override
+      protected org.springframework.cache.Cache adaptCaffeineCache(String name,
+          Cache<Object, Object> cache) {
+        return new ModuleCatalogueCache(super.adaptCaffeineCache(name, cache));
+      }
+    };
+    cacheManager.setCacheSpecification(cacheProperties.getCaffeine().getSpec());
+    cacheManager.setCacheNames(cacheProperties.getCacheNames());
+    return cacheManager;
+  }
+
+  /**
+   * Reports the statistics of the Caffeine cache behind each {@link ModuleCatalogueCache}.
+   *
+   * @return the provider of the cache meters
+   */
+  @Bean
+  public CacheMeterBinderProvider<ModuleCatalogueCache> moduleCatalogueCacheMeters() {
+    CaffeineCacheMeterBinderProvider caffeine = new CaffeineCacheMeterBinderProvider();
+    return new CacheMeterBinderProvider<>() {
+      @Override
+      public MeterBinder getMeterBinder(ModuleCatalogueCache cache, Iterable<Tag> tags) {
+        return caffeine.getMeterBinder((CaffeineCache) cache.getTarget(), tags);
+      }
+    };
+  }
+}
@@ -0,0 +1,109 @@
+package uk.ac.ucl.comp0010.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Set;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Lets the {@code server.compression.min-response-size} threshold apply to responses written by
+ * Jackson.
+ * <p>
+ * Tomcat only knows the size of a response it has buffered whole, but Jackson and Spring MVC flush
+ * the response once it is written, which sends the headers early and leaves every response to be
+ * compressed however small. Flushes of JSON, CBOR and Smile responses are ignored, so a response
+ * that fits in the buffer is sent with its length, and a larger one is sent as soon as the buffer
+ * fills, as before. Streamed responses such as the grade feed keep flushing each event.
+ * </p>
+ */
+@Component
+public class CompressionThresholdFilter extends OncePerRequestFilter {
+
+  private static final Set<String> BUFFERED_TYPES =
+      Set.of(MediaType.APPLICATION_JSON.toString(), MediaType.APPLICATION_CBOR.toString(),
+          "application/x-jackson-smile", "application/hal+json");
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+      FilterChain chain) throws ServletException, IOException {
+    chain.doFilter(request, new HttpServletResponseWrapper(response) {
+      private ServletOutputStream stream;
+
+      @Override
+      public ServletOutputStream getOutputStream() throws IOException {
+        if (stream == null) {
+          stream = new FlushIgnoringOutputStream(response);
+        }
+        return stream;
+      }
+
+      @Override
+      public void flushBuffer() throws IOException {
+        if (!buffered(getContentType())) {
+          super.flushBuffer();
+        }
+      }
+    });
+  }
+
+  private static boolean buffered(String contentType) {
+    if (contentType == null) {
+      return false;
+    }
+    int parameters = contentType.indexOf(';');
+    String type = parameters < 0 ? contentType : contentType.substring(0, parameters);
+    return BUFFERED_TYPES.contains(type.trim().toLowerCase(Locale.ROOT));
+  }
+
+  private static final class FlushIgnoringOutputStream extends ServletOutputStream {
+
+    private final HttpServletResponse response;
+    private final ServletOutputStream out;
+
+    FlushIgnoringOutputStream(HttpServletResponse response) throws IOException {
+      this.response = response;
+      this.out = response.getOutputStream();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (!buffered(response.getContentType())) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.close();
+    }
+
+    @Override
+    public boolean isReady() {
+      return out.isReady();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+      out.setWriteListener(listener);
+    }
+  }
+}
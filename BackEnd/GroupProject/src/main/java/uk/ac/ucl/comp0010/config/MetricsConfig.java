@@ -0,0 +1,154 @@
+package uk.ac.ucl.comp0010.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.http.Outcome;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.util.concurrent.Callable;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.InitializeCollectionEventListener;
+import org.hibernate.event.spi.PostLoadEventListener;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Configuration class recording how much database work each web request causes.
+ * <p>
+ * Request latency, repository call latency and connection pool usage are recorded by Spring Boot
+ * as {@code http.server.requests}, {@code spring.data.repository.invocations} and
+ * {@code hikaricp.connections.*}. On top of those, this counts the SQL statements Hibernate
+ * prepares, the entities it loads and the lazy collections it fetches while handling a request, and
+ * records each as a distribution tagged with the request's method, URI template and outcome. A
+ * lazily fetched collection that turns one query into hundreds shows up here.
+ * </p>
+ * <p>
+ * A request handled asynchronously, such as one returning a {@code StreamingResponseBody} or a
+ * {@code Callable}, is counted across its threads: the work of the task run on the async executor
+ * and of the first dispatch is counted apart and added to that of the dispatch completing the
+ * request, which records it once. Events sent through an {@code SseEmitter} are written by the
+ * feed's own threads and are not counted.
+ * </p>
+ */
+@Configuration
+public class MetricsConfig implements WebMvcConfigurer {
+
+  // what was counted for a request handled asynchronously, by its first dispatch and by its task
+  private static final String DISPATCH_ATTRIBUTE = RequestStatistics.class.getName() + ".DISPATCH";
+  private static final String TASK_ATTRIBUTE = RequestStatistics.class.getName() + ".TASK";
+
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * Constructs a MetricsConfig, registering the entity load and collection fetch listeners.
+   *
+   * @param meterRegistry the registry the per-request counts are recorded in
+   * @param entityManagerFactory the entity manager factory whose loads and fetches are counted
+   */
+  public MetricsConfig(MeterRegistry meterRegistry, EntityManagerFactory entityManagerFactory) {
+    this.meterRegistry = meterRegistry;
+    EventListenerRegistry listeners = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+        .getServiceRegistry().getService(EventListenerRegistry.class);
+    listeners.appendListeners(EventType.POST_LOAD,
+        (PostLoadEventListener) event -> RequestStatistics.entityLoaded());
+    listeners.appendListeners(EventType.INIT_COLLECTION,
+        (InitializeCollectionEventListener) event -> RequestStatistics.collectionFetched());
+  }
+
+  /**
+   * Counts every SQL statement Hibernate prepares, leaving the statement unchanged.
+   *
+   * @return the customizer installing the statement inspector
+   */
+  @Bean
+  public static HibernatePropertiesCustomizer statementCounter() {
+    return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR,
+        (StatementInspector) sql -> {
+          RequestStatistics.statementPrepared();
+          return sql;
+        });
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry.addInterceptor(new AsyncHandlerInterceptor() {
+      @Override
+      public boolean preHandle(HttpServletRequest request, HttpServletResponse response,
+          Object handler) {
+        RequestStatistics.start();
+        return true;
+      }
+
+      @Override
+      public void afterConcurrentHandlingStarted(HttpServletRequest request,
+          HttpServletResponse response, Object handler) {
+        // the request completes on another dispatch, which adds what was counted here
+        request.setAttribute(DISPATCH_ATTRIBUTE, RequestStatistics.stop());
+      }
+
+      @Override
+      public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+          Object handler, Exception ex) {
+        RequestStatistics statistics = RequestStatistics.stop();
+        if (statistics != null) {
+          statistics.add((RequestStatistics) request.getAttribute(DISPATCH_ATTRIBUTE));
+          statistics.add((RequestStatistics) request.getAttribute(TASK_ATTRIBUTE));
+          request.removeAttribute(DISPATCH_ATTRIBUTE);
+          request.removeAttribute(TASK_ATTRIBUTE);
+          record(request, response, ex, statistics);
+        }
+      }
+    });
+  }
+
+  @Override
+  public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+    configurer.registerCallableInterceptors(new CallableProcessingInterceptor() {
+      @Override
+      public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        RequestStatistics.start();
+      }
+
+      @Override
+      public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object result) {
+        // the task ends before the request is dispatched again to complete it
+        request.setAttribute(TASK_ATTRIBUTE, RequestStatistics.stop(),
+            RequestAttributes.SCOPE_REQUEST);
+      }
+    });
+  }
+
+  private void record(HttpServletRequest request, HttpServletResponse response, Exception ex,
+      RequestStatistics statistics) {
+    Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    Outcome outcome = ex != null ? Outcome.SERVER_ERROR : Outcome.forStatus(response.getStatus());
+    Tags tags = Tags.of("method", request.getMethod(), "uri",
+        uri == null ? "UNKNOWN" : uri.toString(), "outcome", outcome.name());
+    summary("http.server.requests.statements", "SQL statements prepared per request", tags)
+        .record(statistics.statements());
+    summary("http.server.requests.entities.loaded", "Entities loaded per request", tags)
+        .record(statistics.entitiesLoaded());
+    summary("http.server.requests.collections.fetched", "Lazy collections fetched per request",
+        tags).record(statistics.collectionsFetched());
+  }
+
+  private DistributionSummary summary(String name, String description, Tags tags) {
+    return DistributionSummary.builder(name).description(description).tags(tags)
+        .publishPercentileHistogram().maximumExpectedValue(10_000.0).register(meterRegistry);
+  }
+}
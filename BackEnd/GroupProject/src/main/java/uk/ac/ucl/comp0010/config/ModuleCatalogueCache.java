@@ -0,0 +1,133 @@
+package uk.ac.ucl.comp0010.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.ac.ucl.comp0010.model.Module;
+
+/**
+ * Keeps the cached module catalogue apart from the modules callers are handed, and in step with
+ * the database across concurrent writes.
+ * <p>
+ * Modules are entities anyone can change, so the cache stores its own copy of each module put in
+ * it and hands every reader a fresh copy; a caller changing a module it got from the cache changes
+ * nobody else's. A write clears the cache at once, for later reads in its own transaction, and
+ * again once its transaction ends, so modules read by other requests before it committed do not
+ * outlive it. A module loaded by a read that started before the latest clear is not stored, since
+ * it may hold the row as it was before the write.
+ * </p>
+ */
+final class ModuleCatalogueCache implements Cache {
+
+  private final Cache target;
+  // bumped on every clear; a read only stores what it loaded if no clear happened meanwhile
+  private long generation;
+  private final ThreadLocal<Long> missedAt = new ThreadLocal<>();
+
+  ModuleCatalogueCache(Cache target) {
+    this.target = target;
+  }
+
+  Cache getTarget() {
+    return target;
+  }
+
+  @Override
+  public String getName() {
+    return target.getName();
+  }
+
+  @Override
+  public Object getNativeCache() {
+    return target.getNativeCache();
+  }
+
+  @Override
+  public ValueWrapper get(Object key) {
+    ValueWrapper cached = target.get(key);
+    if (cached == null) {
+      synchronized (this) {
+        missedAt.set(generation);
+      }
+      return null;
+    }
+    return new SimpleValueWrapper(copy(cached.get()));
+  }
+
+  @Override
+  public <T> T get(Object key, Class<T> type) {
+    ValueWrapper cached = get(key);
+    return cached == null ? null : type.cast(cached.get());
+  }
+
+  @Override
+  public <T> T get(Object key, Callable<T> valueLoader) {
+    ValueWrapper cached = get(key);
+    if (cached != null) {
+      @SuppressWarnings("unchecked")
+      T value = (T) cached.get();
+      return value;
+    }
+    T value;
+    try {
+      value = valueLoader.call();
+    } catch (Exception e) {
+      throw new ValueRetrievalException(key, valueLoader, e);
+    }
+    put(key, value);
+    return value;
+  }
+
+  @Override
+  public void put(Object key, Object value) {
+    Long readAt = missedAt.get();
+    missedAt.remove();
+    synchronized (this) {
+      if (readAt != null && readAt == generation) {
+        target.put(key, copy(value));
+      }
+    }
+  }
+
+  @Override
+  public void evict(Object key) {
+    clear();
+  }
+
+  @Override
+  public void clear() {
+    invalidate();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCompletion(int status) {
+          invalidate();
+        }
+      });
+    }
+  }
+
+  @Override
+  public synchronized boolean invalidate() {
+    generation++;
+    return target.invalidate();
+  }
+
+  private static Object copy(Object value) {
+    if (value instanceof Module module) {
+      Module copy = new Module(module.getCode(), module.getName(), module.getMnc());
+      copy.setId(module.getId());
+      return copy;
+    }
+    if (value instanceof Iterable<?> values) {
+      List<Object> copies = new ArrayList<>();
+      values.forEach(element -> copies.add(copy(element)));
+      return copies;
+    }
+    return value;
+  }
+}
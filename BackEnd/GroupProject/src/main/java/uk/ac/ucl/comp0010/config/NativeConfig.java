@@ -0,0 +1,48 @@
+package uk.ac.ucl.comp0010.config;
+
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Registration;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.model.StudentGradeStats;
+import uk.ac.ucl.comp0010.repository.GradeListing;
+import uk.ac.ucl.comp0010.repository.ModuleStats;
+import uk.ac.ucl.comp0010.service.GradeColumns;
+import uk.ac.ucl.comp0010.service.GradeFeed;
+import uk.ac.ucl.comp0010.service.GradeIngestQueue;
+
+/**
+ * Configuration class registering what a GraalVM native image of the application needs at run
+ * time beyond what Spring AOT finds on its own.
+ * <p>
+ * Spring AOT registers the entities for Hibernate and the declared request and response types of
+ * the controllers for Jackson. Most responses are maps, though, so the entities, projections and
+ * records they hold are registered here for Jackson to bind. The libraries' own metadata, such as
+ * H2's and Caffeine's, comes from the GraalVM reachability metadata repository at build time.
+ * </p>
+ */
+@Configuration
+@ImportRuntimeHints(NativeConfig.Hints.class)
+public class NativeConfig {
+
+  /**
+   * The types Jackson reads or writes inside map responses and server-sent events.
+   */
+  static final Class<?>[] BOUND_TYPES = {Student.class, Grade.class, Module.class,
+      Registration.class, StudentGradeStats.class, GradeListing.class, ModuleStats.class,
+      GradeColumns.Comparison.class, GradeFeed.Change.class, GradeIngestQueue.Status.class};
+
+  static class Hints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+      new BindingReflectionHintsRegistrar().registerReflectionHints(hints.reflection(),
+          BOUND_TYPES);
+    }
+  }
+}
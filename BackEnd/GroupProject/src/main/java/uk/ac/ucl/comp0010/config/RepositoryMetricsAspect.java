@@ -0,0 +1,57 @@
+package uk.ac.ucl.comp0010.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times the repositories written directly against JDBC, such as
+ * {@link uk.ac.ucl.comp0010.repository.GradeBatchRepository}, under the same
+ * {@code spring.data.repository.invocations} timer and tags Spring Boot records for Spring Data
+ * repositories, so every repository call can be found in one place.
+ */
+@Aspect
+@Component
+public class RepositoryMetricsAspect {
+
+  private final MeterRegistry meterRegistry;
+
+  /**
+   * Constructs a RepositoryMetricsAspect.
+   *
+   * @param meterRegistry the registry the calls are timed in
+   */
+  public RepositoryMetricsAspect(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+  }
+
+  /**
+   * Times a call to a JDBC repository, tagging it with its outcome.
+   *
+   * @param call the repository call
+   * @return what the repository returned
+   * @throws Throwable whatever the repository threw
+   */
+  @Around("within(uk.ac.ucl.comp0010.repository..*)"
+      + " && @within(org.springframework.stereotype.Repository) && execution(public * *(..))")
+  public Object time(ProceedingJoinPoint call) throws Throwable {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String state = "SUCCESS";
+    String exception = "None";
+    try {
+      return call.proceed();
+    } catch (Throwable e) {
+      state = "ERROR";
+      exception = e.getClass().getSimpleName();
+      throw e;
+    } finally {
+      sample.stop(Timer.builder("spring.data.repository.invocations")
+          .tag("repository", call.getSignature().getDeclaringType().getSimpleName())
+          .tag("method", call.getSignature().getName()).tag("state", state)
+          .tag("exception", exception).register(meterRegistry));
+    }
+  }
+}
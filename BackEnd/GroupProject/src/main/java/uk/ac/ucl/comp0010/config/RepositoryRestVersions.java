@@ -0,0 +1,51 @@
+package uk.ac.ucl.comp0010.config;
+
+import org.springframework.data.rest.core.event.AbstractRepositoryEventListener;
+import org.springframework.stereotype.Component;
+import uk.ac.ucl.comp0010.service.TableVersions;
+
+/**
+ * Records writes made through the Spring Data REST repository endpoints in the
+ * {@link TableVersions}, so the ETags of the collection endpoints also change when data is edited
+ * there rather than through the controllers. Such writes are rare, and a deleted student takes its
+ * grades and registrations with it, so every table is counted as changed.
+ */
+@Component
+public class RepositoryRestVersions extends AbstractRepositoryEventListener<Object> {
+
+  private final TableVersions tableVersions;
+
+  /**
+   * Constructs a RepositoryRestVersions.
+   *
+   * @param tableVersions the version counters to record writes in
+   */
+  public RepositoryRestVersions(TableVersions tableVersions) {
+    this.tableVersions = tableVersions;
+  }
+
+  @Override
+  protected void onAfterCreate(Object entity) {
+    tableVersions.recordChange(TableVersions.Table.values());
+  }
+
+  @Override
+  protected void onAfterSave(Object entity) {
+    tableVersions.recordChange(TableVersions.Table.values());
+  }
+
+  @Override
+  protected void onAfterLinkSave(Object parent, Object linked) {
+    tableVersions.recordChange(TableVersions.Table.values());
+  }
+
+  @Override
+  protected void onAfterLinkDelete(Object parent, Object linked) {
+    tableVersions.recordChange(TableVersions.Table.values());
+  }
+
+  @Override
+  protected void onAfterDelete(Object entity) {
+    tableVersions.recordChange(TableVersions.Table.values());
+  }
+}
@@ -0,0 +1,78 @@
+package uk.ac.ucl.comp0010.config;
+
+/**
+ * The work Hibernate does on behalf of the web request being handled by the current thread.
+ * Counting only happens between {@link #start()} and {@link #stop()}; work done outside a request,
+ * such as by scheduled jobs, is not counted.
+ */
+final class RequestStatistics {
+
+  private static final ThreadLocal<RequestStatistics> CURRENT = new ThreadLocal<>();
+
+  private long statements;
+  private long entitiesLoaded;
+  private long collectionsFetched;
+
+  private RequestStatistics() {}
+
+  static void start() {
+    CURRENT.set(new RequestStatistics());
+  }
+
+  /**
+   * Stops counting for the current thread.
+   *
+   * @return what was counted since {@link #start()}, or null if counting was not started
+   */
+  static RequestStatistics stop() {
+    RequestStatistics statistics = CURRENT.get();
+    CURRENT.remove();
+    return statistics;
+  }
+
+  static void statementPrepared() {
+    RequestStatistics statistics = CURRENT.get();
+    if (statistics != null) {
+      statistics.statements++;
+    }
+  }
+
+  static void entityLoaded() {
+    RequestStatistics statistics = CURRENT.get();
+    if (statistics != null) {
+      statistics.entitiesLoaded++;
+    }
+  }
+
+  static void collectionFetched() {
+    RequestStatistics statistics = CURRENT.get();
+    if (statistics != null) {
+      statistics.collectionsFetched++;
+    }
+  }
+
+  /**
+   * Adds what was counted for the same request on another thread.
+   *
+   * @param other what was counted there, or null if nothing was
+   */
+  void add(RequestStatistics other) {
+    if (other != null) {
+      statements += other.statements;
+      entitiesLoaded += other.entitiesLoaded;
+      collectionsFetched += other.collectionsFetched;
+    }
+  }
+
+  long statements() {
+    return statements;
+  }
+
+  long entitiesLoaded() {
+    return entitiesLoaded;
+  }
+
+  long collectionsFetched() {
+    return collectionsFetched;
+  }
+}
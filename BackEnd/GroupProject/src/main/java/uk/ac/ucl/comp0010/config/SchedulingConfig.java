@@ -0,0 +1,12 @@
+package uk.ac.ucl.comp0010.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration class enabling scheduled jobs, such as the nightly grade totals check.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
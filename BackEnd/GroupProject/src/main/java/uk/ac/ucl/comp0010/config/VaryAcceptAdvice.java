@@ -0,0 +1,36 @@
+package uk.ac.ucl.comp0010.config;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.AbstractJackson2HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Marks responses written by Jackson as varying with the {@code Accept} header, since the same URL
+ * is answered in JSON, CBOR or Smile as {@link WireFormatConfig} sets up. Caches then keep an entry
+ * per encoding rather than serving one client's CBOR to another expecting JSON.
+ */
+@ControllerAdvice
+public class VaryAcceptAdvice implements ResponseBodyAdvice<Object> {
+
+  @Override
+  public boolean supports(MethodParameter returnType,
+      Class<? extends HttpMessageConverter<?>> converterType) {
+    return AbstractJackson2HttpMessageConverter.class.isAssignableFrom(converterType);
+  }
+
+  @Override
+  public Object beforeBodyWrite(Object body, MethodParameter returnType,
+      MediaType selectedContentType, Class<? extends HttpMessageConverter<?>> selectedConverterType,
+      ServerHttpRequest request, ServerHttpResponse response) {
+    if (!response.getHeaders().getVary().contains(HttpHeaders.ACCEPT)) {
+      response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
+    return body;
+  }
+}
@@ -0,0 +1,49 @@
+package uk.ac.ucl.comp0010.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Configuration class adding compact binary encodings of the JSON responses.
+ * <p>
+ * A client sending {@code Accept: application/cbor} or {@code Accept: application/x-jackson-smile}
+ * gets the same response encoded as CBOR or Smile, which keeps field names and numbers shorter
+ * than JSON text; request bodies may be sent the same way. Both are written with the application's
+ * Jackson settings, in place of the converters Spring MVC would otherwise build without them.
+ * Responses are compressed on top of any encoding as set under {@code server.compression}.
+ * </p>
+ */
+@Configuration
+public class WireFormatConfig {
+
+  /**
+   * Converts responses and request bodies to and from CBOR.
+   *
+   * @param builder the builder of the application's object mappers
+   * @return the converter
+   */
+  @Bean
+  public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(
+      Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2CborHttpMessageConverter(
+        builder.factory(new CBORFactory()).build());
+  }
+
+  /**
+   * Converts responses and request bodies to and from Smile.
+   *
+   * @param builder the builder of the application's object mappers
+   * @return the converter
+   */
+  @Bean
+  public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(
+      Jackson2ObjectMapperBuilder builder) {
+    return new MappingJackson2SmileHttpMessageConverter(
+        builder.factory(new SmileFactory()).build());
+  }
+}
@@ -0,0 +1,81 @@
+package uk.ac.ucl.comp0010.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import uk.ac.ucl.comp0010.service.GradeColumns;
+import uk.ac.ucl.comp0010.service.GradeSnapshot;
+
+/**
+ * A controller answering cohort-wide questions about grades from the in-memory
+ * {@link GradeSnapshot}, without querying the database. Every endpoint returns a
+ * SERVICE_UNAVAILABLE status while the grades do not fit in the snapshot.
+ */
+@RestController
+@RequestMapping("/analytics")
+public class AnalyticsController {
+
+  private final GradeSnapshot gradeSnapshot;
+
+  /**
+   * Constructs an AnalyticsController.
+   *
+   * @param gradeSnapshot the in-memory copy of the grades the answers are computed from
+   */
+  public AnalyticsController(GradeSnapshot gradeSnapshot) {
+    this.gradeSnapshot = gradeSnapshot;
+  }
+
+  /**
+   * Retrieves the average score of every module with at least one scored grade.
+   *
+   * @return the average score by module code, ordered by code
+   */
+  @GetMapping("/modules/averages")
+  public ResponseEntity<Map<String, Double>> getModuleAverages() {
+    return answer(gradeSnapshot.current().map(GradeColumns::moduleAverages));
+  }
+
+  /**
+   * Retrieves the students whose average score is below a threshold.
+   *
+   * @param threshold the average score students must reach
+   * @return the threshold and the IDs of the students below it, in ascending order
+   */
+  @GetMapping("/students/below")
+  public ResponseEntity<Map<String, Object>> getStudentsBelow(
+      @RequestParam("threshold") double threshold) {
+    return answer(gradeSnapshot.current().map(columns -> {
+      List<Long> students = columns.studentsBelow(threshold);
+      Map<String, Object> response = new HashMap<>();
+      response.put("threshold", threshold);
+      response.put("students", students);
+      return response;
+    }));
+  }
+
+  /**
+   * Compares two modules over the students graded in both, such as a module and its prerequisite.
+   *
+   * @param first the code of the first module
+   * @param second the code of the second module
+   * @return the number of students graded in both modules and their average score in each
+   */
+  @GetMapping("/modules/compare")
+  public ResponseEntity<GradeColumns.Comparison> compareModules(
+      @RequestParam("first") String first, @RequestParam("second") String second) {
+    return answer(gradeSnapshot.current().map(columns -> columns.compare(first, second)));
+  }
+
+  private static <T> ResponseEntity<T> answer(Optional<T> body) {
+    return body.map(ResponseEntity::ok)
+        .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(null));
+  }
+}
@@ -0,0 +1,76 @@
+package uk.ac.ucl.comp0010.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Builds the response of a {@code /batch} endpoint, which resolves a list of keys in a few
+ * queries rather than a request per key.
+ * <p>
+ * Keys are looked up {@value #CHUNK_SIZE} at a time, so each query's {@code IN} list stays short.
+ * The response holds the rows found under {@code _embedded}, in the order their keys were given
+ * and once per key, and the keys that were not found under {@code missing}.
+ * </p>
+ */
+final class BatchGet {
+
+  /**
+   * The largest number of keys a batch may hold.
+   */
+  static final int MAX_KEYS = 1000;
+
+  /**
+   * The number of keys looked up per query.
+   */
+  static final int CHUNK_SIZE = 250;
+
+  private BatchGet() {}
+
+  /**
+   * Builds the response.
+   *
+   * @param relation the name the rows are listed under
+   * @param keys the keys to look up, as given by the client
+   * @param find looks up the rows of some keys; keys with no row are left out
+   * @param key reads the key of a row
+   * @param <K> the type of the keys
+   * @param <T> the type of the rows
+   * @return the response, or a BAD_REQUEST status if there are too many keys
+   */
+  static <K, T> ResponseEntity<Map<String, Object>> response(String relation, List<K> keys,
+      Function<List<K>, ? extends Collection<T>> find, Function<T, K> key) {
+    if (keys.size() > MAX_KEYS) {
+      return ResponseEntity.badRequest()
+          .body(Map.of("error", "A batch holds at most " + MAX_KEYS + " keys"));
+    }
+    List<K> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+    Map<K, T> found = new HashMap<>();
+    for (int from = 0; from < distinct.size(); from += CHUNK_SIZE) {
+      List<K> chunk = distinct.subList(from, Math.min(from + CHUNK_SIZE, distinct.size()));
+      for (T row : find.apply(chunk)) {
+        found.put(key.apply(row), row);
+      }
+    }
+
+    List<T> rows = new ArrayList<>(found.size());
+    List<K> missing = new ArrayList<>();
+    for (K k : distinct) {
+      T row = found.get(k);
+      if (row == null) {
+        missing.add(k);
+      } else {
+        rows.add(row);
+      }
+    }
+    Map<String, Object> response = new HashMap<>();
+    response.put("_embedded", Map.of(relation, rows));
+    response.put("missing", missing);
+    return ResponseEntity.ok(response);
+  }
+}
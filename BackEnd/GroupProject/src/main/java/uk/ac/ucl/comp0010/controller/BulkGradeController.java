@@ -0,0 +1,189 @@
+package uk.ac.ucl.comp0010.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import uk.ac.ucl.comp0010.repository.GradeBatchRepository;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.StudentGradeStatsRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.repository.UpsertedGrade;
+import uk.ac.ucl.comp0010.service.ChangeLog;
+import uk.ac.ucl.comp0010.service.GradeFeed;
+import uk.ac.ucl.comp0010.service.GradeSnapshot;
+import uk.ac.ucl.comp0010.service.TableVersions;
+import uk.ac.ucl.comp0010.service.TableVersions.Table;
+
+/**
+ * A controller for loading many grades in one request, such as a term's marks from an exam board
+ * spreadsheet.
+ */
+@RestController
+@RequestMapping("/grades")
+public class BulkGradeController {
+
+  // lines validated and written per transaction
+  static final int CHUNK_SIZE = 1000;
+
+  private final StudentRepository studentRepository;
+  private final ModuleRepository moduleRepository;
+  private final GradeBatchRepository gradeBatchRepository;
+  private final StudentGradeStatsRepository gradeStatsRepository;
+  private final GradeSnapshot gradeSnapshot;
+  private final TableVersions tableVersions;
+  private final ChangeLog changeLog;
+  private final GradeFeed gradeFeed;
+  private final TransactionTemplate transactionTemplate;
+  private final ObjectMapper objectMapper;
+
+  /**
+   * Constructs a BulkGradeController.
+   *
+   * @param studentRepository the repository used to check student ids
+   * @param moduleRepository the repository used to check module codes
+   * @param gradeBatchRepository the repository used to write the grades
+   * @param gradeStatsRepository the repository keeping each student's grade totals
+   * @param gradeSnapshot the in-memory copy of the grades kept for analytics
+   * @param tableVersions the version counters recording writes to the grades
+   * @param changeLog the log of changed grades that clients sync from
+   * @param gradeFeed the feed grade changes are pushed to subscribers through
+   * @param transactionTemplate the template running each chunk in its own transaction
+   * @param objectMapper the mapper used to parse JSON lines
+   */
+  public BulkGradeController(StudentRepository studentRepository,
+      ModuleRepository moduleRepository, GradeBatchRepository gradeBatchRepository,
+      StudentGradeStatsRepository gradeStatsRepository, GradeSnapshot gradeSnapshot,
+      TableVersions tableVersions, ChangeLog changeLog, GradeFeed gradeFeed,
+      TransactionTemplate transactionTemplate, ObjectMapper objectMapper) {
+    this.studentRepository = studentRepository;
+    this.moduleRepository = moduleRepository;
+    this.gradeBatchRepository = gradeBatchRepository;
+    this.gradeStatsRepository = gradeStatsRepository;
+    this.gradeSnapshot = gradeSnapshot;
+    this.tableVersions = tableVersions;
+    this.changeLog = changeLog;
+    this.gradeFeed = gradeFeed;
+    this.transactionTemplate = transactionTemplate;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Adds or replaces grades from a CSV or newline-delimited JSON upload.
+   * <p>
+   * The upload is read in chunks. For each chunk, the student ids and module codes are checked with
+   * one query each, and the valid lines are written as a single JDBC batch in their own
+   * transaction, together with the recomputed grade totals of the students involved. As with
+   * {@code /grades/addGrade}, a grade for a student and module that already have one replaces its
+   * score. Lines that cannot be read or refer to an unknown student or module are skipped and
+   * reported.
+   * </p>
+   *
+   * @param request the request carrying the upload as {@code text/csv} or
+   *        {@code application/x-ndjson}
+   * @return a report with the number of lines received and written, and an error for each skipped
+   *         line, or a BAD_REQUEST status if the CSV header is incomplete
+   * @throws IOException if the upload cannot be read
+   */
+  @PostMapping(value = "/bulk",
+      consumes = {GradeBulkReader.CSV_CONTENT_TYPE, NdjsonWriter.CONTENT_TYPE})
+  public ResponseEntity<Map<String, Object>> addGrades(HttpServletRequest request)
+      throws IOException {
+    boolean csv = request.getContentType().startsWith(GradeBulkReader.CSV_CONTENT_TYPE);
+    GradeBulkReader reader = new GradeBulkReader(request.getReader(), csv, objectMapper);
+
+    List<Map<String, Object>> errors = new ArrayList<>();
+    List<GradeBulkReader.Entry> chunk = new ArrayList<>(CHUNK_SIZE);
+    int received = 0;
+    int written = 0;
+    try {
+      GradeBulkReader.Entry entry;
+      while ((entry = reader.next()) != null) {
+        received++;
+        if (entry.error() != null) {
+          errors.add(error(entry.line(), entry.error()));
+          continue;
+        }
+        chunk.add(entry);
+        if (chunk.size() == CHUNK_SIZE) {
+          written += writeChunk(chunk, errors);
+          chunk.clear();
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+    if (!chunk.isEmpty()) {
+      written += writeChunk(chunk, errors);
+    }
+    errors.sort(Comparator.comparing(error -> (Integer) error.get("line")));
+
+    Map<String, Object> response = new HashMap<>();
+    response.put("received", received);
+    response.put("written", written);
+    response.put("errors", errors);
+    return ResponseEntity.ok(response);
+  }
+
+  private int writeChunk(List<GradeBulkReader.Entry> chunk, List<Map<String, Object>> errors) {
+    List<Map<String, Object>> chunkErrors = new ArrayList<>();
+    try {
+      Integer written = transactionTemplate.execute(status -> {
+        Set<Long> students = studentRepository.findExistingIds(
+            chunk.stream().map(entry -> entry.row().studentId()).collect(Collectors.toSet()));
+        Set<String> modules = moduleRepository.findExistingCodes(
+            chunk.stream().map(entry -> entry.row().moduleCode()).collect(Collectors.toSet()));
+
+        List<GradeRow> rows = new ArrayList<>(chunk.size());
+        for (GradeBulkReader.Entry entry : chunk) {
+          GradeRow row = entry.row();
+          if (!students.contains(row.studentId())) {
+            chunkErrors.add(error(entry.line(), "Unknown student " + row.studentId()));
+          } else if (!modules.contains(row.moduleCode())) {
+            chunkErrors.add(error(entry.line(), "Unknown module " + row.moduleCode()));
+          } else {
+            rows.add(row);
+          }
+        }
+        if (!rows.isEmpty()) {
+          final List<UpsertedGrade> upserted = gradeBatchRepository.upsertAll(rows);
+          gradeStatsRepository.recompute(
+              rows.stream().map(GradeRow::studentId).collect(Collectors.toSet()));
+          gradeSnapshot.recordScores(rows);
+          tableVersions.recordChange(Table.GRADE);
+          changeLog.recordGrades(rows);
+          gradeFeed.publishUpserts(upserted);
+        }
+        return rows.size();
+      });
+      errors.addAll(chunkErrors);
+      return written;
+    } catch (DataAccessException e) {
+      // the chunk was rolled back as a whole
+      for (GradeBulkReader.Entry entry : chunk) {
+        errors.add(error(entry.line(), "Not written: " + e.getMostSpecificCause().getMessage()));
+      }
+      return 0;
+    }
+  }
+
+  private static Map<String, Object> error(int line, String message) {
+    Map<String, Object> error = new HashMap<>();
+    error.put("line", line);
+    error.put("error", message);
+    return error;
+  }
+}
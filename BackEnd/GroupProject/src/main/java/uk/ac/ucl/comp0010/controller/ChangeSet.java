@@ -0,0 +1,51 @@
+package uk.ac.ucl.comp0010.controller;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import uk.ac.ucl.comp0010.service.ChangeLog;
+
+/**
+ * Builds the response of a {@code /changes} endpoint from the rows of a table changed since a
+ * version.
+ * <p>
+ * The response holds the {@code version} to sync from next time, whether the client should
+ * {@code reset} its copy, the {@code changed} rows as they are now and the IDs of the
+ * {@code deleted} rows. A changed row that can no longer be found was deleted.
+ * </p>
+ */
+final class ChangeSet {
+
+  private ChangeSet() {}
+
+  /**
+   * Builds the response.
+   *
+   * @param changes the IDs of the changed rows and the version they bring the client up to
+   * @param rows the changed rows still present, or every row on a reset
+   * @param id reads the ID of a row
+   * @param view turns a row into what the response holds for it
+   * @param <T> the type of the rows
+   * @return the response body
+   */
+  static <T> Map<String, Object> response(ChangeLog.Changes changes, List<T> rows,
+      Function<T, Long> id, Function<T, ?> view) {
+    Set<Long> deleted = new LinkedHashSet<>(changes.ids());
+    List<Object> changed = new ArrayList<>(rows.size());
+    for (T row : rows) {
+      deleted.remove(id.apply(row));
+      changed.add(view.apply(row));
+    }
+
+    Map<String, Object> response = new HashMap<>();
+    response.put("version", changes.version());
+    response.put("reset", changes.reset());
+    response.put("changed", changed);
+    response.put("deleted", deleted);
+    return response;
+  }
+}
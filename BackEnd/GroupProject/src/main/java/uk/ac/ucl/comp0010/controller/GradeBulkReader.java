@@ -0,0 +1,145 @@
+package uk.ac.ucl.comp0010.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+
+/**
+ * Reads grades one line at a time from a CSV or newline-delimited JSON upload.
+ * <p>
+ * CSV input starts with a header naming the {@code student_id}, {@code module_code} and
+ * {@code score} columns, in any order. JSON input has one object per line with the same keys. Blank
+ * lines are skipped. A line that cannot be read is returned with an error rather than stopping the
+ * upload.
+ * </p>
+ */
+class GradeBulkReader {
+
+  static final String CSV_CONTENT_TYPE = "text/csv";
+
+  private static final String[] FIELDS = {"student_id", "module_code", "score"};
+
+  /**
+   * One line of input, holding either the grade it describes or the reason it was rejected.
+   *
+   * @param line the line number, starting at 1
+   * @param row the grade, or null if the line was rejected
+   * @param error the reason the line was rejected, or null
+   */
+  record Entry(int line, GradeRow row, String error) {
+  }
+
+  private final BufferedReader reader;
+  private final ObjectMapper objectMapper;
+  private final boolean csv;
+  private Map<String, Integer> columns;
+  private int lineNumber;
+
+  /**
+   * Creates a reader over an upload.
+   *
+   * @param reader the upload body
+   * @param csv true for CSV input, false for newline-delimited JSON
+   * @param objectMapper the mapper used to parse JSON lines
+   */
+  GradeBulkReader(BufferedReader reader, boolean csv, ObjectMapper objectMapper) {
+    this.reader = reader;
+    this.csv = csv;
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Reads the next grade.
+   *
+   * @return the next entry, or null at the end of the input
+   * @throws IOException if the upload cannot be read
+   * @throws IllegalArgumentException if the CSV header lacks one of the required columns
+   */
+  Entry next() throws IOException {
+    String text;
+    while ((text = reader.readLine()) != null) {
+      lineNumber++;
+      if (text.isBlank()) {
+        continue;
+      }
+      if (csv && columns == null) {
+        columns = readHeader(text);
+        continue;
+      }
+      Map<String, String> values;
+      try {
+        values = csv ? readCsv(text) : readJson(text);
+      } catch (JsonProcessingException e) {
+        return new Entry(lineNumber, null, "Malformed JSON");
+      }
+      return toEntry(values);
+    }
+    return null;
+  }
+
+  private Map<String, Integer> readHeader(String text) {
+    String[] names = text.split(",", -1);
+    Map<String, Integer> header = new HashMap<>();
+    for (int i = 0; i < names.length; i++) {
+      header.put(names[i].trim(), i);
+    }
+    for (String field : FIELDS) {
+      if (!header.containsKey(field)) {
+        throw new IllegalArgumentException("CSV header is missing column " + field);
+      }
+    }
+    return header;
+  }
+
+  private Map<String, String> readCsv(String text) {
+    String[] cells = text.split(",", -1);
+    Map<String, String> values = new HashMap<>();
+    for (String field : FIELDS) {
+      int index = columns.get(field);
+      if (index < cells.length) {
+        values.put(field, cells[index].trim());
+      }
+    }
+    return values;
+  }
+
+  private Map<String, String> readJson(String text) throws JsonProcessingException {
+    Map<String, Object> object =
+        objectMapper.readValue(text, new TypeReference<Map<String, Object>>() {});
+    Map<String, String> values = new HashMap<>();
+    for (String field : FIELDS) {
+      Object value = object.get(field);
+      if (value != null) {
+        values.put(field, String.valueOf(value));
+      }
+    }
+    return values;
+  }
+
+  private Entry toEntry(Map<String, String> values) {
+    for (String field : FIELDS) {
+      String value = values.get(field);
+      if (value == null || value.isEmpty()) {
+        return new Entry(lineNumber, null, "Missing " + field);
+      }
+    }
+    Long studentId;
+    Integer score;
+    try {
+      studentId = Long.valueOf(values.get("student_id"));
+    } catch (NumberFormatException e) {
+      return new Entry(lineNumber, null, "Invalid student_id");
+    }
+    try {
+      score = Integer.valueOf(values.get("score"));
+    } catch (NumberFormatException e) {
+      return new Entry(lineNumber, null, "Invalid score");
+    }
+    return new Entry(lineNumber, new GradeRow(studentId, values.get("module_code"), score), null);
+  }
+}
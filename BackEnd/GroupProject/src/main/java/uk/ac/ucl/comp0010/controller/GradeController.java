@@ -1,12 +1,25 @@
 package uk.ac.ucl.comp0010.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PatchMapping;
@@ -15,16 +28,27 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import uk.ac.ucl.comp0010.exception.NoRegistrationException;
 import uk.ac.ucl.comp0010.model.Grade;
 import uk.ac.ucl.comp0010.model.Module;
 import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeFieldRepository;
+import uk.ac.ucl.comp0010.repository.GradeListing;
 import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.GradeRow;
 import uk.ac.ucl.comp0010.repository.ModuleRepository;
 import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentGradeStatsRepository;
 import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.service.ChangeLog;
+import uk.ac.ucl.comp0010.service.GradeFeed;
+import uk.ac.ucl.comp0010.service.GradeSnapshot;
+import uk.ac.ucl.comp0010.service.TableVersions;
+import uk.ac.ucl.comp0010.service.TableVersions.Table;
 
 /**
  * A controller that manages grade objects and provides endpoints for handling grade-related
@@ -34,28 +58,61 @@ import uk.ac.ucl.comp0010.repository.StudentRepository;
 @RequestMapping
 public class GradeController {
 
+  private static final int DEFAULT_PAGE_SIZE = 50;
+  private static final int MAX_PAGE_SIZE = 500;
+
   private final StudentRepository studentRepository;
   private final GradeRepository gradeRepository;
+  private final GradeFieldRepository gradeFieldRepository;
   private final ModuleRepository moduleRepository;
   private final RegistrationRepository registrationRepository;
+  private final StudentGradeStatsRepository gradeStatsRepository;
+  private final GradeSnapshot gradeSnapshot;
+  private final TableVersions tableVersions;
+  private final GradeFeed gradeFeed;
+  private final ChangeLog changeLog;
+  private final ObjectMapper objectMapper;
 
   /**
    * Constructs a GradeController with the specified repositories.
    *
    * @param studentRepository the repository used to manage student data
    * @param gradeRepository the repository used to manage grade data
+   * @param gradeFieldRepository the repository reading chosen fields of grades
    * @param moduleRepository the repository used to manage module data
+   * @param registrationRepository the repository used to manage registration data
+   * @param gradeStatsRepository the repository keeping each student's grade totals
+   * @param gradeSnapshot the in-memory copy of the grades kept for analytics
+   * @param tableVersions the version counters the grade listing's ETag is derived from
+   * @param gradeFeed the feed grade changes are pushed to subscribers through
+   * @param changeLog the log of changed grades that clients sync from
+   * @param objectMapper the mapper used to serialize exported grades
    */
   public GradeController(StudentRepository studentRepository, GradeRepository gradeRepository,
-      ModuleRepository moduleRepository, RegistrationRepository registrationRepository) {
+      GradeFieldRepository gradeFieldRepository, ModuleRepository moduleRepository,
+      RegistrationRepository registrationRepository,
+      StudentGradeStatsRepository gradeStatsRepository, GradeSnapshot gradeSnapshot,
+      TableVersions tableVersions, GradeFeed gradeFeed, ChangeLog changeLog,
+      ObjectMapper objectMapper) {
     this.studentRepository = studentRepository;
     this.gradeRepository = gradeRepository;
+    this.gradeFieldRepository = gradeFieldRepository;
     this.moduleRepository = moduleRepository;
     this.registrationRepository = registrationRepository;
+    this.gradeStatsRepository = gradeStatsRepository;
+    this.gradeSnapshot = gradeSnapshot;
+    this.tableVersions = tableVersions;
+    this.gradeFeed = gradeFeed;
+    this.changeLog = changeLog;
+    this.objectMapper = objectMapper;
   }
 
   /**
-   * Handles the creation of a new grade for a student.
+   * Handles the creation of a new grade for a student. If the student already has a grade for the
+   * module, its score is replaced instead. The grade is written with a single upsert statement and
+   * the student's grade totals are updated in the same transaction. The student's row is locked
+   * first, so concurrent submissions for the same student are applied one after another and leave
+   * exactly one grade and consistent totals behind.
    *
    * @param params a map containing the following keys:
    *        <ul>
@@ -65,68 +122,234 @@ public class GradeController {
    *        </ul>
    * @return a {@link ResponseEntity} containing the saved {@link Grade} object
    * @throws NoRegistrationException if no registration for the student or module is found
+   * @throws NoSuchElementException if the student or module does not exist
    */
   @PostMapping(value = "/grades/addGrade")
+  @Transactional
   public ResponseEntity<Grade> addGrade(@RequestBody Map<String, String> params)
       throws NoRegistrationException {
-    // Find the module by using the module_code
-    Module module = moduleRepository.findByCode(params.get("module_code")).orElseThrow();
-    // Create a Grade object and set its values
-    Integer score = Integer.parseInt(params.get("score"));
-    // initialize grade object
-    Grade grade = new Grade();
-    // Find the student by using student_id
     Long studentId = Long.valueOf(params.get("student_id"));
-    // check if grade already exists
-    grade = gradeRepository.findByStudentIdAndModuleCode(studentId, module.getCode()).orElse(grade);
-    // delete from repository if exists
-    if (grade.getId() != null) {
-      gradeRepository.deleteById(grade.getId());
-    }
-    // regardless of if exits or not, update the grade
-    Student student = studentRepository.findById(studentId).orElseThrow();
-    grade.setScore(score);
-    grade.setModule(module);
-    grade.setStudent(student);
-    // Save the Grade object
-    grade = gradeRepository.save(grade);
-    student.addGrade(grade);
+    String moduleCode = params.get("module_code");
+    Integer score = Integer.parseInt(params.get("score"));
+    studentRepository.lockById(studentId);
+    // Insert the grade, or update the existing one for this student and module
+    List<Integer> previous = gradeRepository.upsert(studentId, moduleCode, score);
+    gradeStatsRepository.recordScoreChange(studentId, previous.isEmpty() ? null : previous.get(0),
+        score);
+    gradeSnapshot.recordScore(studentId, moduleCode, score);
+    tableVersions.recordChange(Table.GRADE);
+    // Load the resulting grade with what it is serialized with
+    Grade grade = gradeRepository.findWithDetailsByStudentIdAndModuleCode(studentId, moduleCode)
+        .orElseThrow();
+    // the upsert bypasses Hibernate, so the change is logged here
+    changeLog.record(Table.GRADE, List.of(grade.getId()));
+    gradeFeed.publish(previous.isEmpty() ? GradeFeed.Type.CREATED : GradeFeed.Type.UPDATED,
+        grade.getId(), studentId, moduleCode, score);
 
-    // Return the saved Grade object
     return ResponseEntity.ok(grade);
   }
 
   /**
    * Retrieves a list of all grades.
+   * <p>
+   * The default {@code links} view returns each grade's id and score with links to its student and
+   * module. The {@code embedded} view returns the student and module summaries inline, loaded with
+   * a single join query, so clients need no follow-up request per grade.
+   * </p>
+   * <p>
+   * When {@code after} or {@code limit} is given, a single page is returned instead, ordered by
+   * {@code sort} and starting after the cursor {@code after}. Pages are read with keyset range
+   * queries rather than offsets. If more grades follow, the response carries the cursor to pass as
+   * the next {@code after} under {@code page.next} and a {@code next} link. In id order the cursor
+   * is the id of the last grade of the page; in score order it is an opaque encoding of that
+   * grade's score and id, so paging carries on even if the grade is deleted. Grades without a score
+   * are not part of the score ordering.
+   * </p>
+   * <p>
+   * Responses carry an ETag that changes whenever a grade, student or module is written. A request
+   * whose {@code If-None-Match} holds the current ETag is answered with NOT_MODIFIED without
+   * querying the grades.
+   * </p>
    *
-   * @return A list of all grades.
+   * @param view the response shape, either {@code links} or {@code embedded}
+   * @param after the cursor of the previous page, if any
+   * @param limit the maximum number of grades in the page
+   * @param sort the page order, either {@code id} or {@code score}
+   * @param request the request, checked against the current ETag
+   * @return A list of all grades, or a BAD_REQUEST status if a parameter is invalid.
    */
   @GetMapping(value = "/grades")
-  public ResponseEntity<Map<String, Object>> getAllGrades() {
+  public ResponseEntity<Map<String, Object>> getAllGrades(
+      @RequestParam(value = "view", defaultValue = "links") String view,
+      @RequestParam(value = "after", required = false) String after,
+      @RequestParam(value = "limit", required = false) Integer limit,
+      @RequestParam(value = "sort", defaultValue = "id") String sort, WebRequest request) {
+    if (!view.equals("links") && !view.equals("embedded")) {
+      return ResponseEntity.badRequest().build();
+    }
+    // read before the grades, so the response is never tagged newer than what it holds
+    if (request.checkNotModified(tableVersions.etag(Table.GRADE, Table.STUDENT, Table.MODULE))) {
+      return null;
+    }
+
+    Map<String, Object> response = new HashMap<>();
+    List<Map<String, Object>> gradeMaps;
+    if (after == null && limit == null) {
+      gradeMaps = view.equals("links") ? linkedGrades() : embeddedGrades();
+    } else {
+      int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+      if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+        return ResponseEntity.badRequest().build();
+      }
+      List<GradeListing> page;
+      try {
+        // fetch one extra row to know whether another page follows
+        page = findGradePage(after, sort, Limit.of(pageSize + 1));
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest().build();
+      }
+      Object next = null;
+      if (page.size() > pageSize) {
+        page = page.subList(0, pageSize);
+        GradeListing last = page.get(pageSize - 1);
+        next = sort.equals("score") ? PageCursor.encode(last.getScore(), last.getId())
+            : last.getId();
+        String href = ServletUriComponentsBuilder.fromCurrentRequest()
+            .replaceQueryParam("after", next).replaceQueryParam("limit", pageSize).toUriString();
+        response.put("_links", Map.of("next", Map.of("href", href)));
+      }
+      Map<String, Object> pageMap = new HashMap<>();
+      pageMap.put("size", pageSize);
+      pageMap.put("sort", sort);
+      pageMap.put("next", next);
+      response.put("page", pageMap);
+      gradeMaps = view.equals("links") ? linkedGrades(page) : embeddedGrades(page);
+    }
+
+    Map<String, List<Map<String, Object>>> embedded = new HashMap<>();
+    embedded.put("grades", gradeMaps);
+    response.put("_embedded", embedded);
+
+    return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(response);
+  }
+
+  private List<GradeListing> findGradePage(String after, String sort, Limit limit) {
+    switch (sort) {
+      case "id":
+        return gradeRepository
+            .findListingsAfterId(after == null ? Long.MIN_VALUE : Long.valueOf(after), limit);
+      case "score":
+        if (after == null) {
+          return gradeRepository.findListingsAfterScore(Integer.MIN_VALUE, Long.MIN_VALUE, limit);
+        }
+        List<String> key = PageCursor.decode(after, 2);
+        return gradeRepository.findListingsAfterScore(Integer.valueOf(key.get(0)),
+            Long.valueOf(key.get(1)), limit);
+      default:
+        throw new IllegalArgumentException("Invalid sort: " + sort);
+    }
+  }
+
+  private List<Map<String, Object>> linkedGrades() {
     List<Grade> grades = (List<Grade>) gradeRepository.findAll();
 
     String baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath().build().toUriString();
 
+    return grades.stream().map(grade -> linkedGrade(baseUrl, grade.getId(), grade.getScore()))
+        .collect(Collectors.toList());
+  }
 
-    List<Map<String, Object>> gradeMaps = grades.stream().map(grade -> {
-      Map<String, Object> gradeMap = new HashMap<>();
-      gradeMap.put("id", grade.getId());
-      gradeMap.put("score", grade.getScore());
+  private List<Map<String, Object>> linkedGrades(List<GradeListing> listings) {
+    String baseUrl = ServletUriComponentsBuilder.fromCurrentContextPath().build().toUriString();
 
-      Map<String, Object> links = new HashMap<>();
-      links.put("module", Map.of("href", baseUrl + "/grades/" + grade.getId() + "/modules"));
-      links.put("student", Map.of("href", baseUrl + "/grades/" + grade.getId() + "/students"));
-      gradeMap.put("_links", links);
+    return listings.stream()
+        .map(listing -> linkedGrade(baseUrl, listing.getId(), listing.getScore()))
+        .collect(Collectors.toList());
+  }
 
-      return gradeMap;
-    }).collect(Collectors.toList());
+  private Map<String, Object> linkedGrade(String baseUrl, Long id, Integer score) {
+    Map<String, Object> gradeMap = new HashMap<>();
+    gradeMap.put("id", id);
+    gradeMap.put("score", score);
 
-    Map<String, Object> response = new HashMap<>();
-    Map<String, List<Map<String, Object>>> embedded = new HashMap<>();
-    embedded.put("grades", gradeMaps);
-    response.put("_embedded", embedded);
+    Map<String, Object> links = new HashMap<>();
+    links.put("module", Map.of("href", baseUrl + "/grades/" + id + "/modules"));
+    links.put("student", Map.of("href", baseUrl + "/grades/" + id + "/students"));
+    gradeMap.put("_links", links);
 
-    return ResponseEntity.ok(response);
+    return gradeMap;
+  }
+
+  private List<Map<String, Object>> embeddedGrades() {
+    return embeddedGrades(gradeRepository.findAllListings());
+  }
+
+  private List<Map<String, Object>> embeddedGrades(List<GradeListing> listings) {
+    return listings.stream().map(this::embeddedGrade).collect(Collectors.toList());
+  }
+
+  private Map<String, Object> embeddedGrade(GradeListing listing) {
+    Map<String, Object> studentMap = new HashMap<>();
+    studentMap.put("id", listing.getStudentId());
+    studentMap.put("firstName", listing.getStudentFirstName());
+    studentMap.put("lastName", listing.getStudentLastName());
+
+    Map<String, Object> moduleMap = new HashMap<>();
+    moduleMap.put("code", listing.getModuleCode());
+    moduleMap.put("name", listing.getModuleName());
+
+    Map<String, Object> gradeMap = new HashMap<>();
+    gradeMap.put("id", listing.getId());
+    gradeMap.put("score", listing.getScore());
+    gradeMap.put("student", studentMap);
+    gradeMap.put("module", moduleMap);
+    return gradeMap;
+  }
+
+  /**
+   * Streams all grades as newline-delimited JSON, one grade per line, in id order.
+   * <p>
+   * Each line has the shape of a grade in the {@code embedded} view of {@link #getAllGrades}. Rows
+   * are read through a forward-only database cursor as flat projections, so no entities are kept
+   * and memory use does not grow with the number of grades.
+   * </p>
+   *
+   * @param response the response the grades are written to
+   * @throws IOException if the client has gone away
+   */
+  @GetMapping(value = "/grades/export", produces = NdjsonWriter.CONTENT_TYPE)
+  @Transactional(readOnly = true)
+  public void exportGrades(HttpServletResponse response) throws IOException {
+    try (Stream<GradeListing> listings = gradeRepository.streamAllListings();
+        NdjsonWriter writer = new NdjsonWriter(objectMapper, response)) {
+      Iterator<GradeListing> iterator = listings.iterator();
+      while (iterator.hasNext()) {
+        writer.write(embeddedGrade(iterator.next()));
+      }
+    }
+  }
+
+  /**
+   * Retrieves the grades created, updated or deleted since a change version, for clients keeping a
+   * copy of the grades.
+   * <p>
+   * Changed grades have the shape of a grade in the {@code embedded} view of {@link #getAllGrades}
+   * and are returned once however often they changed, as they are now; deleted grades are returned
+   * by id. The response's {@code version} is the one to pass as {@code since} next time. A
+   * {@code since} that is not a version of this database, such as {@code 0} on a first sync,
+   * returns every grade with {@code reset} set, to replace the client's copy.
+   * </p>
+   *
+   * @param since the change version the client's copy is up to date with
+   * @return the changes since that version
+   */
+  @GetMapping(value = "/grades/changes")
+  public ResponseEntity<Map<String, Object>> getGradeChanges(@RequestParam("since") long since) {
+    ChangeLog.Changes changes = changeLog.changesSince(Table.GRADE, since);
+    List<GradeListing> grades = changes.reset() ? gradeRepository.findAllListings()
+        : changes.ids().isEmpty() ? List.of() : gradeRepository.findListingsByIdIn(changes.ids());
+    return ResponseEntity
+        .ok(ChangeSet.response(changes, grades, GradeListing::getId, this::embeddedGrade));
   }
 
   /**
@@ -193,12 +416,112 @@ public class GradeController {
   @GetMapping(value = "/grades/{id}")
   public ResponseEntity<Grade> getGradeById(@PathVariable Long id) {
     // Fetch the grade with the specified ID from your data source (e.g., database)
-    Grade grade = gradeRepository.findById(id).orElseThrow();
-    // Assuming you have a GradeRepository
+    Grade grade = gradeRepository.findWithDetailsById(id).orElseThrow();
 
     return ResponseEntity.ok(grade);
   }
 
+  /**
+   * Retrieves several grades by ID at once, as {@link #getGradeById(Long)} returns them, with a
+   * query per {@value BatchGet#CHUNK_SIZE} IDs rather than a request per grade. Grades are returned
+   * under {@code _embedded.grades} in the order of the IDs, each once; IDs of grades that do not
+   * exist are listed under {@code missing}.
+   *
+   * @param ids the IDs of the grades, at most {@value BatchGet#MAX_KEYS}
+   * @return the grades found, or a BAD_REQUEST status if there are too many IDs
+   */
+  @PostMapping(value = "/grades/batch")
+  public ResponseEntity<Map<String, Object>> getGradesBatch(@RequestBody List<Long> ids) {
+    return BatchGet.response("grades", ids, gradeRepository::findWithDetailsByIdIn,
+        Grade::getId);
+  }
+
+  /**
+   * Retrieves chosen fields of a grade, its student and its module, read with a single query that
+   * selects only their columns. Fields are named as in
+   * {@code ?fields=student.first,student.email,module.code} and returned nested the same way:
+   * {@code id} and {@code score} of the grade; {@code id}, {@code first}, {@code last},
+   * {@code username} and {@code email} of the student; and {@code code}, {@code name} and
+   * {@code mnc} of the module.
+   *
+   * @param id the ID of the grade
+   * @param fields the comma separated fields to return
+   * @return the requested fields, a NOT_FOUND status if no grade has the ID, or a BAD_REQUEST
+   *         status if a field is unknown
+   */
+  @GetMapping(value = "/grades/{id}", params = "fields")
+  public ResponseEntity<Map<String, Object>> getGradeFields(@PathVariable Long id,
+      @RequestParam("fields") String fields) {
+    List<String> parsed;
+    try {
+      parsed = GradeFieldRepository.parseFields(fields);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+    Map<String, Object> values = gradeFieldRepository.findFields(parsed, List.of(id)).get(id);
+    if (values == null) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+    }
+    return ResponseEntity.ok(sparseGrade(values));
+  }
+
+  /**
+   * Retrieves chosen fields of several grades at once, in the manner of
+   * {@link #getGradeFields(Long, String)}, with a single query for all of them. Grades are returned
+   * in the order of {@code ids}; ids of grades that do not exist are listed under {@code missing}.
+   *
+   * @param ids the IDs of the grades, at most as many as the largest page
+   * @param fields the comma separated fields to return
+   * @return the requested fields of each grade found, or a BAD_REQUEST status if a field is unknown
+   *         or too many ids are given
+   */
+  @GetMapping(value = "/grades", params = "fields")
+  public ResponseEntity<Map<String, Object>> getGradesFields(@RequestParam("ids") List<Long> ids,
+      @RequestParam("fields") String fields) {
+    if (ids.size() > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest()
+          .body(Map.of("error", "At most " + MAX_PAGE_SIZE + " ids can be read at once"));
+    }
+    List<String> parsed;
+    try {
+      parsed = GradeFieldRepository.parseFields(fields);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+    Map<Long, Map<String, Object>> found = gradeFieldRepository.findFields(parsed, ids);
+
+    List<Map<String, Object>> grades = new ArrayList<>();
+    List<Long> missing = new ArrayList<>();
+    for (Long id : ids) {
+      Map<String, Object> values = found.get(id);
+      if (values == null) {
+        missing.add(id);
+      } else {
+        grades.add(sparseGrade(values));
+      }
+    }
+    Map<String, Object> response = new HashMap<>();
+    response.put("_embedded", Map.of("grades", grades));
+    response.put("missing", missing);
+    return ResponseEntity.ok(response);
+  }
+
+  // nests fields such as student.first under the object they belong to
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> sparseGrade(Map<String, Object> values) {
+    Map<String, Object> grade = new HashMap<>();
+    values.forEach((field, value) -> {
+      int dot = field.indexOf('.');
+      if (dot < 0) {
+        grade.put(field, value);
+      } else {
+        ((Map<String, Object>) grade.computeIfAbsent(field.substring(0, dot),
+            name -> new HashMap<String, Object>())).put(field.substring(dot + 1), value);
+      }
+    });
+    return grade;
+  }
+
   /**
    * Updates the grade with the specified ID.
    *
@@ -210,24 +533,26 @@ public class GradeController {
    * @throws NoRegistrationException if there is an issue with the registration
    */
   @PutMapping(value = "/grades/{id}")
+  @Transactional
   public ResponseEntity<Grade> updateGrade(@PathVariable Long id,
       @RequestBody Map<String, String> params) throws NoRegistrationException {
     // Fetch the grade with the specified ID from your data source (e.g., database)
-    Grade grade;
-    try {
-      grade = gradeRepository.findById(id)
-          .orElseThrow(() -> new NoSuchElementException("Grade not found"));
-    } catch (NoSuchElementException e) {
+    if (!gradeRepository.existsById(id)) {
       return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
     }
+    Long studentId = Long.valueOf(params.get("student_id"));
+    lockStudents(id, studentId);
+    Grade grade = gradeRepository.findById(id).orElseThrow();
     // Find the student by using student_id
-    Student student =
-        studentRepository.findById(Long.valueOf(params.get("student_id"))).orElseThrow();
+    Student student = studentRepository.findWithRegisteredModulesById(studentId).orElseThrow();
 
     // Find the module by using the module_code
     Module module = moduleRepository.findByCode(params.get("module_code")).orElseThrow();
 
     // Update the grade object
+    final Long oldStudentId = grade.getStudent() == null ? null : grade.getStudent().getId();
+    final String oldModuleCode = grade.getModule() == null ? null : grade.getModule().getCode();
+    Integer oldScore = grade.getScore();
     Integer score = Integer.parseInt(params.get("score"));
     grade.setScore(score);
     grade.setModule(module);
@@ -235,6 +560,23 @@ public class GradeController {
 
     // Save the updated Grade object
     grade = gradeRepository.save(grade);
+    if (student.getId().equals(oldStudentId)) {
+      gradeStatsRepository.recordScoreChange(oldStudentId, oldScore, score);
+    } else {
+      if (oldStudentId != null) {
+        gradeStatsRepository.recordScoreChange(oldStudentId, oldScore, null);
+      }
+      gradeStatsRepository.recordScoreChange(student.getId(), null, score);
+    }
+    List<GradeRow> rows = new ArrayList<>();
+    if (oldStudentId != null && oldModuleCode != null) {
+      rows.add(new GradeRow(oldStudentId, oldModuleCode, null));
+    }
+    rows.add(new GradeRow(student.getId(), module.getCode(), score));
+    gradeSnapshot.recordScores(rows);
+    tableVersions.recordChange(Table.GRADE);
+    gradeFeed.publish(GradeFeed.Type.UPDATED, grade.getId(), student.getId(), module.getCode(),
+        score);
 
     return ResponseEntity.ok(grade);
   }
@@ -247,15 +589,23 @@ public class GradeController {
    * @throws NoSuchElementException if the grade with the specified ID is not found
    */
   @DeleteMapping(value = "/grades/{id}")
+  @Transactional
   public ResponseEntity<Void> deleteGrade(@PathVariable Long id) {
     try {
       // Fetch the grade with the specified ID from your data source (e.g., database)
       Grade grade = gradeRepository.findById(id).orElseThrow();
+      // the student's other grades are deleted with the student
+      final List<Grade> deleted =
+          gradeRepository.findWithDetailsByStudentId(grade.getStudent().getId());
       // Assuming you have a GradeRepository
       // registrationRepository.deleteById(tempRegistration.getId());
       // Delete the grade
       gradeRepository.deleteById(id);
       studentRepository.deleteById(grade.getStudent().getId());
+      gradeStatsRepository.deleteById(grade.getStudent().getId());
+      gradeSnapshot.recordStudentRemoval(grade.getStudent().getId());
+      tableVersions.recordChange(Table.GRADE, Table.STUDENT, Table.REGISTRATION);
+      gradeFeed.publishDeletions(deleted);
       // registrationRepository.save(tempRegistration);
     } catch (NoSuchElementException e) {
       return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
@@ -272,19 +622,54 @@ public class GradeController {
    * @throws NoSuchElementException if the grade with the specified ID is not found
    */
   @PatchMapping(value = "/grades/{id}")
+  @Transactional
   public ResponseEntity<Grade> updateGradeScore(@PathVariable Long id, @RequestBody Integer score) {
     // Fetch the grade with the specified ID from your data source (e.g., database)
-    Grade grade = gradeRepository.findById(id).orElseThrow(); // Assuming you have a GradeRepository
+    lockStudents(id, null);
+    Grade grade = gradeRepository.findWithDetailsById(id).orElseThrow();
 
     // Update the grade object
+    Integer oldScore = grade.getScore();
     grade.setScore(score);
 
     // Save the updated Grade object
     grade = gradeRepository.save(grade);
+    if (grade.getStudent() != null) {
+      gradeStatsRepository.recordScoreChange(grade.getStudent().getId(), oldScore, score);
+      if (grade.getModule() != null) {
+        gradeSnapshot.recordScore(grade.getStudent().getId(), grade.getModule().getCode(), score);
+      }
+    }
+    tableVersions.recordChange(Table.GRADE);
+    gradeFeed.publish(GradeFeed.Type.UPDATED, grade.getId(),
+        grade.getStudent() == null ? null : grade.getStudent().getId(),
+        grade.getModule() == null ? null : grade.getModule().getCode(), score);
 
     return ResponseEntity.ok(grade);
   }
 
+  // Locks the student of a grade and the student it moves to, if any, in id order, as addGrade
+  // does, so concurrent writes to the grade read its old score one at a time. A write moving the
+  // grade meanwhile holds its old student's lock, so the grade's student is read again once locked.
+  private void lockStudents(Long gradeId, Long newStudentId) {
+    Set<Long> locked = new HashSet<>();
+    Long studentId = gradeRepository.findStudentIdById(gradeId).orElse(null);
+    while (studentId != null && !locked.contains(studentId)) {
+      Set<Long> students = new TreeSet<>();
+      students.add(studentId);
+      if (newStudentId != null) {
+        students.add(newStudentId);
+      }
+      students.removeAll(locked);
+      students.forEach(studentRepository::lockById);
+      locked.addAll(students);
+      studentId = gradeRepository.findStudentIdById(gradeId).orElse(null);
+    }
+    if (newStudentId != null && !locked.contains(newStudentId)) {
+      studentRepository.lockById(newStudentId);
+    }
+  }
+
 
   /*
    * Retrieves the module associated with a specific grade ID.
@@ -322,7 +707,8 @@ public class GradeController {
    */
 
   /**
-   * Retrieves a specific property of a module associated with a grade by grade ID.
+   * Retrieves a specific property of a module associated with a grade by grade ID. Several
+   * properties are read at once with {@link #getGradeFields(Long, String)}.
    *
    * @param id the ID of the grade
    * 
@@ -336,33 +722,12 @@ public class GradeController {
   @GetMapping(value = "/grades/{id}/module/{proprtyId}")
   public ResponseEntity<String> getModulePropertyByGradeId(@PathVariable Long id,
       @PathVariable String proprtyId) throws NoSuchElementException {
-    // Fetch the grade with the specified ID from your data source (e.g., database)
-    Grade grade = gradeRepository.findById(id).orElseThrow(); // Assuming you have a GradeRepository
-
-    // Retrieve the module associated with the grade
-    Module module = grade.getModule();
-
-    // Retrieve the requested property of the module
-    String property;
-    switch (proprtyId) {
-      case "code":
-        property = module.getCode();
-        break;
-      case "name":
-        property = module.getName();
-        break;
-      case "mnc":
-        property = String.valueOf(module.getMnc());
-        break;
-      default:
-        return ResponseEntity.badRequest().body("Invalid property ID");
-    }
-
-    return ResponseEntity.ok(property);
+    return gradeProperty(id, "module", proprtyId);
   }
 
   /**
-   * Retrieves a specific property of a student associated with a grade by grade ID.
+   * Retrieves a specific property of a student associated with a grade by grade ID. Several
+   * properties are read at once with {@link #getGradeFields(Long, String)}.
    *
    * @param id the ID of the grade
    * @param proprtyId the property of the student to retrieve (e.g., "name" or "email" or "first" or
@@ -374,34 +739,25 @@ public class GradeController {
   @GetMapping(value = "/grades/{id}/student/{proprtyId}")
   public ResponseEntity<String> getStudentPropertyByGradeId(@PathVariable Long id,
       @PathVariable String proprtyId) throws NoSuchElementException {
-    // Fetch the grade with the specified ID
-    Grade grade = gradeRepository.findById(id).orElseThrow(); // Assuming you have a GradeRepository
-
-    // Retrieve the student associated with the grade
-    Student student = grade.getStudent();
-
-    // Retrieve the requested property of the student
-    String property;
-    switch (proprtyId) {
-      case "first":
-        property = student.getFirstName();
-        break;
-      case "email":
-        property = student.getEmail();
-        break;
-      case "last":
-        property = student.getLastName();
-        break;
-      case "username":
-        property = student.getUsername();
-        break;
-      case "id":
-        property = String.valueOf(student.getId());
-        break;
-      default:
-        return ResponseEntity.badRequest().body("Invalid property ID");
-    }
+    return gradeProperty(id, "student", proprtyId);
+  }
 
-    return ResponseEntity.ok(property);
+  // reads the one column of the property rather than the grade with its student and module
+  private ResponseEntity<String> gradeProperty(Long id, String owner, String property) {
+    String field = owner + "." + property;
+    List<String> fields;
+    try {
+      fields = GradeFieldRepository.parseFields(field);
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body("Invalid property ID");
+    }
+    if (!fields.equals(List.of(field))) {
+      return ResponseEntity.badRequest().body("Invalid property ID");
+    }
+    Map<String, Object> values = gradeFieldRepository.findFields(fields, List.of(id)).get(id);
+    if (values == null) {
+      throw new NoSuchElementException("Grade not found");
+    }
+    return ResponseEntity.ok(Objects.toString(values.get(field), null));
   }
 }
@@ -0,0 +1,110 @@
+package uk.ac.ucl.comp0010.controller;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.service.GradeIngestQueue;
+
+/**
+ * A controller accepting grade writes asynchronously, for marking windows when many markers submit
+ * at once. Grades are checked and queued, then written in batches by the {@link GradeIngestQueue}.
+ */
+@RestController
+@RequestMapping("/grades/ingest")
+public class GradeIngestController {
+
+  private final StudentRepository studentRepository;
+  private final ModuleRepository moduleRepository;
+  private final GradeIngestQueue gradeIngestQueue;
+
+  /**
+   * Constructs a GradeIngestController.
+   *
+   * @param studentRepository the repository used to check student ids
+   * @param moduleRepository the repository used to check module codes
+   * @param gradeIngestQueue the queue the grades are written from
+   */
+  public GradeIngestController(StudentRepository studentRepository,
+      ModuleRepository moduleRepository, GradeIngestQueue gradeIngestQueue) {
+    this.studentRepository = studentRepository;
+    this.moduleRepository = moduleRepository;
+    this.gradeIngestQueue = gradeIngestQueue;
+  }
+
+  /**
+   * Queues a grade for a student in a module, taking the same parameters as
+   * {@code /grades/addGrade}. If the student already has a grade for the module, its score is
+   * replaced once the grade is written; of several queued grades for the same student and module,
+   * only the last is written.
+   *
+   * @param params a map containing the following keys:
+   *        <ul>
+   *        <li><strong>student_id</strong>: the ID of the student</li>
+   *        <li><strong>module_code</strong>: the code of the module</li>
+   *        <li><strong>score</strong>: the score to assign</li>
+   *        </ul>
+   * @return an ACCEPTED status with the token to look the grade up by, a BAD_REQUEST status if a
+   *         parameter is missing or invalid or the student or module does not exist, or a
+   *         SERVICE_UNAVAILABLE status if the queue is full
+   */
+  @PostMapping
+  public ResponseEntity<Object> ingestGrade(@RequestBody Map<String, String> params) {
+    GradeRow row;
+    try {
+      row = new GradeRow(Long.valueOf(required(params, "student_id")),
+          required(params, "module_code"), Integer.valueOf(required(params, "score")));
+    } catch (NumberFormatException e) {
+      return ResponseEntity.badRequest().body(Map.of("error", "Invalid student_id or score"));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+    }
+    if (!studentRepository.existsById(row.studentId())) {
+      return ResponseEntity.badRequest()
+          .body(Map.of("error", "Unknown student " + row.studentId()));
+    }
+    if (moduleRepository.findByCode(row.moduleCode()).isEmpty()) {
+      return ResponseEntity.badRequest()
+          .body(Map.of("error", "Unknown module " + row.moduleCode()));
+    }
+
+    Optional<GradeIngestQueue.Status> status = gradeIngestQueue.submit(row);
+    if (status.isEmpty()) {
+      return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(null);
+    }
+    URI location = ServletUriComponentsBuilder.fromCurrentRequest().path("/{token}")
+        .buildAndExpand(status.get().token()).toUri();
+    return ResponseEntity.accepted().location(location).body(status.get());
+  }
+
+  /**
+   * Retrieves whether a queued grade is still waiting, was committed or could not be written.
+   *
+   * @param token the token returned when the grade was queued
+   * @return the status of the grade, or a NOT_FOUND status if the token is unknown or has expired
+   */
+  @GetMapping("/{token}")
+  public ResponseEntity<GradeIngestQueue.Status> getIngestStatus(@PathVariable String token) {
+    return gradeIngestQueue.status(token).map(ResponseEntity::ok)
+        .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(null));
+  }
+
+  private static String required(Map<String, String> params, String field) {
+    String value = params.get(field);
+    if (value == null || value.isBlank()) {
+      throw new IllegalArgumentException("Missing " + field);
+    }
+    return value;
+  }
+}
@@ -0,0 +1,49 @@
+package uk.ac.ucl.comp0010.controller;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import uk.ac.ucl.comp0010.service.GradeFeed;
+
+/**
+ * A controller pushing committed grade changes to clients as server-sent events, so they can keep
+ * a copy of the grades up to date without polling {@code /grades}.
+ */
+@RestController
+@RequestMapping("/grades/stream")
+public class GradeStreamController {
+
+  private final GradeFeed gradeFeed;
+
+  /**
+   * Constructs a GradeStreamController.
+   *
+   * @param gradeFeed the feed the events are sent from
+   */
+  public GradeStreamController(GradeFeed gradeFeed) {
+    this.gradeFeed = gradeFeed;
+  }
+
+  /**
+   * Streams {@code grade-created}, {@code grade-updated} and {@code grade-deleted} events as the
+   * changes are committed, each holding the grade's {@code id}, {@code student_id},
+   * {@code module_code} and {@code score}. A client reconnecting with a {@code Last-Event-ID} is
+   * first sent the changes it missed or, if they are no longer kept, a {@code reset} event telling
+   * it to reload the grades. Clients that fall too far behind are disconnected, and can resume the
+   * same way.
+   *
+   * @param lastEventId the id of the last event the client received, if it is reconnecting
+   * @return the event stream, or a SERVICE_UNAVAILABLE status if too many clients are subscribed
+   */
+  @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  public ResponseEntity<SseEmitter> streamGrades(
+      @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+    return gradeFeed.subscribe(lastEventId).map(ResponseEntity::ok)
+        .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+  }
+}
@@ -1,15 +1,29 @@
 package uk.ac.ucl.comp0010.controller;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import uk.ac.ucl.comp0010.model.Module;
 import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.ModuleStats;
+import uk.ac.ucl.comp0010.service.ChangeLog;
+import uk.ac.ucl.comp0010.service.TableVersions;
+import uk.ac.ucl.comp0010.service.TableVersions.Table;
 
 /**
  * Controller for managing the {@link Module} object. This gives us an endpoint when performing
@@ -22,16 +36,29 @@ public class ModuleController {
 
   private final ModuleRepository moduleRepository;
 
+  private final TableVersions tableVersions;
+
+  private final ChangeLog changeLog;
+
+  private final int passMark;
+
   /**
    * Initializes the controller with the module repository which acts as the basis for persistence
    * and retrieval of {@link Module} objects.
    *
    * @param moduleRepository This repository stores all of the module objects
+   * @param tableVersions the version counters the module listing's ETag is derived from
+   * @param changeLog the log of changed modules that clients sync from
+   * @param passMark the lowest score counted as a pass in module statistics
    */
 
   // Repository injection
-  public ModuleController(ModuleRepository moduleRepository) {
+  public ModuleController(ModuleRepository moduleRepository, TableVersions tableVersions,
+      ChangeLog changeLog, @Value("${grades.pass-mark:40}") int passMark) {
     this.moduleRepository = moduleRepository;
+    this.tableVersions = tableVersions;
+    this.changeLog = changeLog;
+    this.passMark = passMark;
   }
 
   /**
@@ -61,20 +88,117 @@ public class ModuleController {
     module.setMnc(mnc);
     module.setCode(code);
     module = moduleRepository.save(module);
+    tableVersions.recordChange(Table.MODULE);
 
     return ResponseEntity.ok(module);
   }
 
   /**
    * Retrieves all modules stored in the repository This simply fetches all data on the modules.
+   * Responses carry an ETag that changes whenever a module is written; a request whose
+   * {@code If-None-Match} holds the current ETag is answered with NOT_MODIFIED without reading the
+   * modules.
    *
+   * @param request the request, checked against the current ETag
    * @return a {@link ResponseEntity} containing the saved {@link Module} object
    */
 
   @GetMapping("/all")
-  public ResponseEntity<List<Module>> getAllStudents() {
+  public ResponseEntity<List<Module>> getAllStudents(WebRequest request) {
+    // read before the modules, so the response is never tagged newer than what it holds
+    if (request.checkNotModified(tableVersions.etag(Table.MODULE))) {
+      return null;
+    }
     List<Module> students = (List<Module>) moduleRepository.findAll();
-    return ResponseEntity.ok(students);
+    return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(students);
   }
 
+  /**
+   * Retrieves several modules by code at once, the key every other module endpoint takes. Modules
+   * are looked up in the cached catalogue, so a batch usually reads nothing from the database.
+   * Modules are returned under {@code _embedded.modules} in the order of the codes, each once;
+   * codes of modules that do not exist are listed under {@code missing}.
+   *
+   * @param codes the codes of the modules, at most {@value BatchGet#MAX_KEYS}
+   * @return the modules found, or a BAD_REQUEST status if there are too many codes
+   */
+  @PostMapping("/batch")
+  public ResponseEntity<Map<String, Object>> getModulesBatch(@RequestBody List<String> codes) {
+    Map<String, Module> catalogue = new HashMap<>();
+    moduleRepository.findAll().forEach(module -> catalogue.put(module.getCode(), module));
+    return BatchGet.response("modules", codes, chunk -> chunk.stream().map(catalogue::get)
+        .filter(Objects::nonNull).toList(), Module::getCode);
+  }
+
+  /**
+   * Retrieves the modules created, updated or deleted since a change version, for clients keeping
+   * a copy of the modules. Changed modules are returned once however often they changed, as they
+   * are now, and deleted modules by id. The response's {@code version} is the one to pass as
+   * {@code since} next time; a {@code since} that is not a version of this database, such as
+   * {@code 0} on a first sync, returns every module with {@code reset} set.
+   *
+   * @param since the change version the client's copy is up to date with
+   * @return the changes since that version
+   */
+  @GetMapping("/changes")
+  public ResponseEntity<Map<String, Object>> getModuleChanges(@RequestParam("since") long since) {
+    ChangeLog.Changes changes = changeLog.changesSince(Table.MODULE, since);
+    List<Module> modules = new ArrayList<>();
+    (changes.reset() ? moduleRepository.findAll() : moduleRepository.findAllById(changes.ids()))
+        .forEach(modules::add);
+    return ResponseEntity
+        .ok(ChangeSet.response(changes, modules, Module::getId, module -> module));
+  }
+
+  /**
+   * Retrieves the score statistics of a module: the number of scored grades, mean, population
+   * standard deviation, median, 10th and 90th percentiles, minimum, maximum, pass rate and a
+   * histogram of ten bands of ten marks. The statistics are aggregated by the database in a single
+   * grouped query, without loading any grade.
+   *
+   * @param code the code of the module
+   * @return the module's statistics, or a NOT_FOUND status if the module does not exist
+   */
+  @GetMapping("/{code}/stats")
+  public ResponseEntity<Map<String, Object>> getModuleStats(@PathVariable String code) {
+    return moduleRepository.findStatsByCode(code, passMark).map(this::moduleStats)
+        .map(ResponseEntity::ok)
+        .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(null));
+  }
+
+  /**
+   * Retrieves the score statistics of several modules at once, in the shape returned by
+   * {@link #getModuleStats(String)}. All modules are aggregated by one grouped query, so a whole
+   * moderation board can be served in a single request.
+   *
+   * @param codes the codes of the modules, or none for every module
+   * @return the statistics of the known modules among the codes, ordered by module code
+   */
+  @GetMapping("/stats")
+  public ResponseEntity<List<Map<String, Object>>> getModulesStats(
+      @RequestParam(value = "codes", required = false) List<String> codes) {
+    List<ModuleStats> rows = codes == null || codes.isEmpty()
+        ? moduleRepository.findAllStats(passMark)
+        : moduleRepository.findStatsByCodes(codes, passMark);
+    return ResponseEntity.ok(rows.stream().map(this::moduleStats).toList());
+  }
+
+  private Map<String, Object> moduleStats(ModuleStats row) {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("code", row.getCode());
+    stats.put("count", row.getCount());
+    stats.put("mean", row.getMean());
+    stats.put("stddev", row.getStddev());
+    stats.put("median", row.getMedian());
+    stats.put("p10", row.getP10());
+    stats.put("p90", row.getP90());
+    stats.put("min", row.getMin());
+    stats.put("max", row.getMax());
+    stats.put("passRate",
+        row.getCount() == 0 ? null : (double) row.getPassed() / row.getCount());
+    stats.put("histogram", List.of(row.getBucket0(), row.getBucket1(), row.getBucket2(),
+        row.getBucket3(), row.getBucket4(), row.getBucket5(), row.getBucket6(), row.getBucket7(),
+        row.getBucket8(), row.getBucket9()));
+    return stats;
+  }
 }
@@ -0,0 +1,64 @@
+package uk.ac.ucl.comp0010.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes rows to a servlet response as newline-delimited JSON.
+ * <p>
+ * Each row is serialized straight onto the response output stream, so nothing but the current row
+ * is held in memory. Writes block while the client is not reading, which throttles the producer of
+ * the rows to the pace of the client.
+ * </p>
+ */
+class NdjsonWriter implements Closeable {
+
+  static final String CONTENT_TYPE = "application/x-ndjson";
+
+  // rows buffered before the response is flushed to the client
+  private static final int FLUSH_INTERVAL = 256;
+
+  private final JsonGenerator generator;
+  private int count;
+
+  /**
+   * Prepares the response for newline-delimited JSON and opens a generator on its output stream.
+   *
+   * @param objectMapper the mapper used to serialize each row
+   * @param response the response to write to
+   * @throws IOException if the output stream cannot be opened
+   */
+  NdjsonWriter(ObjectMapper objectMapper, HttpServletResponse response) throws IOException {
+    response.setContentType(CONTENT_TYPE);
+    response.setCharacterEncoding("UTF-8");
+    this.generator = objectMapper.getFactory().createGenerator(response.getOutputStream());
+  }
+
+  /**
+   * Writes one row followed by a newline. The first row is flushed at once so that the client
+   * receives data as soon as the query yields it.
+   *
+   * @param row the row to write
+   * @throws IOException if the client has gone away
+   */
+  void write(Object row) throws IOException {
+    generator.writeObject(row);
+    generator.writeRaw('\n');
+    if (count++ % FLUSH_INTERVAL == 0) {
+      generator.flush();
+    }
+  }
+
+  /**
+   * Flushes the remaining rows and closes the generator.
+   *
+   * @throws IOException if the client has gone away
+   */
+  @Override
+  public void close() throws IOException {
+    generator.close();
+  }
+}
@@ -0,0 +1,57 @@
+package uk.ac.ucl.comp0010.controller;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Encodes the sort key of the last row of a page as the {@code after} cursor of the next page.
+ * <p>
+ * The cursor carries the key itself rather than the id of the row, so a listing can be paged
+ * through even if that row is deleted or changed between two requests. Each value of the key is
+ * encoded as unpadded URL-safe Base64 and the values are joined with dots, so the cursor needs no
+ * escaping in a query string.
+ * </p>
+ */
+final class PageCursor {
+
+  private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+  private PageCursor() {}
+
+  /**
+   * Encodes a sort key.
+   *
+   * @param values the values of the key, in sort order
+   * @return the cursor
+   */
+  static String encode(Object... values) {
+    List<String> parts = new ArrayList<>(values.length);
+    for (Object value : values) {
+      parts.add(ENCODER.encodeToString(value.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+    return String.join(".", parts);
+  }
+
+  /**
+   * Decodes a sort key.
+   *
+   * @param cursor the cursor, as returned by {@link #encode(Object...)}
+   * @param size the number of values the key holds
+   * @return the values of the key, in sort order
+   * @throws IllegalArgumentException if the cursor is malformed or holds another number of values
+   */
+  static List<String> decode(String cursor, int size) {
+    String[] parts = cursor.split("\\.", -1);
+    if (parts.length != size) {
+      throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+    List<String> values = new ArrayList<>(size);
+    for (String part : parts) {
+      values.add(new String(DECODER.decode(part), StandardCharsets.UTF_8));
+    }
+    return values;
+  }
+}
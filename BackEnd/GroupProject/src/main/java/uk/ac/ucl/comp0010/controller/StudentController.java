@@ -1,9 +1,21 @@
 package uk.ac.ucl.comp0010.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -11,9 +23,22 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import uk.ac.ucl.comp0010.model.Grade;
 import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.model.StudentGradeStats;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.StudentGradeStatsRepository;
+import uk.ac.ucl.comp0010.repository.StudentModuleRow;
 import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.service.ChangeLog;
+import uk.ac.ucl.comp0010.service.GradeFeed;
+import uk.ac.ucl.comp0010.service.GradeSnapshot;
+import uk.ac.ucl.comp0010.service.TableVersions;
+import uk.ac.ucl.comp0010.service.TableVersions.Table;
 
 /**
  * A controller managing student objects.
@@ -22,10 +47,42 @@ import uk.ac.ucl.comp0010.repository.StudentRepository;
 @RequestMapping("/students")
 public class StudentController {
 
+  private static final int DEFAULT_PAGE_SIZE = 50;
+  private static final int MAX_PAGE_SIZE = 500;
+
   private final StudentRepository studentRepository;
+  private final GradeRepository gradeRepository;
+  private final StudentGradeStatsRepository gradeStatsRepository;
+  private final GradeSnapshot gradeSnapshot;
+  private final TableVersions tableVersions;
+  private final ChangeLog changeLog;
+  private final GradeFeed gradeFeed;
+  private final ObjectMapper objectMapper;
 
-  public StudentController(StudentRepository studentRepository) {
+  /**
+   * Constructs a StudentController.
+   *
+   * @param studentRepository the repository used to manage student data
+   * @param gradeRepository the repository used to find the grades deleted with a student
+   * @param gradeStatsRepository the repository keeping each student's grade totals
+   * @param gradeSnapshot the in-memory copy of the grades kept for analytics
+   * @param tableVersions the version counters the student listing's ETag is derived from
+   * @param changeLog the log of changed students that clients sync from
+   * @param gradeFeed the feed the deletion of a student's grades is pushed to subscribers through
+   * @param objectMapper the mapper used to serialize exported students
+   */
+  public StudentController(StudentRepository studentRepository, GradeRepository gradeRepository,
+      StudentGradeStatsRepository gradeStatsRepository, GradeSnapshot gradeSnapshot,
+      TableVersions tableVersions, ChangeLog changeLog, GradeFeed gradeFeed,
+      ObjectMapper objectMapper) {
     this.studentRepository = studentRepository;
+    this.gradeRepository = gradeRepository;
+    this.gradeStatsRepository = gradeStatsRepository;
+    this.gradeSnapshot = gradeSnapshot;
+    this.tableVersions = tableVersions;
+    this.changeLog = changeLog;
+    this.gradeFeed = gradeFeed;
+    this.objectMapper = objectMapper;
   }
 
   /**
@@ -42,18 +99,168 @@ public class StudentController {
     student.setUsername(params.get("username"));
     student.setEmail(params.get("email"));
     student = studentRepository.save(student);
+    tableVersions.recordChange(Table.STUDENT);
     return ResponseEntity.ok(student);
   }
 
   /**
    * Retrieves all students from the database.
+   * <p>
+   * When {@code after} or {@code limit} is given, a single page is returned instead, ordered by
+   * {@code sort} and starting after the cursor {@code after}. Pages are read with keyset range
+   * queries rather than offsets. If more students follow, the response carries a {@code Link}
+   * header with {@code rel="next"} pointing at the next page. In id order the cursor is the id of
+   * the last student of the page; in name order it is an opaque encoding of that student's last
+   * name, first name and id, so paging carries on even if the student is deleted. Students without
+   * a last or first name are not part of the name ordering.
+   * </p>
+   * <p>
+   * Responses carry an ETag that changes whenever a student, registration or module is written. A
+   * request whose {@code If-None-Match} holds the current ETag is answered with NOT_MODIFIED
+   * without querying the students.
+   * </p>
    *
-   * @return a list of all student objects
+   * @param after the cursor of the previous page, if any
+   * @param limit the maximum number of students in the page
+   * @param sort the page order, either {@code id} or {@code name} (last name, then first name)
+   * @param request the request, checked against the current ETag
+   * @return a list of all student objects, or a BAD_REQUEST status if a parameter is invalid
    */
   @GetMapping("/all")
-  public ResponseEntity<List<Student>> getAllStudents() {
-    List<Student> students = (List<Student>) studentRepository.findAll();
-    return ResponseEntity.ok(students);
+  public ResponseEntity<List<Student>> getAllStudents(
+      @RequestParam(value = "after", required = false) String after,
+      @RequestParam(value = "limit", required = false) Integer limit,
+      @RequestParam(value = "sort", defaultValue = "id") String sort, WebRequest request) {
+    // read before the students, so the response is never tagged newer than what it holds
+    if (request.checkNotModified(
+        tableVersions.etag(Table.STUDENT, Table.REGISTRATION, Table.MODULE))) {
+      return null;
+    }
+    if (after == null && limit == null) {
+      List<Student> students = (List<Student>) studentRepository.findAll();
+      return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(students);
+    }
+
+    int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+    if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+      return ResponseEntity.badRequest().build();
+    }
+    List<Student> students;
+    try {
+      // fetch one extra row to know whether another page follows
+      students = findStudentPage(after, sort, Limit.of(pageSize + 1));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    }
+    if (students.size() <= pageSize) {
+      return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(students);
+    }
+    students = students.subList(0, pageSize);
+    Student last = students.get(pageSize - 1);
+    Object cursor = sort.equals("name")
+        ? PageCursor.encode(last.getLastName(), last.getFirstName(), last.getId())
+        : last.getId();
+    String next = ServletUriComponentsBuilder.fromCurrentRequest()
+        .replaceQueryParam("after", cursor).replaceQueryParam("limit", pageSize).toUriString();
+    return ResponseEntity.ok().cacheControl(CacheControl.noCache())
+        .header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"").body(students);
+  }
+
+  private List<Student> findStudentPage(String after, String sort, Limit limit) {
+    switch (sort) {
+      case "id":
+        return studentRepository.findByIdGreaterThanOrderByIdAsc(
+            after == null ? Long.MIN_VALUE : Long.valueOf(after), limit);
+      case "name":
+        if (after == null) {
+          return studentRepository.findPageAfterName("", "", Long.MIN_VALUE, limit);
+        }
+        List<String> key = PageCursor.decode(after, 3);
+        return studentRepository.findPageAfterName(key.get(0), key.get(1),
+            Long.valueOf(key.get(2)), limit);
+      default:
+        throw new IllegalArgumentException("Invalid sort: " + sort);
+    }
+  }
+
+  /**
+   * Streams all students as newline-delimited JSON, one student per line, in id order.
+   * <p>
+   * Students are read with their registered modules through a single forward-only database cursor
+   * over one row per registration, and each student is written to the response once its rows have
+   * been read. No entity is loaded, so memory use does not grow with the number of students.
+   * </p>
+   *
+   * @param response the response the students are written to
+   * @throws IOException if the client has gone away
+   */
+  @GetMapping(value = "/export", produces = NdjsonWriter.CONTENT_TYPE)
+  @Transactional(readOnly = true)
+  public void exportStudents(HttpServletResponse response) throws IOException {
+    try (Stream<StudentModuleRow> rows = studentRepository.streamAllWithRegisteredModules();
+        NdjsonWriter writer = new NdjsonWriter(objectMapper, response)) {
+      Iterator<StudentModuleRow> iterator = rows.iterator();
+      Map<String, Object> student = null;
+      List<Map<String, Object>> modules = null;
+      while (iterator.hasNext()) {
+        StudentModuleRow row = iterator.next();
+        if (student == null || !student.get("id").equals(row.studentId())) {
+          if (student != null) {
+            writer.write(student);
+          }
+          modules = new ArrayList<>();
+          student = exportedStudent(row, modules);
+        }
+        if (row.moduleId() != null) {
+          Map<String, Object> module = new LinkedHashMap<>();
+          module.put("id", row.moduleId());
+          module.put("code", row.moduleCode());
+          module.put("name", row.moduleName());
+          module.put("mnc", row.moduleMnc());
+          modules.add(module);
+        }
+      }
+      if (student != null) {
+        writer.write(student);
+      }
+    }
+  }
+
+  // a student in the shape the Student entity is serialized with
+  private static Map<String, Object> exportedStudent(StudentModuleRow row,
+      List<Map<String, Object>> registeredModules) {
+    Map<String, Object> student = new LinkedHashMap<>();
+    student.put("id", row.studentId());
+    student.put("firstName", row.firstName());
+    student.put("lastName", row.lastName());
+    student.put("username", row.username());
+    student.put("email", row.email());
+    student.put("registeredModules", registeredModules);
+    return student;
+  }
+
+  /**
+   * Retrieves the students created, updated or deleted since a change version, for clients keeping
+   * a copy of the students.
+   * <p>
+   * Changed students are returned once however often they changed, as they are now, and deleted
+   * students by id; deleting a student also deletes their grades, which show up in
+   * {@code /grades/changes}. The response's {@code version} is the one to pass as {@code since}
+   * next time. A {@code since} that is not a version of this database, such as {@code 0} on a first
+   * sync, returns every student with {@code reset} set, to replace the client's copy.
+   * </p>
+   *
+   * @param since the change version the client's copy is up to date with
+   * @return the changes since that version
+   */
+  @GetMapping("/changes")
+  public ResponseEntity<Map<String, Object>> getStudentChanges(@RequestParam("since") long since) {
+    ChangeLog.Changes changes = changeLog.changesSince(Table.STUDENT, since);
+    List<Student> students = changes.reset() ? (List<Student>) studentRepository.findAll()
+        : changes.ids().isEmpty() ? List.of()
+        : studentRepository.findWithRegisteredModulesByIdInOrderByIdAsc(changes.ids());
+    return ResponseEntity
+        .ok(ChangeSet.response(changes, students, Student::getId, student -> student));
   }
 
   /**
@@ -65,7 +272,7 @@ public class StudentController {
   @GetMapping("/{student_id}")
   public ResponseEntity<?> getStudentById(@PathVariable("student_id") Long studentId) {
     try {
-      Student student = studentRepository.findById(studentId)
+      Student student = studentRepository.findWithRegisteredModulesById(studentId)
           .orElseThrow(() -> new RuntimeException("Student not found"));
       return ResponseEntity.ok(student);
     } catch (RuntimeException e) {
@@ -73,6 +280,43 @@ public class StudentController {
     }
   }
 
+  /**
+   * Retrieves several students by ID at once, as {@link #getStudentById(Long)} returns them, with a
+   * query per {@value BatchGet#CHUNK_SIZE} IDs rather than a request per student. Students are
+   * returned under {@code _embedded.students} in the order of the IDs, each once; IDs of students
+   * that do not exist are listed under {@code missing}.
+   *
+   * @param ids the IDs of the students, at most {@value BatchGet#MAX_KEYS}
+   * @return the students found, or a BAD_REQUEST status if there are too many IDs
+   */
+  @PostMapping("/batch")
+  public ResponseEntity<Map<String, Object>> getStudentsBatch(@RequestBody List<Long> ids) {
+    return BatchGet.response("students", ids,
+        studentRepository::findWithRegisteredModulesByIdInOrderByIdAsc, Student::getId);
+  }
+
+  /**
+   * Retrieves the totals of a student's scored grades: how many there are, their sum, lowest,
+   * highest and average. The totals are kept up to date on every grade write, so no grades are
+   * loaded.
+   *
+   * @param studentId the ID of the student
+   * @return the student's grade totals, or a NOT_FOUND status if the student does not exist
+   */
+  @GetMapping("/{student_id}/stats")
+  public ResponseEntity<StudentGradeStats> getStudentStats(
+      @PathVariable("student_id") Long studentId) {
+    Optional<StudentGradeStats> stats = gradeStatsRepository.findById(studentId);
+    if (stats.isPresent()) {
+      return ResponseEntity.ok(stats.get());
+    }
+    // students who have never been graded have no totals yet
+    if (studentRepository.existsById(studentId)) {
+      return ResponseEntity.ok(new StudentGradeStats(studentId, 0, 0, null, null));
+    }
+    return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+  }
+
   /**
    * Updates the details of an existing student.
    *
@@ -85,13 +329,14 @@ public class StudentController {
   public ResponseEntity<Student> updateStudent(@PathVariable("student_id") Long studentId,
       @RequestBody Map<String, String> params) {
     try {
-      Student student = studentRepository.findById(studentId)
+      Student student = studentRepository.findWithRegisteredModulesById(studentId)
           .orElseThrow(() -> new RuntimeException("Student not found"));
       student.setFirstName(params.get("firstName"));
       student.setLastName(params.get("lastName"));
       student.setUsername(params.get("username"));
       student.setEmail(params.get("email"));
       student = studentRepository.save(student);
+      tableVersions.recordChange(Table.STUDENT);
       return ResponseEntity.ok(student);
     } catch (RuntimeException e) {
       return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
@@ -105,11 +350,18 @@ public class StudentController {
    * @return a message indicating the student was successfully deleted
    */
   @DeleteMapping("/delete/{student_id}")
+  @Transactional
   public ResponseEntity<String> deleteStudent(@PathVariable("student_id") Long studentId) {
     try {
       Student student = studentRepository.findById(studentId)
           .orElseThrow(() -> new RuntimeException("Student not found"));
+      // the student's grades are deleted with the student
+      final List<Grade> grades = gradeRepository.findWithDetailsByStudentId(studentId);
       studentRepository.delete(student);
+      gradeStatsRepository.deleteById(studentId);
+      gradeSnapshot.recordStudentRemoval(studentId);
+      tableVersions.recordChange(Table.STUDENT, Table.GRADE, Table.REGISTRATION);
+      gradeFeed.publishDeletions(grades);
       return ResponseEntity.ok("Student deleted successfully");
     } catch (RuntimeException e) {
       return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Student not found");
@@ -0,0 +1,59 @@
+package uk.ac.ucl.comp0010.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * The single row holding the last change version handed out.
+ * <p>
+ * Each writing transaction takes the next version by incrementing the counter just before it
+ * commits, which locks the row until the commit. Transactions therefore commit in the order of
+ * their versions, so once a version is visible every lower version is too. Versions start from
+ * the time the counter was created, scaled up, so that versions handed out by an earlier database
+ * are lower than any of this one.
+ * </p>
+ */
+@Entity
+@Table(name = "change_counter")
+public class ChangeCounter {
+
+  @Id
+  private Integer id;
+
+  /**
+   * The version the counter started from.
+   */
+  @Column(name = "origin", nullable = false)
+  private long origin;
+
+  /**
+   * The last version handed out.
+   */
+  @Column(name = "change_version", nullable = false)
+  private long version;
+
+  /**
+   * Default constructor required by JPA.
+   */
+  public ChangeCounter() {}
+
+  /**
+   * Gets the version the counter started from.
+   *
+   * @return the first version
+   */
+  public long getOrigin() {
+    return origin;
+  }
+
+  /**
+   * Gets the last version handed out.
+   *
+   * @return the current version
+   */
+  public long getVersion() {
+    return version;
+  }
+}
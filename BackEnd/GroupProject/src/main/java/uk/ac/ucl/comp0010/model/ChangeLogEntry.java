@@ -0,0 +1,80 @@
+package uk.ac.ucl.comp0010.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * A record that a grade, student or module was inserted, updated or deleted by the transaction
+ * that committed as a given change version.
+ * <p>
+ * Entries are written and read in bulk through the change log repository rather than as entities.
+ * They are indexed on (table, version) so that the rows changed since a version can be found
+ * without scanning the log, and on (table, row, version) so that entries superseded by a later
+ * change to the same row can be removed.
+ * </p>
+ */
+@Entity
+@Table(name = "change_log",
+    indexes = {@Index(name = "idx_change_log_version", columnList = "table_name, change_version"),
+        @Index(name = "idx_change_log_row", columnList = "table_name, row_id, change_version")})
+public class ChangeLogEntry {
+
+  @Id
+  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  private Long id;
+
+  /**
+   * The change version of the transaction that made the change.
+   */
+  @Column(name = "change_version", nullable = false)
+  private long version;
+
+  /**
+   * The table the changed row belongs to.
+   */
+  @Column(name = "table_name", nullable = false, length = 20)
+  private String tableName;
+
+  /**
+   * The ID of the changed row.
+   */
+  @Column(name = "row_id", nullable = false)
+  private Long rowId;
+
+  /**
+   * Default constructor required by JPA.
+   */
+  public ChangeLogEntry() {}
+
+  /**
+   * Gets the change version of the transaction that made the change.
+   *
+   * @return the change version
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gets the table the changed row belongs to.
+   *
+   * @return the table name
+   */
+  public String getTableName() {
+    return tableName;
+  }
+
+  /**
+   * Gets the ID of the changed row.
+   *
+   * @return the row ID
+   */
+  public Long getRowId() {
+    return rowId;
+  }
+}
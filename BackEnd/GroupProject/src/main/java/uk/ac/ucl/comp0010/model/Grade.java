@@ -4,8 +4,14 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedSubgraph;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 
 /**
  * Represents a Grade for a student in a module.
@@ -13,10 +19,31 @@ import jakarta.persistence.ManyToOne;
  * This entity stores the information about the grade a student received in a particular module. The
  * grade includes a score, a reference to the student, and a reference to the module.
  * </p>
+ * <p>
+ * Grades are indexed on (score, id) so that listings sorted by score can be paged by key. A student
+ * has at most one grade per module.
+ * </p>
  */
 @Entity
+@NamedEntityGraph(name = Grade.WITH_DETAILS,
+    attributeNodes = {@NamedAttributeNode("module"),
+        @NamedAttributeNode(value = "student", subgraph = "student")},
+    subgraphs = {
+        @NamedSubgraph(name = "student",
+            attributeNodes = @NamedAttributeNode(value = "registrations",
+                subgraph = "registration")),
+        @NamedSubgraph(name = "registration", attributeNodes = @NamedAttributeNode("module"))})
+@Table(indexes = @Index(name = "idx_grade_score", columnList = "score, id"),
+    uniqueConstraints = @UniqueConstraint(name = "uk_grade_student_module",
+        columnNames = {"student_id", "module_id"}))
 public class Grade {
 
+  /**
+   * Entity graph fetching everything a grade is serialized with: its module, its student and the
+   * modules the student is registered for.
+   */
+  public static final String WITH_DETAILS = "Grade.details";
+
   /**
    * The unique identifier for the grade. This is the primary key for the grade entity.
    */
@@ -1,16 +1,23 @@
 package uk.ac.ucl.comp0010.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import org.hibernate.annotations.BatchSize;
 
 
 /**
  * Represents a module with a code, name, and a boolean indicating whether it is mandatory.
+ * <p>
+ * Modules referenced lazily from several registrations or grades are loaded together in batches.
+ * </p>
  */
 @Entity
+@BatchSize(size = 100)
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class Module {
 
   @Id
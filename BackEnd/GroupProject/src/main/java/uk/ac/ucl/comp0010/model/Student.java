@@ -1,17 +1,26 @@
 package uk.ac.ucl.comp0010.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.CascadeType;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
-import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
+import jakarta.persistence.NamedSubgraph;
 import jakarta.persistence.OneToMany;
+import jakarta.persistence.PostLoad;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
+import java.util.function.Function;
+import org.hibernate.annotations.BatchSize;
 import uk.ac.ucl.comp0010.exception.NoGradeAvailableException;
 import uk.ac.ucl.comp0010.exception.NoRegistrationException;
 
@@ -21,11 +30,42 @@ import uk.ac.ucl.comp0010.exception.NoRegistrationException;
  * This entity class is used to store and manage a student's information including their grades,
  * registration details, and other attributes such as name, username, and email.
  * </p>
+ * <p>
+ * The grades and registrations are loaded lazily. Callers that need them up front load the student
+ * through one of the entity graphs declared here; otherwise the collections of several students
+ * are initialised together in batches.
+ * </p>
+ * <p>
+ * Grades and registrations are looked up by module code through indexes kept alongside the lists,
+ * so adding, finding and checking them takes constant time however long the student's history.
+ * The indexes are built from the lists when first needed and kept in step by the methods here,
+ * which are the only ones changing the lists: the setters take a copy of the list they are given,
+ * and the indexes are dropped whenever the student is loaded or refreshed.
+ * </p>
  */
 @Entity
-@Table(name = "student")
+@NamedEntityGraph(name = Student.WITH_REGISTERED_MODULES,
+    attributeNodes = @NamedAttributeNode(value = "registrations", subgraph = "registration"),
+    subgraphs = @NamedSubgraph(name = "registration",
+        attributeNodes = @NamedAttributeNode("module")))
+@NamedEntityGraph(name = Student.WITH_GRADES,
+    attributeNodes = @NamedAttributeNode(value = "grades", subgraph = "grade"),
+    subgraphs = @NamedSubgraph(name = "grade", attributeNodes = @NamedAttributeNode("module")))
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@Table(name = "student",
+    indexes = @Index(name = "idx_student_name", columnList = "lastName, firstName, id"))
 public class Student {
 
+  /**
+   * Entity graph fetching the student's registrations and their modules.
+   */
+  public static final String WITH_REGISTERED_MODULES = "Student.registeredModules";
+
+  /**
+   * Entity graph fetching the student's grades and their modules.
+   */
+  public static final String WITH_GRADES = "Student.grades";
+
   /**
    * The unique identifier for the student. This is the primary key for the student entity.
    */
@@ -61,15 +101,29 @@ public class Student {
   /**
    * The grades associated with this student. This represents the student's scores for modules.
    */
-  @OneToMany(mappedBy = "student", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+  @OneToMany(mappedBy = "student", cascade = CascadeType.ALL)
+  @BatchSize(size = 100)
   private List<Grade> grades = new ArrayList<>();
 
   /**
    * The registrations for modules that this student is enrolled in.
    */
-  @OneToMany(mappedBy = "student", cascade = CascadeType.ALL, fetch = FetchType.EAGER)
+  @OneToMany(mappedBy = "student", cascade = CascadeType.ALL)
+  @BatchSize(size = 100)
   private List<Registration> registrations = new ArrayList<>();
 
+  /**
+   * The grades by module code, built from {@link #grades} when first needed. Not persisted.
+   */
+  @Transient
+  private Map<String, Grade> gradesByModule;
+
+  /**
+   * The registrations by module code, built from {@link #registrations} when first needed. Not
+   * persisted.
+   */
+  @Transient
+  private Map<String, Registration> registrationsByModule;
 
   /**
    * Default constructor for the Student class. Initializes the student without setting any fields.
@@ -202,21 +256,25 @@ public class Student {
 
 
   /**
-   * Sets the grades for the student.
+   * Sets the grades for the student. The student keeps a copy of the list, so later changes to the
+   * given list do not affect it.
    *
    * @param grades the list of grades to set
    */
   public void setGrades(List<Grade> grades) {
-    this.grades = grades;
+    this.grades = new ArrayList<>(grades);
+    this.gradesByModule = null;
   }
 
   /**
-   * Sets the registrations for the student.
+   * Sets the registrations for the student. The student keeps a copy of the list, so later changes
+   * to the given list do not affect it.
    *
    * @param registrations the list of registrations to set
    */
   public void setRegistrations(List<Registration> registrations) {
-    this.registrations = registrations;
+    this.registrations = new ArrayList<>(registrations);
+    this.registrationsByModule = null;
   }
 
   /**
@@ -262,13 +320,14 @@ public class Student {
      */
     grade.setStudent(this);
 
-    Optional<Grade> existingGrade = grades.stream()
-        .filter(g -> g.getModule().getCode().equals(grade.getModule().getCode())).findFirst();
+    String code = grade.getModule().getCode();
+    Grade existingGrade = gradeIndex().get(code);
 
-    if (existingGrade.isPresent()) {
-      existingGrade.get().setScore(grade.getScore());
+    if (existingGrade != null) {
+      existingGrade.setScore(grade.getScore());
     } else {
       grades.add(grade);
+      gradesByModule.put(code, grade);
     }
   }
 
@@ -288,9 +347,12 @@ public class Student {
      * " is not registered for module " + module.getCode()); }
      */
 
-    return grades.stream().filter(grade -> grade.getModule().getCode().equals(module.getCode()))
-        .findFirst().orElseThrow(() -> new NoGradeAvailableException(
-            "No grade available for student " + id + " in module " + module.getCode()));
+    Grade grade = gradeIndex().get(module.getCode());
+    if (grade == null) {
+      throw new NoGradeAvailableException(
+          "No grade available for student " + id + " in module " + module.getCode());
+    }
+    return grade;
   }
 
   /**
@@ -299,14 +361,14 @@ public class Student {
    * @param module the module to register for
    */
   public void registerModule(Module module) {
-    boolean alreadyRegistered = registrations.stream()
-        .anyMatch(registration -> registration.getModule().getCode().equals(module.getCode()));
+    boolean alreadyRegistered = registrationIndex().containsKey(module.getCode());
 
     if (!alreadyRegistered) {
       Registration registration = new Registration();
       registration.setStudent(this);
       registration.setModule(module);
       registrations.add(registration);
+      registrationsByModule.put(module.getCode(), registration);
     }
   }
 
@@ -316,7 +378,7 @@ public class Student {
    * @return a list of modules the student is registered for
    */
   public List<Module> getRegisteredModules() {
-    List<Module> modules = new ArrayList<>();
+    List<Module> modules = new ArrayList<>(registrations.size());
     for (Registration registration : registrations) {
       modules.add(registration.getModule());
     }
@@ -330,8 +392,37 @@ public class Student {
    * @return true if the student is registered, false otherwise
    */
   public boolean isRegisteredFor(Module module) {
-    return registrations.stream()
-        .anyMatch(registration -> registration.getModule().getCode().equals(module.getCode()));
+    return registrationIndex().containsKey(module.getCode());
+  }
+
+  // the lists are replaced or refilled when the student is loaded or refreshed
+  @PostLoad
+  void dropIndexes() {
+    gradesByModule = null;
+    registrationsByModule = null;
+  }
+
+  private Map<String, Grade> gradeIndex() {
+    if (gradesByModule == null) {
+      gradesByModule = index(grades, Grade::getModule);
+    }
+    return gradesByModule;
+  }
+
+  private Map<String, Registration> registrationIndex() {
+    if (registrationsByModule == null) {
+      registrationsByModule = index(registrations, Registration::getModule);
+    }
+    return registrationsByModule;
+  }
+
+  // keyed by module code; the first entry for a module wins, as a scan of the list would find
+  private static <T> Map<String, T> index(List<T> entries, Function<T, Module> module) {
+    Map<String, T> index = new HashMap<>(Math.max(16, entries.size() * 2));
+    for (T entry : entries) {
+      index.putIfAbsent(module.apply(entry).getCode(), entry);
+    }
+    return index;
   }
 }
 
@@ -0,0 +1,125 @@
+package uk.ac.ucl.comp0010.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Running totals over the scored grades of one student.
+ * <p>
+ * The totals are kept up to date by every write to the student's grades, so that the average and
+ * range of a student's scores can be read without loading the grades themselves.
+ * </p>
+ */
+@Entity
+@Table(name = "student_grade_stats")
+public class StudentGradeStats {
+
+  /**
+   * The ID of the student these totals belong to.
+   */
+  @Id
+  @Column(name = "student_id")
+  private Long studentId;
+
+  /**
+   * The number of grades with a score.
+   */
+  @Column(name = "grade_count", nullable = false)
+  private long count;
+
+  /**
+   * The sum of the scores.
+   */
+  @Column(name = "score_sum", nullable = false)
+  private long sum;
+
+  /**
+   * The lowest score, or null if there are no scores.
+   */
+  @Column(name = "min_score")
+  private Integer min;
+
+  /**
+   * The highest score, or null if there are no scores.
+   */
+  @Column(name = "max_score")
+  private Integer max;
+
+  /**
+   * Default constructor required by JPA.
+   */
+  public StudentGradeStats() {}
+
+  /**
+   * Constructs the totals for a student.
+   *
+   * @param studentId the ID of the student
+   * @param count the number of scores
+   * @param sum the sum of the scores
+   * @param min the lowest score
+   * @param max the highest score
+   */
+  public StudentGradeStats(Long studentId, long count, long sum, Integer min, Integer max) {
+    this.studentId = studentId;
+    this.count = count;
+    this.sum = sum;
+    this.min = min;
+    this.max = max;
+  }
+
+  /**
+   * Gets the ID of the student.
+   *
+   * @return the student ID
+   */
+  public Long getStudentId() {
+    return studentId;
+  }
+
+  /**
+   * Gets the number of scored grades.
+   *
+   * @return the number of scores
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Gets the sum of the scores.
+   *
+   * @return the sum of the scores
+   */
+  public long getSum() {
+    return sum;
+  }
+
+  /**
+   * Gets the lowest score.
+   *
+   * @return the lowest score, or null if there are no scores
+   */
+  public Integer getMin() {
+    return min;
+  }
+
+  /**
+   * Gets the highest score.
+   *
+   * @return the highest score, or null if there are no scores
+   */
+  public Integer getMax() {
+    return max;
+  }
+
+  /**
+   * Gets the average score, matching {@link Student#computeAverage()}.
+   *
+   * @return the average score, or null if there are no scores
+   */
+  public Float getAverage() {
+    return count == 0 ? null : (float) sum / count;
+  }
+}
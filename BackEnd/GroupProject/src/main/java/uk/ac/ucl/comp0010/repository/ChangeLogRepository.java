@@ -0,0 +1,128 @@
+package uk.ac.ucl.comp0010.repository;
+
+import java.util.Collection;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * A repository writing and reading the change log and its counter with JDBC.
+ * <p>
+ * The log is written once per transaction, just before it commits, and read by row IDs only, so
+ * neither needs entities.
+ * </p>
+ */
+@Repository
+public class ChangeLogRepository {
+
+  // the id of the counter's only row
+  private static final int COUNTER = 1;
+
+  private static final String APPEND =
+      "insert into change_log (change_version, table_name, row_id) values (?, ?, ?)";
+
+  // logs the grade of a student and module, if there is one
+  private static final String APPEND_GRADE =
+      "insert into change_log (change_version, table_name, row_id)"
+          + " select cast(? as bigint), cast(? as varchar), g.id from grade g"
+          + " join module m on m.id = g.module_id where g.student_id = ? and m.code = ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public ChangeLogRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Creates the change counter, starting from the given version, unless it already exists.
+   *
+   * @param origin the first version
+   */
+  public void createCounter(long origin) {
+    jdbcTemplate.update("merge into change_counter c"
+        + " using (select cast(? as int) as id, cast(? as bigint) as origin) u on c.id = u.id"
+        + " when not matched then insert (id, origin, change_version)"
+        + " values (u.id, u.origin, u.origin)", COUNTER, origin);
+  }
+
+  /**
+   * Takes the next change version. The counter stays locked until the calling transaction ends,
+   * so this is meant to be the last statement before the transaction commits.
+   *
+   * @return the version for the calling transaction's changes
+   */
+  public long nextVersion() {
+    jdbcTemplate.update(
+        "update change_counter set change_version = change_version + 1 where id = ?", COUNTER);
+    return jdbcTemplate.queryForObject(
+        "select change_version from change_counter where id = ?", Long.class, COUNTER);
+  }
+
+  /**
+   * Reads the first and the last committed change version.
+   *
+   * @return the versions handed out so far
+   */
+  public ChangeWindow window() {
+    return jdbcTemplate.queryForObject(
+        "select origin, change_version from change_counter where id = ?",
+        (rs, rowNum) -> new ChangeWindow(rs.getLong(1), rs.getLong(2)), COUNTER);
+  }
+
+  /**
+   * Logs changes to rows of a table, in a single JDBC batch.
+   *
+   * @param version the version of the changes
+   * @param table the table the rows belong to
+   * @param ids the IDs of the changed rows
+   */
+  public void append(long version, String table, Collection<Long> ids) {
+    jdbcTemplate.batchUpdate(APPEND, ids, ids.size(), (statement, id) -> {
+      statement.setLong(1, version);
+      statement.setString(2, table);
+      statement.setLong(3, id);
+    });
+  }
+
+  /**
+   * Logs changes to grades identified by student and module code, in a single JDBC batch.
+   *
+   * @param version the version of the changes
+   * @param table the table the grades belong to
+   * @param rows the changed grades; their scores are ignored
+   */
+  public void appendGrades(long version, String table, Collection<GradeRow> rows) {
+    jdbcTemplate.batchUpdate(APPEND_GRADE, rows, rows.size(), (statement, row) -> {
+      statement.setLong(1, version);
+      statement.setString(2, table);
+      statement.setLong(3, row.studentId());
+      statement.setString(4, row.moduleCode());
+    });
+  }
+
+  /**
+   * Finds the rows of a table changed after one version, up to and including another.
+   *
+   * @param table the table
+   * @param after the version the caller is up to date with
+   * @param upTo the last version to include
+   * @return the IDs of the changed rows, each once, in ascending order
+   */
+  public List<Long> findChangedIds(String table, long after, long upTo) {
+    return jdbcTemplate.queryForList("select distinct row_id from change_log"
+        + " where table_name = ? and change_version > ? and change_version <= ? order by row_id",
+        Long.class, table, after, upTo);
+  }
+
+  /**
+   * Removes the entries superseded by a later change to the same row; the rows changed since any
+   * version stay the same.
+   *
+   * @return the number of entries removed
+   */
+  public int deleteSuperseded() {
+    return jdbcTemplate.update("delete from change_log c where exists (select 1 from change_log d"
+        + " where d.table_name = c.table_name and d.row_id = c.row_id"
+        + " and d.change_version > c.change_version)");
+  }
+}
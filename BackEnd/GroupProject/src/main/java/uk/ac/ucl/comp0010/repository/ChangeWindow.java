@@ -0,0 +1,10 @@
+package uk.ac.ucl.comp0010.repository;
+
+/**
+ * The range of change versions handed out by this database.
+ *
+ * @param origin the version the change counter started from
+ * @param version the last version handed out
+ */
+public record ChangeWindow(long origin, long version) {
+}
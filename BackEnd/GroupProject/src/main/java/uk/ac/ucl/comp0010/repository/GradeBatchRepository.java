@@ -0,0 +1,97 @@
+package uk.ac.ucl.comp0010.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * A repository writing grades in JDBC batches.
+ * <p>
+ * Grade ids are identity columns, which stops Hibernate from batching inserts. Rows written here
+ * bypass Hibernate and are sent as one batched upsert statement, with the ids assigned by the
+ * database as rows are inserted and read back afterwards, for the grade change feed.
+ * </p>
+ */
+@Repository
+public class GradeBatchRepository {
+
+  // same upsert as GradeRepository.upsert, with the student and module assumed to exist
+  private static final String UPSERT = "merge into grade g"
+      + " using (select cast(? as bigint) as student_id, m.id as module_id,"
+      + " cast(? as int) as score from module m where m.code = ?) u"
+      + " on g.student_id = u.student_id and g.module_id = u.module_id"
+      + " when matched then update set score = u.score"
+      + " when not matched then insert (student_id, module_id, score)"
+      + " values (u.student_id, u.module_id, u.score)";
+
+  // the grades of any of some students in any of some modules, by ID, student and module code
+  private static final String FIND_IDS = "select g.id, g.student_id, m.code from grade g"
+      + " join module m on m.id = g.module_id where g.student_id in (%s) and m.code in (%s)";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  public GradeBatchRepository(JdbcTemplate jdbcTemplate) {
+    this.jdbcTemplate = jdbcTemplate;
+  }
+
+  /**
+   * Inserts or updates each grade, keyed on its student and module, in a single JDBC batch. The
+   * caller is expected to run this inside a transaction. The IDs of the grades are looked up
+   * before the batch, and those of inserted grades again after it.
+   *
+   * @param rows the grades to write, in order; later rows win over earlier ones
+   * @return each grade written, once per student and module, with the last score written for it
+   */
+  public List<UpsertedGrade> upsertAll(List<GradeRow> rows) {
+    Map<GradeRow, GradeRow> written = new LinkedHashMap<>();
+    rows.forEach(row -> written.put(new GradeRow(row.studentId(), row.moduleCode(), null), row));
+    Map<GradeRow, Long> existing = findIds(written.keySet());
+
+    jdbcTemplate.batchUpdate(UPSERT, rows, rows.size(), (statement, row) -> {
+      statement.setLong(1, row.studentId());
+      statement.setInt(2, row.score());
+      statement.setString(3, row.moduleCode());
+    });
+
+    Map<GradeRow, Long> inserted = existing.size() == written.size() ? Map.of()
+        : findIds(written.keySet().stream().filter(key -> !existing.containsKey(key))
+            .collect(Collectors.toSet()));
+    List<UpsertedGrade> upserted = new ArrayList<>(written.size());
+    written.forEach((key, row) -> {
+      if (existing.containsKey(key)) {
+        upserted.add(new UpsertedGrade(existing.get(key), row, false));
+      } else if (inserted.containsKey(key)) {
+        upserted.add(new UpsertedGrade(inserted.get(key), row, true));
+      }
+    });
+    return upserted;
+  }
+
+  // the IDs of the grades of the given students and modules that exist, by student and module
+  private Map<GradeRow, Long> findIds(Set<GradeRow> keys) {
+    Set<Long> students = keys.stream().map(GradeRow::studentId).collect(Collectors.toSet());
+    Set<String> modules = keys.stream().map(GradeRow::moduleCode).collect(Collectors.toSet());
+    List<Object> arguments = new ArrayList<>(students);
+    arguments.addAll(modules);
+    Map<GradeRow, Long> ids = new HashMap<>();
+    jdbcTemplate.query(String.format(FIND_IDS, placeholders(students.size()),
+        placeholders(modules.size())), resultSet -> {
+          GradeRow key = new GradeRow(resultSet.getLong(2), resultSet.getString(3), null);
+          if (keys.contains(key)) {
+            ids.put(key, resultSet.getLong(1));
+          }
+        }, arguments.toArray());
+    return ids;
+  }
+
+  private static String placeholders(int count) {
+    return String.join(",", Collections.nCopies(count, "?"));
+  }
+}
@@ -0,0 +1,98 @@
+package uk.ac.ucl.comp0010.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.stereotype.Repository;
+
+/**
+ * A repository reading chosen fields of grades and of their students and modules.
+ * <p>
+ * Fields are named as in {@code student.first} or {@code module.code}. The requested fields are
+ * compiled into a single query selecting only their columns, joining the student and module only
+ * if one of their fields is requested, so no entity is loaded however many grades are read.
+ * </p>
+ */
+@Repository
+public class GradeFieldRepository {
+
+  // the fields that can be requested, and the path each is selected with
+  private static final Map<String, String> PATHS = Map.of("id", "g.id", "score", "g.score",
+      "student.id", "s.id", "student.first", "s.firstName", "student.last", "s.lastName",
+      "student.username", "s.username", "student.email", "s.email", "module.code", "m.code",
+      "module.name", "m.name", "module.mnc", "m.mnc");
+
+  private final EntityManager entityManager;
+
+  public GradeFieldRepository(EntityManager entityManager) {
+    this.entityManager = entityManager;
+  }
+
+  /**
+   * Parses a comma separated list of fields, dropping duplicates.
+   *
+   * @param fields the list, as in {@code student.first,student.email,module.code}
+   * @return the fields, in the order first named
+   * @throws IllegalArgumentException if the list is empty or names an unknown field
+   */
+  public static List<String> parseFields(String fields) {
+    Set<String> parsed = new LinkedHashSet<>();
+    for (String field : fields.split(",")) {
+      String name = field.trim();
+      if (!PATHS.containsKey(name)) {
+        throw new IllegalArgumentException("Unknown field: " + name);
+      }
+      parsed.add(name);
+    }
+    return List.copyOf(parsed);
+  }
+
+  /**
+   * Reads the given fields of the grades with the given ids.
+   *
+   * @param fields the fields to read, as returned by {@link #parseFields(String)}
+   * @param ids the ids of the grades
+   * @return a map from the id of each grade found to its fields, in the order of {@code fields}
+   */
+  public Map<Long, Map<String, Object>> findFields(List<String> fields, Collection<Long> ids) {
+    if (ids.isEmpty()) {
+      return Map.of();
+    }
+    List<String> selections = new ArrayList<>();
+    // the id keys the result, whether or not it was requested
+    selections.add("g.id as grade_id");
+    for (String field : fields) {
+      selections.add(PATHS.get(field) + " as " + alias(field));
+    }
+    StringBuilder query =
+        new StringBuilder("select ").append(String.join(", ", selections)).append(" from Grade g");
+    if (fields.stream().anyMatch(field -> field.startsWith("student."))) {
+      query.append(" left join g.student s");
+    }
+    if (fields.stream().anyMatch(field -> field.startsWith("module."))) {
+      query.append(" left join g.module m");
+    }
+    query.append(" where g.id in :ids");
+
+    Map<Long, Map<String, Object>> found = new LinkedHashMap<>();
+    for (Tuple row : entityManager.createQuery(query.toString(), Tuple.class)
+        .setParameter("ids", ids).getResultList()) {
+      Map<String, Object> values = new LinkedHashMap<>();
+      for (String field : fields) {
+        values.put(field, row.get(alias(field)));
+      }
+      found.put(row.get("grade_id", Long.class), values);
+    }
+    return found;
+  }
+
+  private static String alias(String field) {
+    return "field_" + field.replace('.', '_');
+  }
+}
@@ -0,0 +1,25 @@
+package uk.ac.ucl.comp0010.repository;
+
+/**
+ * A flattened view of a grade together with the student and module it belongs to.
+ * <p>
+ * Rows of this projection are produced by a single join query so that a grade listing can be
+ * served without following the per-grade student and module links.
+ * </p>
+ */
+public interface GradeListing {
+
+  Long getId();
+
+  Integer getScore();
+
+  Long getStudentId();
+
+  String getStudentFirstName();
+
+  String getStudentLastName();
+
+  String getModuleCode();
+
+  String getModuleName();
+}
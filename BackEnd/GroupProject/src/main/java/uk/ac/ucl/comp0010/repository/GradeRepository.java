@@ -1,13 +1,99 @@
 package uk.ac.ucl.comp0010.repository;
 
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import uk.ac.ucl.comp0010.model.Grade;
 
 /**
  * A repository manages Grade.
  */
 public interface GradeRepository extends CrudRepository<Grade, Long> {
+
+  /**
+   * Select clause shared by the {@link GradeListing} queries.
+   */
+  String LISTING_SELECT = "select g.id as id, g.score as score, s.id as studentId,"
+      + " s.firstName as studentFirstName, s.lastName as studentLastName,"
+      + " m.code as moduleCode, m.name as moduleName"
+      + " from Grade g join g.student s join g.module m";
+
   Optional<Grade> findByStudentIdAndModuleCode(Long studentId, String moduleCode);
 
+  /**
+   * Inserts the student's grade for the module, or updates its score if one exists, in a single
+   * statement keyed on the unique (student, module) constraint.
+   *
+   * @param studentId the ID of the student
+   * @param moduleCode the code of the module
+   * @param score the score to record
+   * @return the previous score as the only element if a grade was updated, or an empty list if a
+   *         grade was inserted or the student or module is unknown
+   */
+  @Query(nativeQuery = true, value = "select score from old table (merge into grade g"
+      + " using (select s.id as student_id, m.id as module_id, cast(:score as int) as score"
+      + " from module m join student s on s.id = :studentId where m.code = :moduleCode) u"
+      + " on g.student_id = u.student_id and g.module_id = u.module_id"
+      + " when matched then update set score = u.score"
+      + " when not matched then insert (student_id, module_id, score)"
+      + " values (u.student_id, u.module_id, u.score))")
+  List<Integer> upsert(@Param("studentId") Long studentId,
+      @Param("moduleCode") String moduleCode, @Param("score") Integer score);
+
+  // the id of the grade's student, empty if the grade does not exist or has no student
+  @Query(nativeQuery = true, value = "select student_id from grade where id = :id")
+  Optional<Long> findStudentIdById(@Param("id") Long id);
+
+  // loads the grade with everything it is serialized with
+  @EntityGraph(Grade.WITH_DETAILS)
+  Optional<Grade> findWithDetailsById(Long id);
+
+  // loads the given grades, each with everything it is serialized with
+  @EntityGraph(Grade.WITH_DETAILS)
+  List<Grade> findWithDetailsByIdIn(Collection<Long> ids);
+
+  @EntityGraph(Grade.WITH_DETAILS)
+  Optional<Grade> findWithDetailsByStudentIdAndModuleCode(Long studentId, String moduleCode);
+
+  // every grade of a student, with its module
+  @EntityGraph(Grade.WITH_DETAILS)
+  List<Grade> findWithDetailsByStudentId(Long studentId);
+
+  // one join query returning each grade with its student and module summary
+  @Query(LISTING_SELECT + " order by g.id")
+  List<GradeListing> findAllListings();
+
+  // the listings of the given grades
+  @Query(LISTING_SELECT + " where g.id in :ids order by g.id")
+  List<GradeListing> findListingsByIdIn(@Param("ids") Collection<Long> ids);
+
+  // forward-only cursor over all listings; must be consumed inside a transaction
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "256"))
+  @Query(LISTING_SELECT + " order by g.id")
+  Stream<GradeListing> streamAllListings();
+
+  // every scored grade as a row, without loading entities; must be consumed inside a transaction
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "256"))
+  @Query("select new uk.ac.ucl.comp0010.repository.GradeRow(s.id, m.code, g.score)"
+      + " from Grade g join g.student s join g.module m where g.score is not null")
+  Stream<GradeRow> streamScoredRows();
+
+  // keyset page ordered by id, starting after the given id
+  @Query(LISTING_SELECT + " where g.id > :afterId order by g.id")
+  List<GradeListing> findListingsAfterId(@Param("afterId") Long afterId, Limit limit);
+
+  // keyset page ordered by (score, id), starting after the given key
+  @Query(LISTING_SELECT + " where g.score > :score or (g.score = :score and g.id > :afterId)"
+      + " order by g.score, g.id")
+  List<GradeListing> findListingsAfterScore(@Param("score") Integer score,
+      @Param("afterId") Long afterId, Limit limit);
 }
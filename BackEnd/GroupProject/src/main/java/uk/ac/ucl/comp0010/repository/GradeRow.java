@@ -0,0 +1,11 @@
+package uk.ac.ucl.comp0010.repository;
+
+/**
+ * A grade to be written in bulk, identified by its student and module code.
+ *
+ * @param studentId the ID of the student
+ * @param moduleCode the code of the module
+ * @param score the score to record
+ */
+public record GradeRow(Long studentId, String moduleCode, Integer score) {
+}
@@ -1,13 +1,113 @@
 package uk.ac.ucl.comp0010.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import uk.ac.ucl.comp0010.model.Module;
 
 /**
  * A repository manages Module.
+ * <p>
+ * Modules change a few times a year, so the catalogue, and each module by code and by id, are
+ * served from the bounded {@value #CACHE} cache once loaded. Every write through this repository
+ * clears the cache, and clears it again once its transaction ends, so the next read loads the
+ * catalogue as committed. Unknown codes and ids are cached as well, until the next write. The
+ * cache holds copies of the modules and each read returns new ones, so changing a module returned
+ * here changes no other caller's.
+ * </p>
  */
 public interface ModuleRepository extends CrudRepository<Module, Long> {
+
+  /**
+   * Name of the cache holding the module catalogue.
+   */
+  String CACHE = "modules";
+
+  /**
+   * Select clause shared by the {@link ModuleStats} queries. Every module is joined with its scored
+   * grades, so a module without scores still yields a row with a count of zero; callers add the
+   * filter and the {@code group by m.code} clause.
+   */
+  String STATS_SELECT = "select m.code as code, count(g.score) as count,"
+      + " avg(cast(g.score as double precision)) as mean, stddev_pop(g.score) as stddev,"
+      + " percentile_cont(0.5) within group (order by g.score) as median,"
+      + " percentile_cont(0.1) within group (order by g.score) as p10,"
+      + " percentile_cont(0.9) within group (order by g.score) as p90,"
+      + " min(g.score) as min, max(g.score) as max,"
+      + " count(g.score) filter (where g.score >= :passMark) as passed,"
+      + " count(g.score) filter (where g.score < 10) as bucket0,"
+      + " count(g.score) filter (where g.score >= 10 and g.score < 20) as bucket1,"
+      + " count(g.score) filter (where g.score >= 20 and g.score < 30) as bucket2,"
+      + " count(g.score) filter (where g.score >= 30 and g.score < 40) as bucket3,"
+      + " count(g.score) filter (where g.score >= 40 and g.score < 50) as bucket4,"
+      + " count(g.score) filter (where g.score >= 50 and g.score < 60) as bucket5,"
+      + " count(g.score) filter (where g.score >= 60 and g.score < 70) as bucket6,"
+      + " count(g.score) filter (where g.score >= 70 and g.score < 80) as bucket7,"
+      + " count(g.score) filter (where g.score >= 80 and g.score < 90) as bucket8,"
+      + " count(g.score) filter (where g.score >= 90) as bucket9"
+      + " from module m left join grade g on g.module_id = m.id and g.score is not null";
+
+  @Cacheable(cacheNames = CACHE, key = "'code:' + #code")
   Optional<Module> findByCode(String code);
 
+  @Override
+  @Cacheable(cacheNames = CACHE, key = "'id:' + #id")
+  Optional<Module> findById(Long id);
+
+  @Override
+  @Cacheable(cacheNames = CACHE, key = "'all'")
+  Iterable<Module> findAll();
+
+  @Override
+  @CacheEvict(cacheNames = CACHE, allEntries = true)
+  <S extends Module> S save(S module);
+
+  @Override
+  @CacheEvict(cacheNames = CACHE, allEntries = true)
+  <S extends Module> Iterable<S> saveAll(Iterable<S> modules);
+
+  @Override
+  @CacheEvict(cacheNames = CACHE, allEntries = true)
+  void deleteById(Long id);
+
+  @Override
+  @CacheEvict(cacheNames = CACHE, allEntries = true)
+  void delete(Module module);
+
+  @Override
+  @CacheEvict(cacheNames = CACHE, allEntries = true)
+  void deleteAllById(Iterable<? extends Long> ids);
+
+  @Override
+  @CacheEvict(cacheNames = CACHE, allEntries = true)
+  void deleteAll(Iterable<? extends Module> modules);
+
+  @Override
+  @CacheEvict(cacheNames = CACHE, allEntries = true)
+  void deleteAll();
+
+  // the subset of the given codes that belong to a module
+  @Query("select m.code from Module m where m.code in :codes")
+  Set<String> findExistingCodes(@Param("codes") Collection<String> codes);
+
+  // one grouped pass over the grades of the module; empty if the module does not exist
+  @Query(nativeQuery = true, value = STATS_SELECT + " where m.code = :code group by m.code")
+  Optional<ModuleStats> findStatsByCode(@Param("code") String code,
+      @Param("passMark") int passMark);
+
+  // one grouped pass over the grades of the given modules, ordered by code
+  @Query(nativeQuery = true,
+      value = STATS_SELECT + " where m.code in :codes group by m.code order by m.code")
+  List<ModuleStats> findStatsByCodes(@Param("codes") Collection<String> codes,
+      @Param("passMark") int passMark);
+
+  // one grouped pass over all grades, a row per module ordered by code
+  @Query(nativeQuery = true, value = STATS_SELECT + " group by m.code order by m.code")
+  List<ModuleStats> findAllStats(@Param("passMark") int passMark);
 }
@@ -0,0 +1,53 @@
+package uk.ac.ucl.comp0010.repository;
+
+/**
+ * Score statistics of one module, aggregated by the database over the module's scored grades.
+ * <p>
+ * The histogram splits the scores into ten bands of ten marks: {@code bucket0} counts scores below
+ * 10, {@code bucket1} scores from 10 to 19, and so on up to {@code bucket9}, which counts every
+ * score of 90 or above. Statistics other than the counts are {@code null} for a module without
+ * scores.
+ * </p>
+ */
+public interface ModuleStats {
+
+  String getCode();
+
+  Long getCount();
+
+  Double getMean();
+
+  Double getStddev();
+
+  Double getMedian();
+
+  Double getP10();
+
+  Double getP90();
+
+  Integer getMin();
+
+  Integer getMax();
+
+  Long getPassed();
+
+  Long getBucket0();
+
+  Long getBucket1();
+
+  Long getBucket2();
+
+  Long getBucket3();
+
+  Long getBucket4();
+
+  Long getBucket5();
+
+  Long getBucket6();
+
+  Long getBucket7();
+
+  Long getBucket8();
+
+  Long getBucket9();
+}
@@ -0,0 +1,102 @@
+package uk.ac.ucl.comp0010.repository;
+
+import java.util.Collection;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import uk.ac.ucl.comp0010.model.StudentGradeStats;
+
+/**
+ * A repository manages StudentGradeStats.
+ * <p>
+ * The update methods are meant to run in the same transaction as the grade write they account for,
+ * after that write.
+ * </p>
+ */
+public interface StudentGradeStatsRepository extends CrudRepository<StudentGradeStats, Long> {
+
+  /**
+   * Totals recomputed from the grade table, one row per student.
+   */
+  String RECOMPUTED = "select s.id as student_id, count(g.score) as grade_count,"
+      + " coalesce(sum(g.score), 0) as score_sum, min(g.score) as min_score,"
+      + " max(g.score) as max_score from student s left join grade g on g.student_id = s.id";
+
+  /**
+   * Completes a merge of recomputed totals into the stored ones.
+   */
+  String COPY_RECOMPUTED = ") u on t.student_id = u.student_id"
+      + " when matched then update set grade_count = u.grade_count, score_sum = u.score_sum,"
+      + " min_score = u.min_score, max_score = u.max_score"
+      + " when not matched then insert (student_id, grade_count, score_sum, min_score, max_score)"
+      + " values (u.student_id, u.grade_count, u.score_sum, u.min_score, u.max_score)";
+
+  // adds one score to the student's totals
+  @Modifying(flushAutomatically = true)
+  @Query(nativeQuery = true, value = "merge into student_grade_stats t"
+      + " using (select cast(:studentId as bigint) as student_id, cast(:score as int) as score) u"
+      + " on t.student_id = u.student_id"
+      + " when matched then update set grade_count = t.grade_count + 1,"
+      + " score_sum = t.score_sum + u.score, min_score = least(t.min_score, u.score),"
+      + " max_score = greatest(t.max_score, u.score)"
+      + " when not matched then insert (student_id, grade_count, score_sum, min_score, max_score)"
+      + " values (u.student_id, 1, u.score, u.score, u.score)")
+  void addScore(@Param("studentId") Long studentId, @Param("score") Integer score);
+
+  // removes one score from the student's totals; the minimum or maximum is looked up again only
+  // when the removed score was that extreme
+  @Modifying(flushAutomatically = true)
+  @Query(nativeQuery = true, value = "update student_grade_stats"
+      + " set grade_count = grade_count - 1, score_sum = score_sum - :score,"
+      + " min_score = case when min_score = :score"
+      + " then (select min(score) from grade where student_id = :studentId) else min_score end,"
+      + " max_score = case when max_score = :score"
+      + " then (select max(score) from grade where student_id = :studentId) else max_score end"
+      + " where student_id = :studentId")
+  void removeScore(@Param("studentId") Long studentId, @Param("score") Integer score);
+
+  // recomputes the totals of the given students from their grades
+  @Modifying(flushAutomatically = true)
+  @Query(nativeQuery = true, value = "merge into student_grade_stats t using (" + RECOMPUTED
+      + " where s.id in (:studentIds) group by s.id" + COPY_RECOMPUTED)
+  void recompute(@Param("studentIds") Collection<Long> studentIds);
+
+  // recomputes the totals of every student from their grades
+  @Modifying(flushAutomatically = true)
+  @Query(nativeQuery = true, value = "merge into student_grade_stats t using (" + RECOMPUTED
+      + " group by s.id" + COPY_RECOMPUTED)
+  void recomputeAll();
+
+  // removes the totals of students that no longer exist
+  @Modifying
+  @Query(nativeQuery = true,
+      value = "delete from student_grade_stats where student_id not in (select id from student)")
+  int deleteOrphans();
+
+  // counts students whose stored totals differ from their grades
+  @Query(nativeQuery = true, value = "select count(*) from (" + RECOMPUTED + " group by s.id) u"
+      + " left join student_grade_stats t on t.student_id = u.student_id"
+      + " where (t.student_id is null and u.grade_count > 0)"
+      + " or t.grade_count <> u.grade_count or t.score_sum <> u.score_sum"
+      + " or t.min_score is distinct from u.min_score"
+      + " or t.max_score is distinct from u.max_score")
+  long countDrifted();
+
+  /**
+   * Accounts for a grade of the student changing from one score to another. A null old score
+   * stands for a new grade, and a null new score for a deleted one.
+   *
+   * @param studentId the ID of the student
+   * @param oldScore the score before the write, or null
+   * @param newScore the score after the write, or null
+   */
+  default void recordScoreChange(Long studentId, Integer oldScore, Integer newScore) {
+    if (oldScore != null) {
+      removeScore(studentId, oldScore);
+    }
+    if (newScore != null) {
+      addScore(studentId, newScore);
+    }
+  }
+}
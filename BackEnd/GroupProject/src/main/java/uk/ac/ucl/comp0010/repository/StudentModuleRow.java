@@ -0,0 +1,19 @@
+package uk.ac.ucl.comp0010.repository;
+
+/**
+ * A student with one module they are registered for, as read for an export. A student registered
+ * for no module has a single row whose module fields are null.
+ *
+ * @param studentId the ID of the student
+ * @param firstName the student's first name
+ * @param lastName the student's last name
+ * @param username the student's username
+ * @param email the student's email address
+ * @param moduleId the ID of the module, or null
+ * @param moduleCode the code of the module, or null
+ * @param moduleName the name of the module, or null
+ * @param moduleMnc whether the module is mandatory non-condonable, or null
+ */
+public record StudentModuleRow(Long studentId, String firstName, String lastName, String username,
+    String email, Long moduleId, String moduleCode, String moduleName, Boolean moduleMnc) {
+}
@@ -1,6 +1,18 @@
 package uk.ac.ucl.comp0010.repository;
 
+import jakarta.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import uk.ac.ucl.comp0010.model.Student;
 
 /**
@@ -8,4 +20,41 @@ import uk.ac.ucl.comp0010.model.Student;
  */
 public interface StudentRepository extends CrudRepository<Student, Long> {
 
+  // loads the student with what it is serialized with: registrations and their modules
+  @EntityGraph(Student.WITH_REGISTERED_MODULES)
+  Optional<Student> findWithRegisteredModulesById(Long id);
+
+  // loads the given students in id order, each with what it is serialized with
+  @EntityGraph(Student.WITH_REGISTERED_MODULES)
+  List<Student> findWithRegisteredModulesByIdInOrderByIdAsc(Collection<Long> ids);
+
+  // loads the student with its grades, for callers working with the grade list
+  @EntityGraph(Student.WITH_GRADES)
+  Optional<Student> findWithGradesById(Long id);
+
+  // locks the student's row until the end of the transaction, serializing its grade writes
+  @Query(nativeQuery = true, value = "select id from student where id = :id for update")
+  Optional<Long> lockById(@Param("id") Long id);
+
+  // keyset page ordered by id, starting after the given id
+  List<Student> findByIdGreaterThanOrderByIdAsc(Long afterId, Limit limit);
+
+  // keyset page ordered by (lastName, firstName, id), starting after the given key
+  @Query("select s from Student s where s.lastName > :lastName or (s.lastName = :lastName"
+      + " and (s.firstName > :firstName or (s.firstName = :firstName and s.id > :afterId)))"
+      + " order by s.lastName, s.firstName, s.id")
+  List<Student> findPageAfterName(@Param("lastName") String lastName,
+      @Param("firstName") String firstName, @Param("afterId") Long afterId, Limit limit);
+
+  // the subset of the given ids that belong to a student
+  @Query("select s.id from Student s where s.id in :ids")
+  Set<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+  // forward-only cursor over every student and registered module, one row per registration and
+  // the rows of a student together; must be consumed inside a transaction
+  @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "256"))
+  @Query("select new uk.ac.ucl.comp0010.repository.StudentModuleRow(s.id, s.firstName,"
+      + " s.lastName, s.username, s.email, m.id, m.code, m.name, m.mnc)"
+      + " from Student s left join s.registrations r left join r.module m order by s.id, r.id")
+  Stream<StudentModuleRow> streamAllWithRegisteredModules();
 }
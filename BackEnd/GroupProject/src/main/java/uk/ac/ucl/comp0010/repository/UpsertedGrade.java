@@ -0,0 +1,11 @@
+package uk.ac.ucl.comp0010.repository;
+
+/**
+ * A grade written in bulk, with the ID the database holds it under.
+ *
+ * @param id the ID of the grade
+ * @param row the student, module code and score written
+ * @param created true if the grade was inserted, false if an existing grade was updated
+ */
+public record UpsertedGrade(Long id, GradeRow row, boolean created) {
+}
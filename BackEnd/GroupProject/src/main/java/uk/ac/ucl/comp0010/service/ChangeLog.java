@@ -0,0 +1,246 @@
+package uk.ac.ucl.comp0010.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.hibernate.action.spi.BeforeTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostDeleteEventListener;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.event.spi.PostUpdateEventListener;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Registration;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.ChangeLogRepository;
+import uk.ac.ucl.comp0010.repository.ChangeWindow;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+import uk.ac.ucl.comp0010.service.TableVersions.Table;
+
+/**
+ * The log of the grades, students and modules each committed transaction inserted, updated or
+ * deleted, from which clients keeping a copy of them sync only what changed.
+ * <p>
+ * Every grade, student and module Hibernate inserts, updates or deletes, including rows removed
+ * by cascades and rows written through the repository endpoints, is noted as the transaction
+ * flushes. Writes that bypass Hibernate are noted with {@link #record} and {@link #recordGrades}.
+ * Once the transaction's last flush is done, just before it commits, it takes the next change
+ * version and logs its rows under it. Taking a version locks the change counter until the commit,
+ * so versions become visible in order and a client up to date with one version never misses a
+ * lower one. A rolled back transaction logs nothing.
+ * </p>
+ * <p>
+ * A row changed several times is returned once; whether it was upserted or deleted is read from
+ * the table itself. Entries superseded by a later change to the same row are removed nightly.
+ * </p>
+ */
+@Service
+public class ChangeLog
+    implements PostInsertEventListener, PostUpdateEventListener, PostDeleteEventListener {
+
+  /**
+   * The rows of a table changed since a version.
+   *
+   * @param version the last committed version, to sync from next time
+   * @param reset true if the version synced from was not one of this database, in which case the
+   *        client should replace its copy with the whole table
+   * @param ids the IDs of the changed rows, or an empty list on a reset
+   */
+  public record Changes(long version, boolean reset, List<Long> ids) {
+  }
+
+  // versions start at the creation time in milliseconds times this, leaving room for as many
+  // versions per millisecond before a later database starts
+  private static final long VERSIONS_PER_MILLISECOND = 1000;
+
+  private final ChangeLogRepository changeLogRepository;
+  private final EntityManager entityManager;
+
+  /**
+   * Constructs a ChangeLog, registering it for the entity writes of Hibernate.
+   *
+   * @param changeLogRepository the repository the log is kept in
+   * @param entityManager the entity manager of the transactions recording writes
+   * @param entityManagerFactory the entity manager factory whose writes are logged
+   */
+  public ChangeLog(ChangeLogRepository changeLogRepository, EntityManager entityManager,
+      EntityManagerFactory entityManagerFactory) {
+    this.changeLogRepository = changeLogRepository;
+    this.entityManager = entityManager;
+    EventListenerRegistry listeners = entityManagerFactory.unwrap(SessionFactoryImplementor.class)
+        .getServiceRegistry().getService(EventListenerRegistry.class);
+    listeners.appendListeners(EventType.POST_INSERT, this);
+    listeners.appendListeners(EventType.POST_UPDATE, this);
+    listeners.appendListeners(EventType.POST_DELETE, this);
+  }
+
+  @PostConstruct
+  void createCounter() {
+    changeLogRepository.createCounter(System.currentTimeMillis() * VERSIONS_PER_MILLISECOND);
+  }
+
+  /**
+   * Records rows written without Hibernate, to be logged when the current transaction commits.
+   *
+   * @param table the table written to
+   * @param ids the IDs of the rows written
+   * @throws IllegalStateException if there is no current transaction
+   */
+  public void record(Table table, Collection<Long> ids) {
+    pending(currentSession()).add(table, ids);
+  }
+
+  /**
+   * Records grades written without Hibernate, identified by student and module, to be logged when
+   * the current transaction commits.
+   *
+   * @param rows the grades written; their scores are ignored
+   * @throws IllegalStateException if there is no current transaction
+   */
+  public void recordGrades(Collection<GradeRow> rows) {
+    pending(currentSession()).addGrades(rows);
+  }
+
+  /**
+   * Returns the last committed change version.
+   *
+   * @return the version
+   */
+  public long version() {
+    return changeLogRepository.window().version();
+  }
+
+  /**
+   * Finds the rows of a table changed since a version.
+   *
+   * @param table the table
+   * @param since the version the caller is up to date with
+   * @return the changed rows and the version they bring the caller up to
+   */
+  public Changes changesSince(Table table, long since) {
+    ChangeWindow window = changeLogRepository.window();
+    if (since < window.origin() || since > window.version()) {
+      return new Changes(window.version(), true, List.of());
+    }
+    return new Changes(window.version(), false,
+        changeLogRepository.findChangedIds(table.name(), since, window.version()));
+  }
+
+  /**
+   * Removes log entries superseded by a later change to the same row.
+   *
+   * @return the number of entries removed
+   */
+  @Scheduled(cron = "${grades.changes.compact-cron:0 15 3 * * *}")
+  public int compact() {
+    return changeLogRepository.deleteSuperseded();
+  }
+
+  @Override
+  public void onPostInsert(PostInsertEvent event) {
+    changed(event.getEntity(), event.getId(), event.getSession());
+  }
+
+  @Override
+  public void onPostUpdate(PostUpdateEvent event) {
+    changed(event.getEntity(), event.getId(), event.getSession());
+  }
+
+  @Override
+  public void onPostDelete(PostDeleteEvent event) {
+    changed(event.getEntity(), event.getId(), event.getSession());
+  }
+
+  @Override
+  public boolean requiresPostCommitHandling(EntityPersister persister) {
+    return false;
+  }
+
+  private void changed(Object entity, Object id, SessionImplementor session) {
+    // registrations are synced as part of their student's registered modules
+    if (entity instanceof Registration registration) {
+      if (registration.getStudent() != null) {
+        pending(session).add(Table.STUDENT, List.of(registration.getStudent().getId()));
+      }
+      return;
+    }
+    Table table = entity instanceof Grade ? Table.GRADE
+        : entity instanceof Student ? Table.STUDENT
+        : entity instanceof Module ? Table.MODULE : null;
+    if (table != null) {
+      pending(session).add(table, List.of((Long) id));
+    }
+  }
+
+  private SessionImplementor currentSession() {
+    if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+      throw new IllegalStateException("Changes can only be recorded inside a transaction");
+    }
+    return entityManager.unwrap(SessionImplementor.class);
+  }
+
+  // the changes of the current transaction, logged by the session just before it commits
+  private Pending pending(SessionImplementor session) {
+    Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+    if (pending == null) {
+      Pending created = new Pending();
+      session.getActionQueue()
+          .registerProcess((BeforeTransactionCompletionProcess) committing -> write(created));
+      if (TransactionSynchronizationManager.isSynchronizationActive()) {
+        TransactionSynchronizationManager.bindResource(this, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+          @Override
+          public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(ChangeLog.this);
+          }
+        });
+      }
+      pending = created;
+    }
+    return pending;
+  }
+
+  private void write(Pending pending) {
+    if (pending.ids.isEmpty() && pending.grades.isEmpty()) {
+      return;
+    }
+    long version = changeLogRepository.nextVersion();
+    pending.ids.forEach((table, ids) -> changeLogRepository.append(version, table.name(), ids));
+    if (!pending.grades.isEmpty()) {
+      changeLogRepository.appendGrades(version, Table.GRADE.name(), pending.grades);
+    }
+  }
+
+  private static final class Pending {
+
+    private final Map<Table, Set<Long>> ids = new EnumMap<>(Table.class);
+
+    // grades by student and module, without scores
+    private final Set<GradeRow> grades = new LinkedHashSet<>();
+
+    private void add(Table table, Collection<Long> changed) {
+      ids.computeIfAbsent(table, key -> new LinkedHashSet<>()).addAll(changed);
+    }
+
+    private void addGrades(Collection<GradeRow> rows) {
+      rows.forEach(row -> grades.add(new GradeRow(row.studentId(), row.moduleCode(), null)));
+    }
+  }
+}
@@ -0,0 +1,679 @@
+package uk.ac.ucl.comp0010.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+
+/**
+ * An immutable, column-oriented copy of scored grades.
+ * <p>
+ * Each grade is a row across three parallel {@code int} columns: the score, the student and the
+ * module. Students and modules are dictionary encoded, so a row holds the position of its student
+ * id and module code in the dictionaries rather than the values themselves. The dictionaries are
+ * sorted by student id and module code, and the rows by student and module.
+ * </p>
+ * <p>
+ * Changes never modify an instance; they return a new one sharing the columns, with the change
+ * added to the changes kept on top of them: the scores set or removed since the columns were
+ * built, and the students removed since. Readers merge the changes into what they compute from the
+ * columns, so a change costs about as much as the changes already kept, however many grades there
+ * are. {@link #folded()} builds new columns holding the changes, with only the students and
+ * modules still graded in the dictionaries.
+ * </p>
+ */
+public final class GradeColumns {
+
+  private static final GradeColumns EMPTY = new GradeColumns(new long[0], new HashMap<>(),
+      new String[0], new HashMap<>(), new int[0], new int[0], new int[0]);
+
+  private final long[] studentIds;
+  private final Map<Long, Integer> studentIndex;
+  private final String[] moduleCodes;
+  private final Map<String, Integer> moduleIndex;
+  private final int[] students;
+  private final int[] modules;
+  private final int[] scores;
+
+  // the score set since the columns were built for each student and module, null if removed
+  private final Map<Key, Integer> changes;
+  // the students whose grades in the columns were removed since they were built
+  private final Set<Long> removedStudents;
+  private final int size;
+
+  private GradeColumns(long[] studentIds, Map<Long, Integer> studentIndex, String[] moduleCodes,
+      Map<String, Integer> moduleIndex, int[] students, int[] modules, int[] scores) {
+    this.studentIds = studentIds;
+    this.studentIndex = studentIndex;
+    this.moduleCodes = moduleCodes;
+    this.moduleIndex = moduleIndex;
+    this.students = students;
+    this.modules = modules;
+    this.scores = scores;
+    this.changes = Collections.emptyMap();
+    this.removedStudents = Collections.emptySet();
+    this.size = scores.length;
+  }
+
+  private GradeColumns(GradeColumns columns, Map<Key, Integer> changes, Set<Long> removedStudents,
+      int size) {
+    this.studentIds = columns.studentIds;
+    this.studentIndex = columns.studentIndex;
+    this.moduleCodes = columns.moduleCodes;
+    this.moduleIndex = columns.moduleIndex;
+    this.students = columns.students;
+    this.modules = columns.modules;
+    this.scores = columns.scores;
+    this.changes = changes;
+    this.removedStudents = removedStudents;
+    this.size = size;
+  }
+
+  /**
+   * Returns a copy without any grade.
+   *
+   * @return the empty copy
+   */
+  public static GradeColumns empty() {
+    return EMPTY;
+  }
+
+  /**
+   * Returns a builder collecting grades into a new copy.
+   *
+   * @return the builder
+   */
+  static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the number of grades in this copy.
+   *
+   * @return the number of grades
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns a copy with the given scores applied. Each row sets the score of its student in its
+   * module, adding the grade if there is none; a row without a score removes the grade. When
+   * several rows name the same student and module, the last one wins. The change costs a lookup
+   * in the columns for each row and a copy of the changes kept so far.
+   *
+   * @param rows the scores to apply
+   * @return the changed copy
+   */
+  public GradeColumns withScores(Collection<GradeRow> rows) {
+    Map<Key, Integer> newChanges = null;
+    int newSize = size;
+    for (GradeRow row : rows) {
+      Key key = new Key(row.studentId(), row.moduleCode());
+      Integer built = builtScore(key);
+      Map<Key, Integer> current = newChanges == null ? changes : newChanges;
+      Integer previous = current.containsKey(key) ? current.get(key) : built;
+      if (Objects.equals(previous, row.score())) {
+        continue;
+      }
+      if (newChanges == null) {
+        newChanges = new HashMap<>(changes);
+      }
+      newSize += (row.score() == null ? 0 : 1) - (previous == null ? 0 : 1);
+      // a score back to the one in the columns needs no change kept
+      if (Objects.equals(built, row.score())) {
+        newChanges.remove(key);
+      } else {
+        newChanges.put(key, row.score());
+      }
+    }
+    if (newChanges == null) {
+      return this;
+    }
+    return new GradeColumns(this, newChanges, removedStudents, newSize);
+  }
+
+  /**
+   * Returns a copy without any grade of the given student. The student stays in the dictionaries
+   * until the copy is {@link #folded() folded}.
+   *
+   * @param studentId the ID of the student
+   * @return the changed copy
+   */
+  public GradeColumns withoutStudent(Long studentId) {
+    int removed = 0;
+    Map<Key, Integer> newChanges = new HashMap<>(changes.size() * 4 / 3 + 1);
+    for (Map.Entry<Key, Integer> change : changes.entrySet()) {
+      if (change.getKey().studentId() != studentId) {
+        newChanges.put(change.getKey(), change.getValue());
+      } else if (change.getValue() != null) {
+        removed++;
+      }
+    }
+    Set<Long> newRemovedStudents = removedStudents;
+    Integer student = studentIndex.get(studentId);
+    if (student != null && !removedStudents.contains(studentId)) {
+      int first = firstRow(student);
+      int end = firstRow(student + 1);
+      for (int i = first; i < end; i++) {
+        // rows hidden by a change were counted with the changes
+        if (!changes.containsKey(new Key(studentId, moduleCodes[modules[i]]))) {
+          removed++;
+        }
+      }
+      if (first < end) {
+        newRemovedStudents = new HashSet<>(removedStudents);
+        newRemovedStudents.add(studentId);
+      }
+    }
+    if (newRemovedStudents == removedStudents && newChanges.size() == changes.size()) {
+      return this;
+    }
+    return new GradeColumns(this, newChanges, newRemovedStudents, size - removed);
+  }
+
+  /**
+   * Tells whether this copy keeps any change on top of its columns.
+   *
+   * @return true if folding this copy would build new columns
+   */
+  boolean hasChanges() {
+    return !changes.isEmpty() || !removedStudents.isEmpty();
+  }
+
+  /**
+   * Returns a copy with the same grades as this one and no change kept on top of its columns. The
+   * dictionaries of the copy only hold the students and modules it grades.
+   *
+   * @return the folded copy, or this copy if it keeps no change
+   */
+  GradeColumns folded() {
+    if (!hasChanges()) {
+      return this;
+    }
+    boolean[] hidden = new boolean[scores.length];
+    forEachHiddenRow(i -> hidden[i] = true);
+    List<Key> added = new ArrayList<>();
+    changes.forEach((key, score) -> {
+      if (score != null) {
+        added.add(key);
+      }
+    });
+    added.sort(null);
+
+    // the rows of the columns and the added ones are both sorted, so they are merged in order
+    long[] rowStudents = new long[size];
+    String[] rowModules = new String[size];
+    int[] rowScores = new int[size];
+    int row = 0;
+    int i = 0;
+    int a = 0;
+    while (true) {
+      while (i < scores.length && hidden[i]) {
+        i++;
+      }
+      if (i == scores.length && a == added.size()) {
+        break;
+      }
+      if (a == added.size() || (i < scores.length
+          && added.get(a).compareTo(studentIds[students[i]], moduleCodes[modules[i]]) > 0)) {
+        rowStudents[row] = studentIds[students[i]];
+        rowModules[row] = moduleCodes[modules[i]];
+        rowScores[row++] = scores[i++];
+      } else {
+        Key key = added.get(a++);
+        rowStudents[row] = key.studentId();
+        rowModules[row] = key.moduleCode();
+        rowScores[row++] = changes.get(key);
+      }
+    }
+    return sorted(rowStudents, rowModules, rowScores, row);
+  }
+
+  /**
+   * Moves the changes made to an earlier copy since it was folded onto the folded copy. This copy
+   * must have been derived from the earlier one by changes; otherwise, such as when the snapshot
+   * was rebuilt meanwhile, the folded copy is out of date and this copy is returned unchanged.
+   *
+   * @param from the earlier copy
+   * @param folded the folded earlier copy
+   * @return a copy with the same grades as this one, on top of the folded columns
+   */
+  GradeColumns rebasedOnto(GradeColumns from, GradeColumns folded) {
+    if (scores != from.scores) {
+      return this;
+    }
+    GradeColumns rebased = folded;
+    for (Long studentId : removedStudents) {
+      if (!from.removedStudents.contains(studentId)) {
+        rebased = rebased.withoutStudent(studentId);
+      }
+    }
+    // any grade either copy changed may differ between them; every other one is the same
+    Set<Key> keys = new LinkedHashSet<>(from.changes.keySet());
+    keys.addAll(changes.keySet());
+    List<GradeRow> rows = new ArrayList<>(keys.size());
+    for (Key key : keys) {
+      rows.add(new GradeRow(key.studentId(), key.moduleCode(),
+          changes.containsKey(key) ? changes.get(key) : builtScore(key)));
+    }
+    return rebased.withScores(rows);
+  }
+
+  /**
+   * Writes this copy in the form {@link #readFrom(DataInput)} reads back.
+   *
+   * @param out the output to write to
+   * @throws IOException if the output cannot be written
+   */
+  public void writeTo(DataOutput out) throws IOException {
+    GradeColumns folded = folded();
+    out.writeInt(folded.studentIds.length);
+    for (long studentId : folded.studentIds) {
+      out.writeLong(studentId);
+    }
+    out.writeInt(folded.moduleCodes.length);
+    for (String moduleCode : folded.moduleCodes) {
+      out.writeUTF(moduleCode);
+    }
+    out.writeInt(folded.size);
+    for (int i = 0; i < folded.size; i++) {
+      out.writeInt(folded.students[i]);
+      out.writeInt(folded.modules[i]);
+      out.writeInt(folded.scores[i]);
+    }
+  }
+
+  /**
+   * Reads a copy written by {@link #writeTo(DataOutput)}.
+   *
+   * @param in the input to read from
+   * @return the copy read
+   * @throws IOException if the input cannot be read or does not hold a copy
+   */
+  public static GradeColumns readFrom(DataInput in) throws IOException {
+    long[] studentIds = new long[in.readInt()];
+    for (int s = 0; s < studentIds.length; s++) {
+      studentIds[s] = in.readLong();
+    }
+    String[] moduleCodes = new String[in.readInt()];
+    for (int m = 0; m < moduleCodes.length; m++) {
+      moduleCodes[m] = in.readUTF();
+    }
+    int size = in.readInt();
+    Builder builder = new Builder();
+    for (int i = 0; i < size; i++) {
+      int student = in.readInt();
+      int module = in.readInt();
+      int score = in.readInt();
+      if (student < 0 || student >= studentIds.length || module < 0
+          || module >= moduleCodes.length) {
+        throw new IOException("Grade " + i + " refers to an unknown student or module");
+      }
+      builder.add(studentIds[student], moduleCodes[module], score);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Computes the average score of every module with at least one grade.
+   *
+   * @return the average score by module code, ordered by code
+   */
+  public Map<String, Double> moduleAverages() {
+    long[] sums = new long[moduleCodes.length];
+    int[] counts = new int[moduleCodes.length];
+    for (int i = 0; i < scores.length; i++) {
+      sums[modules[i]] += scores[i];
+      counts[modules[i]]++;
+    }
+    forEachHiddenRow(i -> {
+      sums[modules[i]] -= scores[i];
+      counts[modules[i]]--;
+    });
+    // the sum and count of modules only graded by the changes
+    Map<String, long[]> added = new HashMap<>();
+    changes.forEach((key, score) -> {
+      if (score != null) {
+        Integer module = moduleIndex.get(key.moduleCode());
+        if (module != null) {
+          sums[module] += score;
+          counts[module]++;
+        } else {
+          long[] total = added.computeIfAbsent(key.moduleCode(), code -> new long[2]);
+          total[0] += score;
+          total[1]++;
+        }
+      }
+    });
+    Map<String, Double> averages = new TreeMap<>();
+    for (int m = 0; m < moduleCodes.length; m++) {
+      if (counts[m] > 0) {
+        averages.put(moduleCodes[m], (double) sums[m] / counts[m]);
+      }
+    }
+    added.forEach((code, total) -> averages.put(code, (double) total[0] / total[1]));
+    return averages;
+  }
+
+  /**
+   * Finds the students whose average score is below a threshold.
+   *
+   * @param threshold the average score students must reach
+   * @return the IDs of the students below the threshold, in ascending order
+   */
+  public List<Long> studentsBelow(double threshold) {
+    long[] sums = new long[studentIds.length];
+    int[] counts = new int[studentIds.length];
+    for (int i = 0; i < scores.length; i++) {
+      sums[students[i]] += scores[i];
+      counts[students[i]]++;
+    }
+    forEachHiddenRow(i -> {
+      sums[students[i]] -= scores[i];
+      counts[students[i]]--;
+    });
+    // the sum and count of students only graded by the changes
+    Map<Long, long[]> added = new HashMap<>();
+    changes.forEach((key, score) -> {
+      if (score != null) {
+        Integer student = studentIndex.get(key.studentId());
+        if (student != null) {
+          sums[student] += score;
+          counts[student]++;
+        } else {
+          long[] total = added.computeIfAbsent(key.studentId(), id -> new long[2]);
+          total[0] += score;
+          total[1]++;
+        }
+      }
+    });
+    List<Long> below = new ArrayList<>();
+    for (int s = 0; s < studentIds.length; s++) {
+      if (counts[s] > 0 && sums[s] < threshold * counts[s]) {
+        below.add(studentIds[s]);
+      }
+    }
+    added.forEach((studentId, total) -> {
+      if (total[0] < threshold * total[1]) {
+        below.add(studentId);
+      }
+    });
+    below.sort(null);
+    return below;
+  }
+
+  /**
+   * Compares two modules over the students graded in both.
+   *
+   * @param first the code of the first module
+   * @param second the code of the second module
+   * @return the number of students graded in both modules and their average in each
+   */
+  public Comparison compare(String first, String second) {
+    final int firstModule = moduleIndex.getOrDefault(first, -1);
+    final int secondModule = moduleIndex.getOrDefault(second, -1);
+    // a student's score in each module, valid where the matching flag is set
+    int[] firstScores = new int[studentIds.length];
+    int[] secondScores = new int[studentIds.length];
+    boolean[] inFirst = new boolean[studentIds.length];
+    boolean[] inSecond = new boolean[studentIds.length];
+    if (firstModule >= 0 || secondModule >= 0) {
+      for (int i = 0; i < scores.length; i++) {
+        if (modules[i] == firstModule) {
+          firstScores[students[i]] = scores[i];
+          inFirst[students[i]] = true;
+        } else if (modules[i] == secondModule) {
+          secondScores[students[i]] = scores[i];
+          inSecond[students[i]] = true;
+        }
+      }
+      forEachHiddenRow(i -> {
+        if (modules[i] == firstModule) {
+          inFirst[students[i]] = false;
+        } else if (modules[i] == secondModule) {
+          inSecond[students[i]] = false;
+        }
+      });
+    }
+    // the scores of students only graded by the changes
+    Map<Long, Integer> addedFirst = new HashMap<>();
+    Map<Long, Integer> addedSecond = new HashMap<>();
+    changes.forEach((key, score) -> {
+      boolean isFirst = key.moduleCode().equals(first);
+      if (score == null || !isFirst && !key.moduleCode().equals(second)) {
+        return;
+      }
+      Integer student = studentIndex.get(key.studentId());
+      if (student == null) {
+        (isFirst ? addedFirst : addedSecond).put(key.studentId(), score);
+      } else if (isFirst) {
+        firstScores[student] = score;
+        inFirst[student] = true;
+      } else {
+        secondScores[student] = score;
+        inSecond[student] = true;
+      }
+    });
+    int count = 0;
+    long firstSum = 0;
+    long secondSum = 0;
+    for (int s = 0; s < studentIds.length; s++) {
+      if (inFirst[s] && inSecond[s]) {
+        count++;
+        firstSum += firstScores[s];
+        secondSum += secondScores[s];
+      }
+    }
+    for (Map.Entry<Long, Integer> score : addedFirst.entrySet()) {
+      Integer secondScore = addedSecond.get(score.getKey());
+      if (secondScore != null) {
+        count++;
+        firstSum += score.getValue();
+        secondSum += secondScore;
+      }
+    }
+    if (count == 0) {
+      return new Comparison(first, second, 0, null, null);
+    }
+    return new Comparison(first, second, count, (double) firstSum / count,
+        (double) secondSum / count);
+  }
+
+  // the score the columns hold for a grade, unless its student was removed since
+  private Integer builtScore(Key key) {
+    if (removedStudents.contains(key.studentId())) {
+      return null;
+    }
+    int row = row(key);
+    return row < 0 ? null : scores[row];
+  }
+
+  // the row of the columns holding a grade, or a negative number if they hold none
+  private int row(Key key) {
+    Integer student = studentIndex.get(key.studentId());
+    Integer module = moduleIndex.get(key.moduleCode());
+    if (student == null || module == null) {
+      return -1;
+    }
+    // a student's rows are sorted by module
+    return Arrays.binarySearch(modules, firstRow(student), firstRow(student + 1), module);
+  }
+
+  // the first row of the columns whose student is at or after the given one
+  private int firstRow(int student) {
+    int low = 0;
+    int high = students.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (students[mid] < student) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  // passes each row of the columns that a change or a removed student hides
+  private void forEachHiddenRow(IntConsumer action) {
+    for (Long studentId : removedStudents) {
+      int student = studentIndex.get(studentId);
+      for (int i = firstRow(student), end = firstRow(student + 1); i < end; i++) {
+        action.accept(i);
+      }
+    }
+    for (Key key : changes.keySet()) {
+      if (!removedStudents.contains(key.studentId())) {
+        int row = row(key);
+        if (row >= 0) {
+          action.accept(row);
+        }
+      }
+    }
+  }
+
+  // builds columns from rows sorted by student id and module code, each grade appearing once
+  private static GradeColumns sorted(long[] rowStudents, String[] rowModules, int[] rowScores,
+      int size) {
+    Set<String> codes = new TreeSet<>();
+    for (int i = 0; i < size; i++) {
+      codes.add(rowModules[i]);
+    }
+    String[] moduleCodes = codes.toArray(new String[0]);
+    Map<String, Integer> moduleIndex = new HashMap<>(moduleCodes.length * 4 / 3 + 1);
+    for (int m = 0; m < moduleCodes.length; m++) {
+      moduleIndex.put(moduleCodes[m], m);
+    }
+    long[] studentIds = new long[size];
+    Map<Long, Integer> studentIndex = new HashMap<>();
+    int[] students = new int[size];
+    int[] modules = new int[size];
+    int count = 0;
+    for (int i = 0; i < size; i++) {
+      if (count == 0 || studentIds[count - 1] != rowStudents[i]) {
+        studentIndex.put(rowStudents[i], count);
+        studentIds[count++] = rowStudents[i];
+      }
+      students[i] = count - 1;
+      modules[i] = moduleIndex.get(rowModules[i]);
+    }
+    return new GradeColumns(Arrays.copyOf(studentIds, count), studentIndex, moduleCodes,
+        moduleIndex, students, modules, Arrays.copyOf(rowScores, size));
+  }
+
+  /**
+   * Collects grades into a new copy, for building one from scratch.
+   */
+  static final class Builder {
+
+    private long[] rowStudents = new long[64];
+    private String[] rowModules = new String[64];
+    private int[] rowScores = new int[64];
+    private int size;
+
+    private Builder() {}
+
+    /**
+     * Adds a grade. A later grade of the same student and module replaces an earlier one.
+     *
+     * @param studentId the ID of the student
+     * @param moduleCode the code of the module
+     * @param score the score
+     * @return this builder
+     */
+    Builder add(long studentId, String moduleCode, int score) {
+      if (size == rowScores.length) {
+        rowStudents = Arrays.copyOf(rowStudents, size * 2);
+        rowModules = Arrays.copyOf(rowModules, size * 2);
+        rowScores = Arrays.copyOf(rowScores, size * 2);
+      }
+      rowStudents[size] = studentId;
+      rowModules[size] = moduleCode;
+      rowScores[size++] = score;
+      return this;
+    }
+
+    /**
+     * Returns the number of grades added, counting replaced ones.
+     *
+     * @return the number of grades added
+     */
+    int size() {
+      return size;
+    }
+
+    /**
+     * Builds a copy of the grades added.
+     *
+     * @return the copy
+     */
+    GradeColumns build() {
+      Integer[] order = new Integer[size];
+      Arrays.setAll(order, i -> i);
+      // a stable sort, so the last of equal grades is the one added last
+      Arrays.sort(order, Comparator.<Integer>comparingLong(i -> rowStudents[i])
+          .thenComparing(i -> rowModules[i]));
+      long[] sortedStudents = new long[size];
+      String[] sortedModules = new String[size];
+      int[] sortedScores = new int[size];
+      int row = 0;
+      for (int k = 0; k < size; k++) {
+        int i = order[k];
+        if (k + 1 < size && rowStudents[order[k + 1]] == rowStudents[i]
+            && rowModules[order[k + 1]].equals(rowModules[i])) {
+          continue;
+        }
+        sortedStudents[row] = rowStudents[i];
+        sortedModules[row] = rowModules[i];
+        sortedScores[row++] = rowScores[i];
+      }
+      return sorted(sortedStudents, sortedModules, sortedScores, row);
+    }
+  }
+
+  /**
+   * A grade changed since the columns were built, ordered by student id and module code like the
+   * rows of the columns.
+   */
+  private record Key(long studentId, String moduleCode) implements Comparable<Key> {
+
+    @Override
+    public int compareTo(Key other) {
+      return compareTo(other.studentId, other.moduleCode);
+    }
+
+    int compareTo(long otherStudentId, String otherModuleCode) {
+      int order = Long.compare(studentId, otherStudentId);
+      return order != 0 ? order : moduleCode.compareTo(otherModuleCode);
+    }
+  }
+
+  /**
+   * The averages of two modules over the students graded in both.
+   *
+   * @param first the code of the first module
+   * @param second the code of the second module
+   * @param students the number of students graded in both modules
+   * @param firstMean their average score in the first module, or null without such students
+   * @param secondMean their average score in the second module, or null without such students
+   */
+  public record Comparison(String first, String second, int students, Double firstMean,
+      Double secondMean) {
+  }
+}
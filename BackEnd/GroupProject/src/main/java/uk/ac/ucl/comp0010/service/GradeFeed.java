@@ -0,0 +1,489 @@
+package uk.ac.ucl.comp0010.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.repository.UpsertedGrade;
+
+/**
+ * The committed changes to grades, pushed to the subscribers of {@code /grades/stream} as
+ * server-sent events.
+ * <p>
+ * Each change is numbered once its transaction commits and kept in a ring holding the last
+ * {@code grades.stream.history} changes, shared by every subscriber. A subscriber holds no more
+ * than the number of the last change it was sent: a small pool of sender threads sends each
+ * subscriber whatever it has not been sent yet, and a subscriber that falls so far behind that
+ * changes it was not sent have left the ring is disconnected. A subscriber resuming with the id of
+ * the last event it received is sent the changes it missed if they are still in the ring, and
+ * otherwise a {@code reset} event, after which it should reload the grades.
+ * </p>
+ * <p>
+ * Writes to a subscriber block while its connection cannot take more, so a subscriber still
+ * connected but reading too slowly could hold a sender thread for good. A subscriber whose write
+ * has blocked for longer than {@code grades.stream.write-timeout} is disconnected instead: it no
+ * longer gets changes, another sender thread is started to stand in for the blocked one, and its
+ * emitter is completed once the write returns, which it does when the container gives up on the
+ * connection.
+ * </p>
+ * <p>
+ * Event ids carry an identifier of this run of the application, so ids handed out before a
+ * restart are never taken for ids of this run.
+ * </p>
+ */
+@Service
+public class GradeFeed {
+
+  /**
+   * The kinds of change to a grade.
+   */
+  public enum Type {
+    CREATED("grade-created"), UPDATED("grade-updated"), DELETED("grade-deleted");
+
+    private final String eventName;
+
+    Type(String eventName) {
+      this.eventName = eventName;
+    }
+
+    /**
+     * Returns the name of the events sent for this kind of change.
+     *
+     * @return the event name
+     */
+    public String eventName() {
+      return eventName;
+    }
+  }
+
+  /**
+   * A committed change to a grade.
+   *
+   * @param sequence the number of the change, counting from 1 in this run
+   * @param type whether the grade was created, updated or deleted
+   * @param gradeId the id of the grade
+   * @param studentId the id of the student the grade is for
+   * @param moduleCode the code of the module the grade is for
+   * @param score the score after the change, or null if the grade was deleted
+   */
+  public record Change(long sequence, Type type, Long gradeId, Long studentId, String moduleCode,
+      Integer score) {
+  }
+
+  /**
+   * The name of the event telling a resuming subscriber that changes it missed are gone.
+   */
+  public static final String RESET = "reset";
+
+  private static final long NOT_WRITING = 0;
+
+  private static final long STALLED = Long.MIN_VALUE;
+
+  private final String run = Long.toHexString(UUID.randomUUID().getMostSignificantBits());
+
+  // the last changes, the change numbered n at n % length; guarded by itself
+  private final Change[] history;
+
+  // the number of the last change, guarded by history
+  private long latest;
+
+  private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+  private final ThreadPoolExecutor senders;
+
+  // runs the heartbeat and the check for blocked writes, which must not wait for a sender thread
+  private final ScheduledExecutorService timer;
+
+  // the sender threads blocked in a write to a disconnected subscriber, guarded by senders
+  private int stalledSenders;
+
+  private final int senderThreads;
+
+  private final long writeTimeoutNanos;
+
+  private final int maxSubscribers;
+
+  private final long timeoutMillis;
+
+  private final Counter lagging;
+
+  /**
+   * Creates the feed and starts its sender threads.
+   *
+   * @param meterRegistry the registry the number of subscribers is published to
+   * @param history the number of changes kept for lagging and resuming subscribers
+   * @param maxSubscribers the largest number of subscribers connected at once
+   * @param senderThreads the number of threads sending events to subscribers
+   * @param timeout how long a subscription lasts before the subscriber has to reconnect
+   * @param heartbeat how often a comment is sent to idle subscribers, to find closed connections
+   * @param writeTimeout how long a write to a subscriber may block before it is disconnected
+   */
+  public GradeFeed(MeterRegistry meterRegistry,
+      @Value("${grades.stream.history:1000}") int history,
+      @Value("${grades.stream.max-subscribers:5000}") int maxSubscribers,
+      @Value("${grades.stream.sender-threads:4}") int senderThreads,
+      @Value("${grades.stream.timeout:30m}") Duration timeout,
+      @Value("${grades.stream.heartbeat:15s}") Duration heartbeat,
+      @Value("${grades.stream.write-timeout:5s}") Duration writeTimeout) {
+    this.history = new Change[history];
+    this.maxSubscribers = maxSubscribers;
+    this.timeoutMillis = timeout.toMillis();
+    this.senderThreads = senderThreads;
+    this.writeTimeoutNanos = writeTimeout.toNanos();
+    AtomicInteger threads = new AtomicInteger();
+    this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, "grade-stream-sender-" + threads.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "grade-stream-timer");
+      thread.setDaemon(true);
+      return thread;
+    });
+    Gauge.builder("grades.stream.subscribers", subscribers, Set::size)
+        .description("Clients subscribed to the grade change feed").register(meterRegistry);
+    this.lagging = Counter.builder("grades.stream.lagging")
+        .description("Subscribers disconnected for falling behind the grade change feed")
+        .register(meterRegistry);
+    timer.scheduleAtFixedRate(this::heartbeat, heartbeat.toMillis(), heartbeat.toMillis(),
+        TimeUnit.MILLISECONDS);
+    long checkMillis = Math.max(1, writeTimeout.toMillis() / 4);
+    timer.scheduleAtFixedRate(this::disconnectStalled, checkMillis, checkMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Disconnects every subscriber and stops the sender threads.
+   */
+  @PreDestroy
+  void stop() {
+    timer.shutdownNow();
+    senders.shutdownNow();
+    subscribers.forEach(subscriber -> subscriber.emitter.complete());
+  }
+
+  /**
+   * Records a change to a grade; it is sent to subscribers once the current transaction commits,
+   * or straight away outside a transaction.
+   *
+   * @param type whether the grade was created, updated or deleted
+   * @param gradeId the id of the grade
+   * @param studentId the id of the student the grade is for
+   * @param moduleCode the code of the module the grade is for
+   * @param score the score after the change, or null if the grade was deleted
+   */
+  public void publish(Type type, Long gradeId, Long studentId, String moduleCode, Integer score) {
+    publishWrites(List.of(new Write(type, gradeId, studentId, moduleCode, score)));
+  }
+
+  /**
+   * Records the grades written in a batch; they are sent to subscribers once the current
+   * transaction commits, or straight away outside a transaction.
+   *
+   * @param grades the grades written
+   */
+  public void publishUpserts(Collection<UpsertedGrade> grades) {
+    publishWrites(grades.stream()
+        .map(grade -> new Write(grade.created() ? Type.CREATED : Type.UPDATED, grade.id(),
+            grade.row().studentId(), grade.row().moduleCode(), grade.row().score()))
+        .toList());
+  }
+
+  /**
+   * Records the deletion of grades, such as those deleted with their student; they are sent to
+   * subscribers once the current transaction commits, or straight away outside a transaction.
+   *
+   * @param grades the grades deleted
+   */
+  public void publishDeletions(Collection<Grade> grades) {
+    publishWrites(grades.stream().map(grade -> new Write(Type.DELETED, grade.getId(),
+        grade.getStudent() == null ? null : grade.getStudent().getId(),
+        grade.getModule() == null ? null : grade.getModule().getCode(), null)).toList());
+  }
+
+  private void publishWrites(List<Write> writes) {
+    if (writes.isEmpty()) {
+      return;
+    }
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          append(writes);
+        }
+      });
+    } else {
+      append(writes);
+    }
+  }
+
+  /**
+   * Subscribes a client to the changes committed from now on or, if it is resuming, to those
+   * committed after the last event it received.
+   *
+   * @param lastEventId the id of the last event the client received, if it is resuming
+   * @return the emitter the events are sent through, or empty if too many clients are subscribed
+   */
+  public Optional<SseEmitter> subscribe(String lastEventId) {
+    return subscribe(lastEventId, new SseEmitter(timeoutMillis));
+  }
+
+  // subscribes a client through the given emitter
+  Optional<SseEmitter> subscribe(String lastEventId, SseEmitter emitter) {
+    if (subscribers.size() >= maxSubscribers) {
+      return Optional.empty();
+    }
+    long now;
+    synchronized (history) {
+      now = latest;
+    }
+    Long resumed = lastEventId == null ? null : sequenceOf(lastEventId);
+    boolean missed = lastEventId != null
+        && (resumed == null || resumed < 0 || resumed > now || resumed < now - history.length);
+
+    Subscriber subscriber = new Subscriber(emitter, resumed == null || missed ? now : resumed);
+    subscriber.reset = missed;
+    emitter.onCompletion(() -> subscribers.remove(subscriber));
+    emitter.onError(e -> subscribers.remove(subscriber));
+    emitter.onTimeout(emitter::complete);
+    subscribers.add(subscriber);
+    schedule(subscriber);
+    return Optional.of(emitter);
+  }
+
+  /**
+   * Returns the number of clients subscribed.
+   *
+   * @return the number of subscribers
+   */
+  public int subscriberCount() {
+    return subscribers.size();
+  }
+
+  private void append(List<Write> writes) {
+    synchronized (history) {
+      for (Write write : writes) {
+        latest++;
+        history[(int) (latest % history.length)] = new Change(latest, write.type(),
+            write.gradeId(), write.studentId(), write.moduleCode(), write.score());
+      }
+    }
+    subscribers.forEach(this::schedule);
+  }
+
+  // the changes after a number, or null if some of them have left the ring
+  private List<Change> changesAfter(long sequence) {
+    synchronized (history) {
+      if (sequence < latest - history.length) {
+        return null;
+      }
+      List<Change> changes = new ArrayList<>((int) (latest - sequence));
+      for (long next = sequence + 1; next <= latest; next++) {
+        changes.add(history[(int) (next % history.length)]);
+      }
+      return changes;
+    }
+  }
+
+  // disconnects the subscribers whose write has blocked for too long, and stands in for the
+  // sender threads blocked in those writes until they return
+  private void disconnectStalled() {
+    long now = System.nanoTime();
+    for (Subscriber subscriber : subscribers) {
+      long started = subscriber.writeStarted.get();
+      if (started != NOT_WRITING && now - started > writeTimeoutNanos
+          && subscriber.writeStarted.compareAndSet(started, STALLED)) {
+        subscribers.remove(subscriber);
+        lagging.increment();
+        resizeSenders(1);
+      }
+    }
+  }
+
+  private void resizeSenders(int change) {
+    synchronized (senders) {
+      stalledSenders += change;
+      int size = senderThreads + stalledSenders;
+      // the maximum may never be below the core size
+      if (change > 0) {
+        senders.setMaximumPoolSize(size);
+        senders.setCorePoolSize(size);
+      } else {
+        senders.setCorePoolSize(size);
+        senders.setMaximumPoolSize(size);
+      }
+    }
+  }
+
+  private void heartbeat() {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.heartbeat = true;
+      schedule(subscriber);
+    }
+  }
+
+  // hands the subscriber to a sender thread, unless one already has it
+  private void schedule(Subscriber subscriber) {
+    if (subscriber.scheduled.compareAndSet(false, true)) {
+      try {
+        senders.execute(() -> send(subscriber));
+      } catch (RejectedExecutionException e) {
+        // shutting down
+      }
+    }
+  }
+
+  private void send(Subscriber subscriber) {
+    do {
+      try {
+        if (!sendPending(subscriber)) {
+          return;
+        }
+      } catch (IOException | IllegalStateException e) {
+        // the connection is gone or the emitter completed; the container cleans up the request
+        subscribers.remove(subscriber);
+        return;
+      }
+      subscriber.scheduled.set(false);
+      // a change appended while sending found the subscriber still scheduled, so look again
+    } while (hasPending(subscriber) && subscriber.scheduled.compareAndSet(false, true));
+  }
+
+  // sends what the subscriber has not been sent yet; false if it was disconnected for lagging
+  private boolean sendPending(Subscriber subscriber) throws IOException {
+    if (subscriber.reset) {
+      write(subscriber,
+          SseEmitter.event().name(RESET).id(eventId(subscriber.cursor)).data(Map.of()));
+      subscriber.reset = false;
+    }
+    List<Change> changes = changesAfter(subscriber.cursor);
+    if (changes == null) {
+      lagging.increment();
+      subscribers.remove(subscriber);
+      subscriber.emitter.complete();
+      return false;
+    }
+    for (Change change : changes) {
+      write(subscriber, SseEmitter.event().name(change.type().eventName())
+          .id(eventId(change.sequence())).data(data(change), MediaType.APPLICATION_JSON));
+      subscriber.cursor = change.sequence();
+    }
+    if (subscriber.heartbeat) {
+      subscriber.heartbeat = false;
+      if (changes.isEmpty()) {
+        write(subscriber, SseEmitter.event().comment("heartbeat"));
+      }
+    }
+    return true;
+  }
+
+  private void write(Subscriber subscriber, SseEmitter.SseEventBuilder event) throws IOException {
+    long started = System.nanoTime();
+    subscriber.writeStarted.set(started);
+    try {
+      subscriber.emitter.send(event);
+    } finally {
+      if (!subscriber.writeStarted.compareAndSet(started, NOT_WRITING)) {
+        // disconnected while this thread was blocked in the write, which has now returned
+        resizeSenders(-1);
+        try {
+          subscriber.emitter.complete();
+        } catch (IllegalStateException e) {
+          // already completed
+        }
+      }
+    }
+    if (subscriber.writeStarted.get() == STALLED) {
+      throw new IOException("Disconnected for blocking a write");
+    }
+  }
+
+  private boolean hasPending(Subscriber subscriber) {
+    synchronized (history) {
+      return subscriber.cursor < latest || subscriber.heartbeat;
+    }
+  }
+
+  private static Map<String, Object> data(Change change) {
+    Map<String, Object> data = new HashMap<>();
+    data.put("id", change.gradeId());
+    data.put("student_id", change.studentId());
+    data.put("module_code", change.moduleCode());
+    data.put("score", change.score());
+    return data;
+  }
+
+  private String eventId(long sequence) {
+    return run + "-" + sequence;
+  }
+
+  // the change number in an event id of this run, or null if the id is not one
+  private Long sequenceOf(String eventId) {
+    if (!eventId.startsWith(run + "-")) {
+      return null;
+    }
+    try {
+      return Long.valueOf(eventId.substring(run.length() + 1));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  // a change to a grade, numbered once its transaction commits
+  private record Write(Type type, Long gradeId, Long studentId, String moduleCode,
+      Integer score) {
+  }
+
+  private static final class Subscriber {
+
+    private final SseEmitter emitter;
+
+    // set while a sender thread has the subscriber
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    // when the write in progress started, NOT_WRITING between writes, or STALLED once the
+    // subscriber was disconnected for blocking one
+    private final AtomicLong writeStarted = new AtomicLong(NOT_WRITING);
+
+    // the number of the last change sent; only used by the sender thread that has the subscriber
+    private long cursor;
+
+    private volatile boolean reset;
+
+    private volatile boolean heartbeat;
+
+    private Subscriber(SseEmitter emitter, long cursor) {
+      this.emitter = emitter;
+      this.cursor = cursor;
+    }
+  }
+}
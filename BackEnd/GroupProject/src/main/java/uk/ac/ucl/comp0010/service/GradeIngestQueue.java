@@ -0,0 +1,326 @@
+package uk.ac.ucl.comp0010.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.ac.ucl.comp0010.repository.GradeBatchRepository;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.StudentGradeStatsRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.repository.UpsertedGrade;
+
+/**
+ * A write-behind queue for grade writes.
+ * <p>
+ * Submitted grades wait in a bounded in-memory queue holding one entry per student and module;
+ * a later submission for the same pair replaces the queued score. A writer thread takes up to
+ * {@code grades.ingest.batch-size} entries at a time, waiting at most
+ * {@code grades.ingest.max-delay} for a batch to fill, and writes them as one JDBC batch in a
+ * single transaction, with the students' grade totals, the grade snapshot and the grade change
+ * feed, as a bulk upload does. Each submission gets a token whose status can be looked up until it
+ * expires.
+ * </p>
+ * <p>
+ * Queued grades are lost if the application stops abruptly; on a normal shutdown the queue is
+ * flushed first.
+ * </p>
+ */
+@Service
+public class GradeIngestQueue {
+
+  /**
+   * The progress of a submitted grade.
+   */
+  public enum State {
+    QUEUED, COMMITTED, FAILED
+  }
+
+  /**
+   * The status of a submitted grade.
+   *
+   * @param token the token returned when the grade was submitted
+   * @param state whether the grade is still queued, was committed or could not be written
+   * @param error why the grade could not be written, if it failed
+   */
+  public record Status(String token, State state, String error) {
+  }
+
+  private static final Logger log = LoggerFactory.getLogger(GradeIngestQueue.class);
+
+  private final StudentRepository studentRepository;
+  private final ModuleRepository moduleRepository;
+  private final GradeBatchRepository gradeBatchRepository;
+  private final StudentGradeStatsRepository gradeStatsRepository;
+  private final GradeSnapshot gradeSnapshot;
+  private final TableVersions tableVersions;
+  private final ChangeLog changeLog;
+  private final GradeFeed gradeFeed;
+  private final TransactionTemplate transactionTemplate;
+  private final int capacity;
+  private final int batchSize;
+  private final long maxDelayMillis;
+  private final Timer flushTimer;
+  private final DistributionSummary batchSizes;
+
+  // queued grades by student and module (rows without a score), oldest first; guarded by itself
+  private final Map<GradeRow, Pending> queue = new LinkedHashMap<>();
+
+  // held while a batch is taken from the queue and written, so batches commit in order
+  private final Object writeLock = new Object();
+
+  private final Cache<String, Status> statuses;
+
+  private volatile boolean running;
+
+  private Thread writer;
+
+  /**
+   * Creates the queue; its writer thread starts once the bean is initialized.
+   *
+   * @param studentRepository the repository used to recheck student ids when writing
+   * @param moduleRepository the repository used to recheck module codes when writing
+   * @param gradeBatchRepository the repository writing each batch
+   * @param gradeStatsRepository the repository keeping each student's grade totals
+   * @param gradeSnapshot the in-memory copy of the grades kept for analytics
+   * @param tableVersions the version counters recording writes to the grades
+   * @param changeLog the log of changed grades that clients sync from
+   * @param gradeFeed the feed grade changes are pushed to subscribers through
+   * @param transactionManager the transaction manager each batch is committed with
+   * @param meterRegistry the registry the queue depth and flush latency are published to
+   * @param capacity the largest number of distinct grades that may be queued
+   * @param batchSize the largest number of grades written per transaction
+   * @param maxDelay how long the writer waits for a batch to fill
+   * @param statusRetention how long the status of a submitted grade can be looked up
+   */
+  public GradeIngestQueue(StudentRepository studentRepository, ModuleRepository moduleRepository,
+      GradeBatchRepository gradeBatchRepository, StudentGradeStatsRepository gradeStatsRepository,
+      GradeSnapshot gradeSnapshot, TableVersions tableVersions, ChangeLog changeLog,
+      GradeFeed gradeFeed, PlatformTransactionManager transactionManager,
+      MeterRegistry meterRegistry,
+      @Value("${grades.ingest.capacity:10000}") int capacity,
+      @Value("${grades.ingest.batch-size:500}") int batchSize,
+      @Value("${grades.ingest.max-delay:50ms}") Duration maxDelay,
+      @Value("${grades.ingest.status-retention:1h}") Duration statusRetention) {
+    this.studentRepository = studentRepository;
+    this.moduleRepository = moduleRepository;
+    this.gradeBatchRepository = gradeBatchRepository;
+    this.gradeStatsRepository = gradeStatsRepository;
+    this.gradeSnapshot = gradeSnapshot;
+    this.tableVersions = tableVersions;
+    this.changeLog = changeLog;
+    this.gradeFeed = gradeFeed;
+    this.transactionTemplate = new TransactionTemplate(transactionManager);
+    this.capacity = capacity;
+    this.batchSize = batchSize;
+    this.maxDelayMillis = maxDelay.toMillis();
+    this.statuses = Caffeine.newBuilder().expireAfterWrite(statusRetention).build();
+    Gauge.builder("grades.ingest.queue.depth", this, GradeIngestQueue::depth)
+        .description("Grades waiting to be written").register(meterRegistry);
+    this.flushTimer = Timer.builder("grades.ingest.flush")
+        .description("Time taken to write and commit a batch of queued grades")
+        .publishPercentileHistogram().register(meterRegistry);
+    this.batchSizes = DistributionSummary.builder("grades.ingest.batch.size")
+        .description("Grades written per batch").register(meterRegistry);
+  }
+
+  @PostConstruct
+  void start() {
+    running = true;
+    writer = new Thread(this::drain, "grade-ingest-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Stops the writer thread and writes whatever is still queued.
+   *
+   * @throws InterruptedException if interrupted while waiting for the writer thread
+   */
+  @PreDestroy
+  void stop() throws InterruptedException {
+    running = false;
+    synchronized (queue) {
+      queue.notifyAll();
+    }
+    writer.join();
+    flush();
+  }
+
+  /**
+   * Queues a grade, replacing the queued score of the same student and module if there is one.
+   * The student and module are expected to have been checked by the caller.
+   *
+   * @param row the grade to write
+   * @return the status of the queued grade, or empty if the queue is full
+   */
+  public Optional<Status> submit(GradeRow row) {
+    GradeRow key = new GradeRow(row.studentId(), row.moduleCode(), null);
+    Status status = new Status(UUID.randomUUID().toString(), State.QUEUED, null);
+    synchronized (queue) {
+      Pending pending = queue.get(key);
+      if (pending == null) {
+        if (queue.size() >= capacity) {
+          return Optional.empty();
+        }
+        pending = new Pending();
+        queue.put(key, pending);
+      }
+      pending.score = row.score();
+      pending.tokens.add(status.token());
+      statuses.put(status.token(), status);
+      if (queue.size() == 1 || queue.size() >= batchSize) {
+        queue.notifyAll();
+      }
+    }
+    return Optional.of(status);
+  }
+
+  /**
+   * Looks up the status of a submitted grade.
+   *
+   * @param token the token returned when the grade was submitted
+   * @return the status, or empty if the token is unknown or has expired
+   */
+  public Optional<Status> status(String token) {
+    return Optional.ofNullable(statuses.getIfPresent(token));
+  }
+
+  /**
+   * Returns the number of grades waiting to be written.
+   *
+   * @return the queue depth
+   */
+  public int depth() {
+    synchronized (queue) {
+      return queue.size();
+    }
+  }
+
+  /**
+   * Writes every queued grade now, in batches, on the calling thread.
+   */
+  public void flush() {
+    while (writeBatch()) {
+      // keep writing until the queue is empty
+    }
+  }
+
+  private void drain() {
+    while (running) {
+      try {
+        synchronized (queue) {
+          while (running && queue.isEmpty()) {
+            queue.wait();
+          }
+          // give concurrent submissions a moment to join the batch
+          long deadline = System.currentTimeMillis() + maxDelayMillis;
+          long remaining = maxDelayMillis;
+          while (running && queue.size() < batchSize && remaining > 0) {
+            queue.wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+          }
+        }
+        writeBatch();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      } catch (RuntimeException e) {
+        log.error("Failed to write queued grades", e);
+      }
+    }
+  }
+
+  // takes and writes one batch; false once the queue is empty
+  private boolean writeBatch() {
+    synchronized (writeLock) {
+      Map<GradeRow, List<String>> batch = new LinkedHashMap<>();
+      synchronized (queue) {
+        Iterator<Map.Entry<GradeRow, Pending>> entries = queue.entrySet().iterator();
+        while (entries.hasNext() && batch.size() < batchSize) {
+          Map.Entry<GradeRow, Pending> entry = entries.next();
+          GradeRow key = entry.getKey();
+          batch.put(new GradeRow(key.studentId(), key.moduleCode(), entry.getValue().score),
+              entry.getValue().tokens);
+          entries.remove();
+        }
+      }
+      if (batch.isEmpty()) {
+        return false;
+      }
+      batchSizes.record(batch.size());
+      flushTimer.record(() -> write(batch));
+      return true;
+    }
+  }
+
+  private void write(Map<GradeRow, List<String>> batch) {
+    Map<GradeRow, String> rejected = new LinkedHashMap<>();
+    try {
+      transactionTemplate.executeWithoutResult(status -> {
+        // the student or module may have been deleted since the grade was queued
+        Set<Long> students = studentRepository.findExistingIds(
+            batch.keySet().stream().map(GradeRow::studentId).collect(Collectors.toSet()));
+        Set<String> modules = moduleRepository.findExistingCodes(
+            batch.keySet().stream().map(GradeRow::moduleCode).collect(Collectors.toSet()));
+        List<GradeRow> rows = new ArrayList<>(batch.size());
+        for (GradeRow row : batch.keySet()) {
+          if (!students.contains(row.studentId())) {
+            rejected.put(row, "Unknown student " + row.studentId());
+          } else if (!modules.contains(row.moduleCode())) {
+            rejected.put(row, "Unknown module " + row.moduleCode());
+          } else {
+            rows.add(row);
+          }
+        }
+        if (!rows.isEmpty()) {
+          final List<UpsertedGrade> upserted = gradeBatchRepository.upsertAll(rows);
+          gradeStatsRepository.recompute(
+              rows.stream().map(GradeRow::studentId).collect(Collectors.toSet()));
+          gradeSnapshot.recordScores(rows);
+          tableVersions.recordChange(TableVersions.Table.GRADE);
+          changeLog.recordGrades(rows);
+          gradeFeed.publishUpserts(upserted);
+        }
+      });
+    } catch (RuntimeException e) {
+      // the batch was rolled back as a whole, whether a statement or the commit failed
+      log.warn("Failed to write a batch of {} queued grades", batch.size(), e);
+      String error = "Not written: " + NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+      batch.keySet().forEach(row -> rejected.put(row, error));
+    }
+    batch.forEach((row, tokens) -> {
+      String error = rejected.get(row);
+      State state = error == null ? State.COMMITTED : State.FAILED;
+      tokens.forEach(token -> statuses.put(token, new Status(token, state, error)));
+    });
+  }
+
+  // the latest queued score of a student and module, and the tokens of every submission of it
+  private static final class Pending {
+    private Integer score;
+    private final List<String> tokens = new ArrayList<>(1);
+  }
+}
@@ -0,0 +1,249 @@
+package uk.ac.ucl.comp0010.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+
+/**
+ * Holds the current {@link GradeColumns} copy of every scored grade for cohort analytics.
+ * <p>
+ * The copy is built from the database when the application starts, unless
+ * {@link GradeSnapshotStore} restores the one saved when it last stopped, and rebuilt by default
+ * nightly. In between, every grade write records its change here and the change is applied once the
+ * write's transaction commits, so rolled back writes never show. Each change publishes a new copy;
+ * readers take the current one and keep a consistent view however long they use it. A change only
+ * adds to the changes the copy keeps on top of its columns, which are folded into new columns every
+ * {@code grades.snapshot.fold-interval}. Rebuilding and folding both run without holding back
+ * changes, which are applied again to their result if they happened meanwhile. A copy is never
+ * larger than {@code grades.snapshot.max-grades}; past that, analytics are unavailable until a
+ * rebuild fits again.
+ * </p>
+ */
+@Service
+public class GradeSnapshot {
+
+  private static final Logger log = LoggerFactory.getLogger(GradeSnapshot.class);
+
+  private static final String DISABLED = "Grade snapshot disabled: more than {} grades";
+
+  private final GradeRepository gradeRepository;
+
+  private final TransactionTemplate readOnlyTransaction;
+
+  private final int maxGrades;
+
+  private final Object writeLock = new Object();
+
+  private final Object rebuildLock = new Object();
+
+  // the changes applied while a rebuild runs, to apply again to its result; guarded by writeLock
+  private List<UnaryOperator<GradeColumns>> appliedDuringRebuild;
+
+  // the number of recorded changes whose transaction has not completed yet
+  private final AtomicInteger unapplied = new AtomicInteger();
+
+  // null while the grades do not fit in maxGrades
+  private volatile GradeColumns columns = GradeColumns.empty();
+
+  /**
+   * Creates the snapshot, empty until it is first built.
+   *
+   * @param gradeRepository the repository the snapshot is built from
+   * @param transactionManager the transaction manager used to read the grades
+   * @param maxGrades the largest number of grades the snapshot may hold
+   */
+  public GradeSnapshot(GradeRepository gradeRepository,
+      PlatformTransactionManager transactionManager,
+      @Value("${grades.snapshot.max-grades:1000000}") int maxGrades) {
+    this.gradeRepository = gradeRepository;
+    this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+    this.readOnlyTransaction.setReadOnly(true);
+    this.maxGrades = maxGrades;
+  }
+
+  /**
+   * Returns the current copy of the grades.
+   *
+   * @return the current copy, or empty if the grades do not fit in the snapshot
+   */
+  public Optional<GradeColumns> current() {
+    return Optional.ofNullable(columns);
+  }
+
+  /**
+   * Returns the current copy if every change committed so far has been applied to it, so that it
+   * is up to date with the database as of any moment before the call.
+   *
+   * @return the current copy, or empty if it is waiting for a change or the grades do not fit
+   */
+  public Optional<GradeColumns> settled() {
+    synchronized (writeLock) {
+      return unapplied.get() == 0 ? current() : Optional.empty();
+    }
+  }
+
+  /**
+   * Replaces the snapshot with a copy saved earlier if it is still up to date. The check runs
+   * while changes are held back, so changes committed after it are applied on top of the copy.
+   *
+   * @param saved the saved copy
+   * @param upToDate checks that no grade changed since the copy was saved
+   * @return true if the copy was restored, false if it is out of date or too large
+   */
+  public boolean restore(GradeColumns saved, BooleanSupplier upToDate) {
+    synchronized (writeLock) {
+      if (!upToDate.getAsBoolean() || saved.size() > maxGrades) {
+        return false;
+      }
+      columns = saved;
+      return true;
+    }
+  }
+
+  /**
+   * Rebuilds the snapshot from every scored grade in the database, at startup and by default
+   * nightly. Changes recorded while the rebuild runs are applied on top of the rebuilt copy.
+   */
+  @Scheduled(cron = "${grades.snapshot.rebuild-cron:0 30 3 * * *}")
+  public void rebuild() {
+    synchronized (rebuildLock) {
+      synchronized (writeLock) {
+        appliedDuringRebuild = new ArrayList<>();
+      }
+      GradeColumns built;
+      try {
+        built = readOnlyTransaction.execute(status -> {
+          GradeColumns.Builder builder = GradeColumns.builder();
+          try (Stream<GradeRow> rows = gradeRepository.streamScoredRows()) {
+            for (GradeRow row : (Iterable<GradeRow>) rows::iterator) {
+              builder.add(row.studentId(), row.moduleCode(), row.score());
+              if (builder.size() > maxGrades) {
+                log.warn(DISABLED, maxGrades);
+                return null;
+              }
+            }
+          }
+          return builder.build();
+        });
+      } catch (RuntimeException e) {
+        synchronized (writeLock) {
+          appliedDuringRebuild = null;
+        }
+        throw e;
+      }
+      synchronized (writeLock) {
+        // the changes are absolute, so those the database already held apply harmlessly
+        for (UnaryOperator<GradeColumns> change : appliedDuringRebuild) {
+          if (built != null) {
+            built = fit(change.apply(built));
+          }
+        }
+        appliedDuringRebuild = null;
+        columns = built;
+      }
+    }
+  }
+
+  /**
+   * Folds the changes the current copy keeps into new columns, by default every ten seconds.
+   * Changes applied while the columns are built are moved on top of them.
+   */
+  @Scheduled(fixedDelayString = "${grades.snapshot.fold-interval:PT10S}")
+  public void fold() {
+    GradeColumns from = columns;
+    if (from == null || !from.hasChanges()) {
+      return;
+    }
+    GradeColumns folded = from.folded();
+    synchronized (writeLock) {
+      if (columns != null) {
+        columns = columns.rebasedOnto(from, folded);
+      }
+    }
+  }
+
+  /**
+   * Records the score of a student in a module once the current transaction commits.
+   *
+   * @param studentId the ID of the student
+   * @param moduleCode the code of the module
+   * @param score the new score, or null if the grade was removed or has no score
+   */
+  public void recordScore(Long studentId, String moduleCode, Integer score) {
+    recordScores(List.of(new GradeRow(studentId, moduleCode, score)));
+  }
+
+  /**
+   * Records several scores once the current transaction commits, in the manner of
+   * {@link #recordScore(Long, String, Integer)}.
+   *
+   * @param rows the new scores, in the order they were written
+   */
+  public void recordScores(Collection<GradeRow> rows) {
+    List<GradeRow> copy = List.copyOf(rows);
+    afterCommit(current -> current.withScores(copy));
+  }
+
+  /**
+   * Records the removal of every grade of a student once the current transaction commits.
+   *
+   * @param studentId the ID of the student
+   */
+  public void recordStudentRemoval(Long studentId) {
+    afterCommit(current -> current.withoutStudent(studentId));
+  }
+
+  private void afterCommit(UnaryOperator<GradeColumns> change) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      unapplied.incrementAndGet();
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          apply(change);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+          unapplied.decrementAndGet();
+        }
+      });
+    } else {
+      apply(change);
+    }
+  }
+
+  private void apply(UnaryOperator<GradeColumns> change) {
+    synchronized (writeLock) {
+      if (appliedDuringRebuild != null) {
+        appliedDuringRebuild.add(change);
+      }
+      if (columns != null) {
+        columns = fit(change.apply(columns));
+      }
+    }
+  }
+
+  private GradeColumns fit(GradeColumns candidate) {
+    if (candidate.size() > maxGrades) {
+      log.warn(DISABLED, maxGrades);
+      return null;
+    }
+    return candidate;
+  }
+}
@@ -0,0 +1,143 @@
+package uk.ac.ucl.comp0010.service;
+
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import uk.ac.ucl.comp0010.service.TableVersions.Table;
+
+/**
+ * Saves the {@link GradeSnapshot} to {@code grades.snapshot.file} when the application stops and
+ * restores it from there when the application starts, so a persistent database comes back with its
+ * analytics without reading every grade again.
+ * <p>
+ * The file records the change version the copy is up to date with. It is only restored if the
+ * {@link ChangeLog} holds no grade change since then; otherwise, or without a file, the snapshot
+ * is rebuilt from the database as usual. Grades written to the database other than through the
+ * application are not in the log, so the file should be deleted after such writes.
+ * </p>
+ */
+@Service
+public class GradeSnapshotStore {
+
+  private static final Logger log = LoggerFactory.getLogger(GradeSnapshotStore.class);
+
+  // "GSN" and the version of the file format
+  private static final int FORMAT = 0x47534e01;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final GradeSnapshot gradeSnapshot;
+
+  private final ChangeLog changeLog;
+
+  // null when the snapshot is not saved
+  private final Path file;
+
+  /**
+   * Constructs a GradeSnapshotStore.
+   *
+   * @param gradeSnapshot the snapshot saved and restored
+   * @param changeLog the log telling whether the grades changed since the snapshot was saved
+   * @param file the file the snapshot is saved to, or blank to rebuild it at every start
+   */
+  public GradeSnapshotStore(GradeSnapshot gradeSnapshot, ChangeLog changeLog,
+      @Value("${grades.snapshot.file:}") String file) {
+    this.gradeSnapshot = gradeSnapshot;
+    this.changeLog = changeLog;
+    this.file = file.isBlank() ? null : Path.of(file);
+  }
+
+  /**
+   * Restores the snapshot from the file once the application has started, or rebuilds it from the
+   * database if that is not possible.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void load() {
+    long started = System.nanoTime();
+    if (restore()) {
+      log.info("Grade snapshot of {} grades restored from {} in {} ms",
+          gradeSnapshot.current().get().size(), file, elapsedMillis(started));
+      return;
+    }
+    gradeSnapshot.rebuild();
+    log.info("Grade snapshot of {} grades built from the database in {} ms",
+        gradeSnapshot.current().map(GradeColumns::size).orElse(0), elapsedMillis(started));
+  }
+
+  /**
+   * Saves the snapshot to the file as the application stops. Nothing is saved if some committed
+   * change has not reached the snapshot yet, and the next start rebuilds it instead.
+   */
+  @PreDestroy
+  public void save() {
+    if (file == null) {
+      return;
+    }
+    // read first, so the copy is at least as recent as the version it is saved with
+    long version = changeLog.version();
+    Optional<GradeColumns> columns = gradeSnapshot.settled();
+    if (columns.isEmpty()) {
+      log.warn("Grade snapshot not saved: it is not up to date with the database");
+      return;
+    }
+    long started = System.nanoTime();
+    Path written = file.resolveSibling(file.getFileName() + ".tmp");
+    try {
+      if (file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(written), BUFFER_SIZE))) {
+        out.writeInt(FORMAT);
+        out.writeLong(version);
+        columns.get().writeTo(out);
+      }
+      // a crash while writing leaves the previous file in place
+      Files.move(written, file, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      log.info("Grade snapshot of {} grades saved to {} in {} ms", columns.get().size(), file,
+          elapsedMillis(started));
+    } catch (IOException e) {
+      log.warn("Grade snapshot not saved to {}", file, e);
+    }
+  }
+
+  private boolean restore() {
+    if (file == null || !Files.isReadable(file)) {
+      return false;
+    }
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+      if (in.readInt() != FORMAT) {
+        log.warn("Grade snapshot not restored: {} is not a snapshot file", file);
+        return false;
+      }
+      long version = in.readLong();
+      GradeColumns saved = GradeColumns.readFrom(in);
+      return gradeSnapshot.restore(saved, () -> {
+        ChangeLog.Changes changes = changeLog.changesSince(Table.GRADE, version);
+        return !changes.reset() && changes.ids().isEmpty();
+      });
+    } catch (IOException | RuntimeException e) {
+      log.warn("Grade snapshot not restored from {}", file, e);
+      return false;
+    }
+  }
+
+  private static long elapsedMillis(long started) {
+    return (System.nanoTime() - started) / 1_000_000;
+  }
+}
@@ -0,0 +1,44 @@
+package uk.ac.ucl.comp0010.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import uk.ac.ucl.comp0010.repository.StudentGradeStatsRepository;
+
+/**
+ * A job checking the stored grade totals of every student against their grades.
+ * <p>
+ * The totals are maintained incrementally by each grade write. This job recomputes them from
+ * scratch, reports how many had drifted and overwrites them with the recomputed values.
+ * </p>
+ */
+@Service
+public class GradeStatsReconciler {
+
+  private static final Logger log = LoggerFactory.getLogger(GradeStatsReconciler.class);
+
+  private final StudentGradeStatsRepository gradeStatsRepository;
+
+  public GradeStatsReconciler(StudentGradeStatsRepository gradeStatsRepository) {
+    this.gradeStatsRepository = gradeStatsRepository;
+  }
+
+  /**
+   * Recomputes every student's grade totals, by default nightly.
+   *
+   * @return the number of students whose stored totals were wrong or left over
+   */
+  @Scheduled(cron = "${grades.stats.reconcile-cron:0 0 3 * * *}")
+  @Transactional
+  public long reconcile() {
+    long drifted = gradeStatsRepository.countDrifted();
+    gradeStatsRepository.recomputeAll();
+    drifted += gradeStatsRepository.deleteOrphans();
+    if (drifted > 0) {
+      log.warn("Corrected grade totals of {} students", drifted);
+    }
+    return drifted;
+  }
+}
@@ -0,0 +1,71 @@
+package uk.ac.ucl.comp0010.service;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Version counters for the grade, student, registration and module tables, from which the
+ * collection endpoints derive their ETags.
+ * <p>
+ * Every write records the tables it changed, and their counters go up once the write's transaction
+ * commits. A collection endpoint reads the counters of the tables its response is built from
+ * before it queries them, so a response is never tagged with a version newer than its data, and a
+ * client that sends back a tag nothing has changed since can be answered without a query. Tags
+ * also carry an identifier of this run of the application, so tags handed out before a restart, or
+ * by another instance, never match.
+ * </p>
+ */
+@Service
+public class TableVersions {
+
+  /**
+   * The tables whose writes are counted.
+   */
+  public enum Table {
+    GRADE, STUDENT, REGISTRATION, MODULE
+  }
+
+  private final String run = Long.toHexString(UUID.randomUUID().getMostSignificantBits());
+
+  private final AtomicLongArray versions = new AtomicLongArray(Table.values().length);
+
+  /**
+   * Records a write to some tables; their counters go up once the current transaction commits, or
+   * straight away outside a transaction.
+   *
+   * @param tables the tables written to
+   */
+  public void recordChange(Table... tables) {
+    List<Table> changed = List.of(tables);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          changed.forEach(table -> versions.incrementAndGet(table.ordinal()));
+        }
+      });
+    } else {
+      changed.forEach(table -> versions.incrementAndGet(table.ordinal()));
+    }
+  }
+
+  /**
+   * Returns a weak ETag for a response built from some tables, which changes whenever any of them
+   * is written to. It is weak because the same data is sent as JSON, CBOR or Smile, compressed or
+   * not; Tomcat also leaves responses with a strong ETag uncompressed.
+   *
+   * @param tables the tables the response is built from
+   * @return the quoted ETag
+   */
+  public String etag(Table... tables) {
+    StringBuilder etag = new StringBuilder("W/\"").append(run);
+    for (Table table : tables) {
+      etag.append('-').append(versions.get(table.ordinal()));
+    }
+    return etag.append('"').toString();
+  }
+}
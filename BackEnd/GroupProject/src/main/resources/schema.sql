@@ -1,3 +1,6 @@
+DROP TABLE IF EXISTS change_log;
+DROP TABLE IF EXISTS change_counter;
+DROP TABLE IF EXISTS student_grade_stats;
 DROP TABLE IF EXISTS grade;
 DROP TABLE IF EXISTS registration;
 DROP TABLE IF EXISTS student;
@@ -38,4 +41,31 @@ CREATE TABLE registration(
     REFERENCES student (id),
   FOREIGN KEY (module_code)
     REFERENCES module (code)
-);
\ No newline at end of file
+);
+
+CREATE INDEX idx_grade_score ON grade (score, id);
+CREATE INDEX idx_student_name ON student (lastName, firstName, id);
+
+CREATE TABLE student_grade_stats(
+  student_id INT PRIMARY KEY,
+  grade_count BIGINT NOT NULL,
+  score_sum BIGINT NOT NULL,
+  min_score INT,
+  max_score INT
+);
+
+CREATE TABLE change_counter(
+  id INT PRIMARY KEY,
+  origin BIGINT NOT NULL,
+  change_version BIGINT NOT NULL
+);
+
+CREATE TABLE change_log(
+  id BIGSERIAL PRIMARY KEY,
+  change_version BIGINT NOT NULL,
+  table_name VARCHAR(20) NOT NULL,
+  row_id BIGINT NOT NULL
+);
+
+CREATE INDEX idx_change_log_version ON change_log (table_name, change_version);
+CREATE INDEX idx_change_log_row ON change_log (table_name, row_id, change_version);
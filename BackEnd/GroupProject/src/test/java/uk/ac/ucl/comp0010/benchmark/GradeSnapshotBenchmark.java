@@ -0,0 +1,123 @@
+package uk.ac.ucl.comp0010.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import uk.ac.ucl.comp0010.GroupProjectApplication;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeBatchRepository;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.ModuleStats;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.service.GradeSnapshot;
+
+/**
+ * Compares the per-module averages of a cohort computed from the in-memory grade snapshot with
+ * the same averages computed from Grade entities loaded through JPA and aggregated by the
+ * database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GradeSnapshotBenchmark {
+
+  private static final int MODULES = 10;
+
+  @Param({"100", "1000"})
+  public int students;
+
+  private ConfigurableApplicationContext context;
+  private GradeRepository gradeRepository;
+  private ModuleRepository moduleRepository;
+  private GradeSnapshot gradeSnapshot;
+
+  /**
+   * Starts the application on a random port and grades every student in every module.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    context = new SpringApplicationBuilder(GroupProjectApplication.class)
+        .properties("server.port=0", "spring.main.banner-mode=off").run();
+    gradeRepository = context.getBean(GradeRepository.class);
+    moduleRepository = context.getBean(ModuleRepository.class);
+    gradeSnapshot = context.getBean(GradeSnapshot.class);
+
+    List<Module> modules = new ArrayList<>();
+    for (int m = 0; m < MODULES; m++) {
+      modules.add(new Module("BENCH" + m, "Module " + m, false));
+    }
+    moduleRepository.saveAll(modules);
+    List<Student> cohort = new ArrayList<>();
+    for (int s = 0; s < students; s++) {
+      cohort.add(new Student("First" + s, "Last" + s, "user" + s, "user" + s + "@example.com"));
+    }
+    context.getBean(StudentRepository.class).saveAll(cohort);
+    List<GradeRow> rows = new ArrayList<>();
+    for (Student student : cohort) {
+      for (Module module : modules) {
+        rows.add(new GradeRow(student.getId(), module.getCode(),
+            (int) ((student.getId() * 31 + module.getCode().hashCode()) % 101)));
+      }
+    }
+    context.getBean(GradeBatchRepository.class).upsertAll(rows);
+    gradeSnapshot.rebuild();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public Map<String, Double> snapshotModuleAverages() {
+    return gradeSnapshot.current().orElseThrow().moduleAverages();
+  }
+
+  @Benchmark
+  public Map<String, Double> jpaModuleAverages() {
+    Map<String, long[]> totals = new HashMap<>();
+    for (Grade grade : gradeRepository.findAll()) {
+      long[] total = totals.computeIfAbsent(grade.getModule().getCode(), code -> new long[2]);
+      total[0] += grade.getScore();
+      total[1]++;
+    }
+    return totals.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey,
+        entry -> (double) entry.getValue()[0] / entry.getValue()[1]));
+  }
+
+  @Benchmark
+  public Map<String, Double> databaseModuleAverages() {
+    return moduleRepository.findAllStats(40).stream()
+        .collect(Collectors.toMap(ModuleStats::getCode, ModuleStats::getMean));
+  }
+
+  @Benchmark
+  public List<Long> snapshotStudentsBelow() {
+    return gradeSnapshot.current().orElseThrow().studentsBelow(50);
+  }
+}
@@ -0,0 +1,105 @@
+package uk.ac.ucl.comp0010.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import uk.ac.ucl.comp0010.GroupProjectApplication;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+/**
+ * Measures the throughput of {@code POST /grades/addGrade} with eight clients submitting scores
+ * for one module at once, spread over a number of students. With a single student every
+ * submission upserts the same grade, so the clients contend for its student's row lock.
+ * <p>
+ * Each failed submission fails the benchmark, and the number of grades is printed when the fork
+ * ends; it should equal the number of students however many submissions were made.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class GradeWriteBenchmark {
+
+  @Param({"1", "20"})
+  public int students;
+
+  private ConfigurableApplicationContext context;
+  private HttpClient client;
+  private URI uri;
+  private List<Long> studentIds;
+  private String moduleCode;
+
+  /**
+   * Starts the application on a random port with a module and the students to grade.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    context = new SpringApplicationBuilder(GroupProjectApplication.class)
+        .properties("server.port=0", "spring.main.banner-mode=off").run();
+    moduleCode = context.getBean(ModuleRepository.class)
+        .save(new Module("BENCH0", "Module 0", false)).getCode();
+    List<Student> cohort = new ArrayList<>();
+    for (int s = 0; s < students; s++) {
+      cohort.add(new Student("First" + s, "Last" + s, "user" + s, "user" + s + "@example.com"));
+    }
+    studentIds = new ArrayList<>();
+    context.getBean(StudentRepository.class).saveAll(cohort)
+        .forEach(student -> studentIds.add(student.getId()));
+
+    int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+    uri = URI.create("http://localhost:" + port + "/grades/addGrade");
+    client = HttpClient.newHttpClient();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    System.out.printf("%n%d grades for %d students%n",
+        context.getBean(GradeRepository.class).count(), students);
+    context.close();
+  }
+
+  @Benchmark
+  public int addGrade() throws IOException, InterruptedException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String body = String.format("{\"student_id\":\"%d\",\"module_code\":\"%s\",\"score\":\"%d\"}",
+        studentIds.get(random.nextInt(students)), moduleCode, random.nextInt(101));
+    HttpRequest request = HttpRequest.newBuilder(uri).header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(body)).build();
+    int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    if (status != 200) {
+      throw new IllegalStateException("addGrade answered " + status);
+    }
+    return status;
+  }
+}
@@ -0,0 +1,160 @@
+package uk.ac.ucl.comp0010.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+import uk.ac.ucl.comp0010.GroupProjectApplication;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeBatchRepository;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+/**
+ * Measures the time to encode the largest responses as JSON, CBOR and Smile, with and without the
+ * gzip compression applied to them on the way out, for a cohort of 100,000 grades.
+ * <p>
+ * The application is started and seeded once per fork, and each payload is read from it over HTTP
+ * as JSON and parsed back into maps and lists, the shape the controllers build. Only encoding that
+ * tree is measured, so the times do not include reading the database. The size of each encoding,
+ * plain and gzipped, is printed when the fork starts.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ResponseFormatBenchmark {
+
+  private static final int MODULES = 10;
+  private static final int STUDENTS = 10_000;
+
+  // GET /grades, GET /grades?view=embedded and GET /students/all
+  @Param({"grades", "grades-embedded", "students"})
+  public String payload;
+
+  @Param({"json", "cbor", "smile"})
+  public String format;
+
+  private ConfigurableApplicationContext context;
+  private ObjectMapper mapper;
+  private Object tree;
+
+  /**
+   * Starts the application on a random port, grades every student in every module and reads the
+   * payload.
+   *
+   * @throws Exception if the payload cannot be read
+   */
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    context = new SpringApplicationBuilder(GroupProjectApplication.class)
+        .properties("server.port=0", "spring.main.banner-mode=off").run();
+    List<Module> modules = new ArrayList<>();
+    for (int m = 0; m < MODULES; m++) {
+      modules.add(new Module("BENCH" + m, "Module " + m, false));
+    }
+    context.getBean(ModuleRepository.class).saveAll(modules);
+    List<Student> cohort = new ArrayList<>();
+    for (int s = 0; s < STUDENTS; s++) {
+      cohort.add(new Student("First" + s, "Last" + s, "user" + s, "user" + s + "@example.com"));
+    }
+    context.getBean(StudentRepository.class).saveAll(cohort);
+    List<GradeRow> rows = new ArrayList<>();
+    for (Student student : cohort) {
+      for (Module module : modules) {
+        rows.add(new GradeRow(student.getId(), module.getCode(),
+            (int) ((student.getId() * 31 + module.getCode().hashCode()) % 101)));
+      }
+    }
+    context.getBean(GradeBatchRepository.class).upsertAll(rows);
+
+    ObjectMapper json = context.getBean(ObjectMapper.class);
+    tree = json.readValue(read(path()), Object.class);
+    switch (format) {
+      case "json":
+        mapper = json;
+        break;
+      case "cbor":
+        mapper = context.getBean(MappingJackson2CborHttpMessageConverter.class).getObjectMapper();
+        break;
+      case "smile":
+        mapper = context.getBean(MappingJackson2SmileHttpMessageConverter.class).getObjectMapper();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown format: " + format);
+    }
+    System.out.printf(Locale.ROOT, "%n%s as %s: %,d bytes, %,d gzipped%n", payload, format,
+        encode().length, encodeGzipped().length);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    context.close();
+  }
+
+  private String path() {
+    switch (payload) {
+      case "grades":
+        return "/grades";
+      case "grades-embedded":
+        return "/grades?view=embedded";
+      case "students":
+        return "/students/all";
+      default:
+        throw new IllegalArgumentException("Unknown payload: " + payload);
+    }
+  }
+
+  private byte[] read(String path) throws IOException, InterruptedException {
+    int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+    HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+        .header("Accept", "application/json").build();
+    return HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofByteArray())
+        .body();
+  }
+
+  @Benchmark
+  public byte[] encode() throws IOException {
+    return mapper.writeValueAsBytes(tree);
+  }
+
+  @Benchmark
+  public byte[] encodeGzipped() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      mapper.writeValue(gzip, tree);
+    }
+    return bytes.toByteArray();
+  }
+}
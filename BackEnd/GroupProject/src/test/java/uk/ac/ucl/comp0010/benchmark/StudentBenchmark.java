@@ -0,0 +1,147 @@
+package uk.ac.ucl.comp0010.benchmark;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import uk.ac.ucl.comp0010.exception.NoGradeAvailableException;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+
+/**
+ * Measures the in-memory operations of {@link Student} and the JSON serialization of a student and
+ * of one of their grades, for students with a growing number of grades and registrations.
+ * <p>
+ * The student is built from a fixed seed, so every run measures the same data. Lookups cycle
+ * through the student's modules, so each result is the average over every position in the
+ * student's lists. Adding grades and registrations for new modules is measured by building a whole
+ * transcript for a new student, so the measured student keeps the same size throughout a run.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class StudentBenchmark {
+
+  private static final long SEED = 20241118L;
+
+  @Param({"5", "50", "500"})
+  public int modules;
+
+  private Student student;
+  private Module[] registered;
+  private Grade[] transcript;
+  private Module unregistered;
+  private Grade sampleGrade;
+  private ObjectMapper objectMapper;
+  private int next;
+
+  /**
+   * Builds a student graded in, and registered for, each of {@link #modules} modules.
+   */
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(SEED);
+    student = new Student(1L, "Ada", "Lovelace", "alovelace", "ada@example.com");
+    registered = new Module[modules];
+    transcript = new Grade[modules];
+    for (int m = 0; m < modules; m++) {
+      registered[m] = new Module(String.format("COMP%04d", m), "Module " + m, random.nextBoolean());
+      registered[m].setId((long) m);
+      transcript[m] = new Grade(random.nextInt(101), registered[m]);
+      student.registerModule(registered[m]);
+      student.addGrade(new Grade(transcript[m].getScore(), registered[m]));
+    }
+    unregistered = new Module("ELEC0001", "Unregistered", false);
+    sampleGrade = new Grade(random.nextInt(101), student, registered[modules / 2]);
+    sampleGrade.setId(1L);
+    objectMapper = Jackson2ObjectMapperBuilder.json().build();
+  }
+
+  private Module nextModule() {
+    next = next + 1 == modules ? 0 : next + 1;
+    return registered[next];
+  }
+
+  @Benchmark
+  public void addGradeReplacingScore() {
+    Module module = nextModule();
+    student.addGrade(new Grade(next, module));
+  }
+
+  @Benchmark
+  public Student addGradesToNewStudent() {
+    Student fresh = new Student(2L, "Charles", "Babbage", "cbabbage", "charles@example.com");
+    for (Grade grade : transcript) {
+      fresh.addGrade(grade);
+    }
+    return fresh;
+  }
+
+  @Benchmark
+  public Grade getGrade() throws NoGradeAvailableException {
+    return student.getGrade(nextModule());
+  }
+
+  @Benchmark
+  public void registerModuleAlreadyRegistered() {
+    student.registerModule(nextModule());
+  }
+
+  @Benchmark
+  public Student registerModulesForNewStudent() {
+    Student fresh = new Student(2L, "Charles", "Babbage", "cbabbage", "charles@example.com");
+    for (Module module : registered) {
+      fresh.registerModule(module);
+    }
+    return fresh;
+  }
+
+  @Benchmark
+  public boolean isRegisteredFor() {
+    return student.isRegisteredFor(nextModule());
+  }
+
+  @Benchmark
+  public boolean isRegisteredForUnregistered() {
+    return student.isRegisteredFor(unregistered);
+  }
+
+  @Benchmark
+  public List<Module> getRegisteredModules() {
+    return student.getRegisteredModules();
+  }
+
+  @Benchmark
+  public float computeAverage() throws NoGradeAvailableException {
+    return student.computeAverage();
+  }
+
+  @Benchmark
+  public byte[] serializeStudent() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(student);
+  }
+
+  @Benchmark
+  public byte[] serializeGrade() throws JsonProcessingException {
+    return objectMapper.writeValueAsBytes(sampleGrade);
+  }
+}
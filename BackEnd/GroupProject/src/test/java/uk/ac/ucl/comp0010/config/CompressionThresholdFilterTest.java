@@ -0,0 +1,56 @@
+package uk.ac.ucl.comp0010.config;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletResponse;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class CompressionThresholdFilterTest {
+
+  private final MockHttpServletResponse response = new MockHttpServletResponse();
+
+  @Test
+  public void testJacksonResponseIsNotCommittedByFlushes() throws Exception {
+    new CompressionThresholdFilter().doFilter(new MockHttpServletRequest(), response,
+        (request, wrapped) -> {
+          HttpServletResponse http = (HttpServletResponse) wrapped;
+          http.setContentType("application/cbor");
+          ServletOutputStream out = http.getOutputStream();
+          out.write('{');
+          out.write("}".getBytes(StandardCharsets.UTF_8), 0, 1);
+          out.flush();
+          http.flushBuffer();
+          assertTrue(out.isReady());
+          assertFalse(response.isCommitted());
+          out.close();
+        });
+
+    assertArrayEquals("{}".getBytes(StandardCharsets.UTF_8), response.getContentAsByteArray());
+  }
+
+  @Test
+  public void testStreamedResponseIsCommittedByFlushes() throws Exception {
+    new CompressionThresholdFilter().doFilter(new MockHttpServletRequest(), response,
+        (request, wrapped) -> {
+          HttpServletResponse http = (HttpServletResponse) wrapped;
+          http.setContentType("application/x-ndjson");
+          http.getOutputStream().write('{');
+          http.getOutputStream().flush();
+          assertTrue(response.isCommitted());
+        });
+  }
+
+  @Test
+  public void testResponseWithoutContentTypeIsCommittedByFlushes() throws Exception {
+    new CompressionThresholdFilter().doFilter(new MockHttpServletRequest(), response,
+        (request, wrapped) -> {
+          ((HttpServletResponse) wrapped).flushBuffer();
+          assertTrue(response.isCommitted());
+        });
+  }
+}
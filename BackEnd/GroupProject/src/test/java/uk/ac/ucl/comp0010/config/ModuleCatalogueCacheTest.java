@@ -0,0 +1,94 @@
+package uk.ac.ucl.comp0010.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import uk.ac.ucl.comp0010.model.Module;
+
+public class ModuleCatalogueCacheTest {
+
+  private final ConcurrentMapCache target = new ConcurrentMapCache("modules");
+
+  private final ModuleCatalogueCache cache = new ModuleCatalogueCache(target);
+
+  @AfterEach
+  public void tearDown() {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.clearSynchronization();
+    }
+  }
+
+  @Test
+  public void testReadersGetTheirOwnCopies() {
+    Module module = new Module("COMP0010", "Software Engineering", true);
+    assertNull(cache.get("all"));
+    cache.put("all", List.of(module));
+    module.setName("Changed after caching");
+
+    List<?> first = (List<?>) cache.get("all").get();
+    ((Module) first.get(0)).setName("Changed by a reader");
+
+    assertEquals("Software Engineering",
+        ((Module) ((List<?>) cache.get("all").get()).get(0)).getName());
+  }
+
+  @Test
+  public void testReadStartedBeforeClearIsNotStored() {
+    assertNull(cache.get("code:COMP0010"));
+    cache.clear();
+    cache.put("code:COMP0010", new Module("COMP0010", "Before the write", true));
+
+    assertNull(cache.get("code:COMP0010"));
+  }
+
+  @Test
+  public void testClearIsRepeatedWhenTheTransactionEnds() {
+    TransactionSynchronizationManager.initSynchronization();
+    cache.clear();
+    // read by another request before the write commits
+    assertNull(cache.get("code:COMP0010"));
+    cache.put("code:COMP0010", new Module("COMP0010", "Before the commit", true));
+    assertNotNull(cache.get("code:COMP0010"));
+
+    TransactionSynchronizationManager.getSynchronizations()
+        .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+
+    assertNull(cache.get("code:COMP0010"));
+  }
+
+  @Test
+  public void testLoadedValuesAreStoredAsCopies() {
+    Module loaded = new Module("COMP0010", "Software Engineering", true);
+
+    assertSame(loaded, cache.get("code:COMP0010", () -> loaded));
+    Module cached = cache.get("code:COMP0010", Module.class);
+
+    assertNotSame(loaded, cached);
+    assertEquals("Software Engineering", cached.getName());
+    assertNotSame(cached, cache.get("code:COMP0010", () -> loaded));
+    assertSame(target.getNativeCache(), cache.getNativeCache());
+  }
+
+  @Test
+  public void testFailedLoadIsReportedAndEvictClears() {
+    assertThrows(Cache.ValueRetrievalException.class, () -> cache.get("all", () -> {
+      throw new IllegalStateException("Database unavailable");
+    }));
+    assertNull(cache.get("all", Module.class));
+
+    cache.get("code:COMP0010", () -> new Module("COMP0010", "Software Engineering", true));
+    cache.evict("code:COMP0020");
+
+    assertNull(cache.get("code:COMP0010"));
+  }
+}
@@ -0,0 +1,32 @@
+package uk.ac.ucl.comp0010.config;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.ModuleStats;
+import uk.ac.ucl.comp0010.service.GradeFeed;
+
+public class NativeConfigTest {
+
+  private final RuntimeHints hints = new RuntimeHints();
+
+  @Test
+  public void testTypesInMapResponsesAreBound() {
+    new NativeConfig.Hints().registerHints(hints, getClass().getClassLoader());
+
+    for (Class<?> type : NativeConfig.BOUND_TYPES) {
+      assertTrue(RuntimeHintsPredicates.reflection().onType(type).test(hints), type.getName());
+    }
+    assertTrue(RuntimeHintsPredicates.reflection().onType(Student.class)
+        .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+    assertTrue(RuntimeHintsPredicates.reflection().onMethod(Grade.class, "getScore").test(hints));
+    assertTrue(
+        RuntimeHintsPredicates.reflection().onMethod(ModuleStats.class, "getMean").test(hints));
+    assertTrue(RuntimeHintsPredicates.reflection().onType(GradeFeed.Change.class)
+        .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+  }
+}
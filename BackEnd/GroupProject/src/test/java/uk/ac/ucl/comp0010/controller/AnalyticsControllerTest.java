@@ -0,0 +1,169 @@
+package uk.ac.ucl.comp0010.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.PlatformTransactionManager;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.service.GradeSnapshot;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+public class AnalyticsControllerTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private GradeSnapshot gradeSnapshot;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  private Student john;
+  private Student jane;
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+
+    Module comp10 = moduleRepository.save(new Module("COMP0010", "Software Engineering", true));
+    Module comp20 = moduleRepository.save(new Module("COMP0020", "Algorithms", false));
+    john = studentRepository.save(new Student("John", "Doe", "johndoe", "john@example.com"));
+    jane = studentRepository.save(new Student("Jane", "Roe", "janeroe", "jane@example.com"));
+    gradeRepository.save(new Grade(80, john, comp10));
+    gradeRepository.save(new Grade(60, john, comp20));
+    gradeRepository.save(new Grade(30, jane, comp10));
+    // the repositories above bypass the controllers, so the snapshot is rebuilt from them
+    gradeSnapshot.rebuild();
+  }
+
+  @Test
+  public void testGetModuleAverages() throws Exception {
+    assertEquals(Map.of("COMP0010", 55.0, "COMP0020", 60.0), moduleAverages());
+  }
+
+  @Test
+  public void testModuleAveragesFollowGradeWrites() throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("student_id", String.valueOf(jane.getId()));
+    params.put("module_code", "COMP0020");
+    params.put("score", "40");
+    mockMvc.perform(MockMvcRequestBuilders.post("/grades/addGrade")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)));
+    assertEquals(Map.of("COMP0010", 55.0, "COMP0020", 50.0), moduleAverages());
+
+    Long gradeId =
+        gradeRepository.findByStudentIdAndModuleCode(jane.getId(), "COMP0010").get().getId();
+    mockMvc.perform(MockMvcRequestBuilders.patch("/grades/" + gradeId)
+        .contentType(MediaType.APPLICATION_JSON).content("50"));
+    assertEquals(Map.of("COMP0010", 65.0, "COMP0020", 50.0), moduleAverages());
+
+    // moving John's COMP0020 grade over to COMP0010 replaces his score there
+    gradeId = gradeRepository.findByStudentIdAndModuleCode(john.getId(), "COMP0020").get().getId();
+    gradeRepository.delete(
+        gradeRepository.findByStudentIdAndModuleCode(john.getId(), "COMP0010").get());
+    params.put("student_id", String.valueOf(john.getId()));
+    params.put("module_code", "COMP0010");
+    params.put("score", "70");
+    mockMvc.perform(MockMvcRequestBuilders.put("/grades/" + gradeId)
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)));
+    assertEquals(Map.of("COMP0010", 60.0, "COMP0020", 40.0), moduleAverages());
+
+    mockMvc.perform(MockMvcRequestBuilders.delete("/students/delete/{student_id}", jane.getId()));
+    assertEquals(Map.of("COMP0010", 70.0), moduleAverages());
+  }
+
+  @Test
+  public void testModuleAveragesFollowBulkUpload() throws Exception {
+    String csv = "student_id,module_code,score\n" + jane.getId() + ",COMP0020,90\n";
+    mockMvc.perform(MockMvcRequestBuilders.post("/grades/bulk").contentType("text/csv")
+        .content(csv));
+
+    assertEquals(Map.of("COMP0010", 55.0, "COMP0020", 75.0), moduleAverages());
+  }
+
+  @Test
+  public void testGetStudentsBelow() throws Exception {
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders.get("/analytics/students/below").param("threshold", "40"))
+        .andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    Map<String, Object> response = objectMapper.readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    assertEquals(40.0, response.get("threshold"));
+    assertEquals(List.of(jane.getId().intValue()), response.get("students"));
+  }
+
+  @Test
+  public void testCompareModules() throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/analytics/modules/compare")
+        .param("first", "COMP0010").param("second", "COMP0020")).andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    Map<String, Object> response = objectMapper.readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    assertEquals(1, response.get("students"));
+    assertEquals(80.0, response.get("firstMean"));
+    assertEquals(60.0, response.get("secondMean"));
+  }
+
+  @Test
+  public void testAnalyticsUnavailableWhenGradesDoNotFit() {
+    GradeSnapshot bounded = new GradeSnapshot(gradeRepository, transactionManager, 1);
+    bounded.rebuild();
+    AnalyticsController controller = new AnalyticsController(bounded);
+
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE, controller.getModuleAverages().getStatusCode());
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+        controller.getStudentsBelow(40).getStatusCode());
+    assertEquals(HttpStatus.SERVICE_UNAVAILABLE,
+        controller.compareModules("COMP0010", "COMP0020").getStatusCode());
+  }
+
+  private Map<String, Double> moduleAverages() throws Exception {
+    MvcResult result =
+        mockMvc.perform(MockMvcRequestBuilders.get("/analytics/modules/averages")).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    return objectMapper.readValue(result.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Double>>() {});
+  }
+}
@@ -0,0 +1,126 @@
+package uk.ac.ucl.comp0010.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+public class BulkGradeControllerTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  private Student student1;
+  private Student student2;
+  private Module module;
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+
+    module = moduleRepository.save(new Module("COMP0010", "Software Engineering", true));
+    student1 = studentRepository.save(new Student("John", "Doe", "johndoe", "john@example.com"));
+    student2 = studentRepository.save(new Student("Jane", "Roe", "janeroe", "jane@example.com"));
+  }
+
+  private Map<String, Object> upload(String contentType, String body) throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/grades/bulk")
+        .contentType(contentType).content(body)).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    return objectMapper.readValue(result.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Object>>() {});
+  }
+
+  @Test
+  public void testBulkCsvReportsRejectedLines() throws Exception {
+    String csv = "score,student_id,module_code\n"
+        + "70," + student1.getId() + ",COMP0010\n"
+        + "80," + student2.getId() + ",COMP0010\n"
+        + "55,999999,COMP0010\n"
+        + "60," + student1.getId() + ",NOPE\n"
+        + "abc," + student1.getId() + ",COMP0010\n";
+
+    Map<String, Object> report = upload("text/csv", csv);
+
+    assertEquals(5, report.get("received"));
+    assertEquals(2, report.get("written"));
+    List<Map<String, Object>> errors = (List<Map<String, Object>>) report.get("errors");
+    assertEquals(3, errors.size());
+    assertEquals(4, errors.get(0).get("line"));
+    assertEquals("Unknown student 999999", errors.get(0).get("error"));
+    assertEquals(5, errors.get(1).get("line"));
+    assertEquals("Unknown module NOPE", errors.get(1).get("error"));
+    assertEquals(6, errors.get(2).get("line"));
+    assertEquals("Invalid score", errors.get(2).get("error"));
+
+    assertEquals(2, gradeRepository.count());
+    assertEquals(70, gradeRepository.findByStudentIdAndModuleCode(student1.getId(), "COMP0010")
+        .get().getScore());
+  }
+
+  @Test
+  public void testBulkNdjsonReplacesExistingGrades() throws Exception {
+    Grade existing = gradeRepository.save(new Grade(40, student1, module));
+    String ndjson = "{\"student_id\": " + student1.getId() + ", \"module_code\": \"COMP0010\","
+        + " \"score\": 75}\n"
+        + "not json\n"
+        + "{\"student_id\": " + student2.getId() + ", \"module_code\": \"COMP0010\"}\n";
+
+    Map<String, Object> report = upload("application/x-ndjson", ndjson);
+
+    assertEquals(3, report.get("received"));
+    assertEquals(1, report.get("written"));
+    List<Map<String, Object>> errors = (List<Map<String, Object>>) report.get("errors");
+    assertEquals("Malformed JSON", errors.get(0).get("error"));
+    assertEquals("Missing score", errors.get(1).get("error"));
+
+    // The existing grade keeps its id and takes the new score
+    assertEquals(1, gradeRepository.count());
+    assertEquals(75, gradeRepository.findById(existing.getId()).get().getScore());
+  }
+
+  @Test
+  public void testBulkCsvWithIncompleteHeader() throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/grades/bulk")
+        .contentType("text/csv").content("student_id,score\n1,50\n")).andReturn();
+
+    assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+  }
+}
@@ -0,0 +1,203 @@
+package uk.ac.ucl.comp0010.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+/**
+ * Counts the SQL statements issued by each endpoint, so that a change to a fetch plan that brings
+ * back extra queries is caught.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+public class FetchPlanTest {
+
+  private static final int STUDENTS = 5;
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  private Statistics statistics;
+  private Student student;
+  private Module module;
+  private Grade grade;
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+
+    // each student is registered for, and graded in, a module of their own
+    for (int i = 0; i < STUDENTS; i++) {
+      Module m = moduleRepository.save(new Module("MOD" + i, "Module " + i, false));
+      Student s = new Student("First" + i, "Last" + i, "user" + i, "user" + i + "@example.com");
+      s.registerModule(m);
+      s = studentRepository.save(s);
+      Grade g = gradeRepository.save(new Grade(50 + i, s, m));
+      if (i == 0) {
+        student = s;
+        module = m;
+        grade = g;
+      }
+    }
+
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    statistics.setStatisticsEnabled(true);
+  }
+
+  private long statementsFor(RequestBuilder request) throws Exception {
+    statistics.clear();
+    int status = mockMvc.perform(request).andReturn().getResponse().getStatus();
+    assertEquals(HttpStatus.OK.value(), status);
+    return statistics.getPrepareStatementCount();
+  }
+
+  @Test
+  public void testGetStudentByIdIsOneStatement() throws Exception {
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.get("/students/{id}", student.getId())));
+  }
+
+  @Test
+  public void testGetGradeByIdIsOneStatement() throws Exception {
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.get("/grades/{id}", grade.getId())));
+  }
+
+  @Test
+  public void testExportStudentsIsOneStatement() throws Exception {
+    studentRepository.save(new Student("Anna", "Adams", "annaadams", "anna@example.com"));
+
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.get("/students/export")));
+    // each line is the student as it is returned on its own, registered modules included
+    String[] lines = mockMvc.perform(MockMvcRequestBuilders.get("/students/export")).andReturn()
+        .getResponse().getContentAsString().split("\n");
+    assertEquals(STUDENTS + 1, lines.length);
+    for (String line : lines) {
+      Map<?, ?> exported = objectMapper.readValue(line, Map.class);
+      String single =
+          mockMvc.perform(MockMvcRequestBuilders.get("/students/{id}", exported.get("id")))
+              .andReturn().getResponse().getContentAsString();
+      assertEquals(objectMapper.readValue(single, Map.class), exported);
+    }
+  }
+
+  @Test
+  public void testGradePropertyDoesNotLoadCollections() throws Exception {
+    assertEquals(1,
+        statementsFor(MockMvcRequestBuilders.get("/grades/{id}/student/first", grade.getId())));
+    assertEquals(1,
+        statementsFor(MockMvcRequestBuilders.get("/grades/{id}/module/name", grade.getId())));
+  }
+
+  @Test
+  public void testGradeFieldsAreOneStatement() throws Exception {
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.get("/grades/{id}", grade.getId())
+        .param("fields", "student.first,student.last,student.email")));
+    // however many grades are read
+    String ids = gradeRepository.findAllListings().stream()
+        .map(listing -> listing.getId().toString()).collect(Collectors.joining(","));
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.get("/grades").param("ids", ids)
+        .param("fields", "score,student.email,module.code")));
+  }
+
+  @Test
+  public void testBatchesAreOneStatementPerChunk() throws Exception {
+    String studentIds = objectMapper.writeValueAsString(gradeRepository.findAllListings().stream()
+        .map(listing -> listing.getStudentId()).collect(Collectors.toList()));
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.post("/students/batch")
+        .contentType(MediaType.APPLICATION_JSON).content(studentIds)));
+    String gradeIds = objectMapper.writeValueAsString(gradeRepository.findAllListings().stream()
+        .map(listing -> listing.getId()).collect(Collectors.toList()));
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.post("/grades/batch")
+        .contentType(MediaType.APPLICATION_JSON).content(gradeIds)));
+    // modules come from the cached catalogue
+    statementsFor(MockMvcRequestBuilders.get("/modules/all"));
+    assertEquals(0, statementsFor(MockMvcRequestBuilders.post("/modules/batch")
+        .contentType(MediaType.APPLICATION_JSON).content("[\"MOD0\",\"MOD1\"]")));
+  }
+
+  @Test
+  public void testEmbeddedGradeListingIsOneStatement() throws Exception {
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.get("/grades").param("view", "embedded")));
+  }
+
+  @Test
+  public void testModuleStatsAreOneStatement() throws Exception {
+    // every module is aggregated by the database without loading its grades
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.get("/modules/stats")));
+    assertEquals(1,
+        statementsFor(MockMvcRequestBuilders.get("/modules/{code}/stats", module.getCode())));
+  }
+
+  @Test
+  public void testModuleCatalogueIsServedFromCache() throws Exception {
+    assertEquals(1, statementsFor(MockMvcRequestBuilders.get("/modules/all")));
+    // steady state: the catalogue and modules looked up by code come from the cache
+    assertEquals(0, statementsFor(MockMvcRequestBuilders.get("/modules/all")));
+    moduleRepository.findByCode(module.getCode());
+    assertEquals(0, statementsFor(MockMvcRequestBuilders.get("/modules/all")));
+    statistics.clear();
+    moduleRepository.findByCode(module.getCode());
+    assertEquals(0, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  public void testGetAllStudentsFetchesCollectionsInBatches() throws Exception {
+    // students, then one batch of registrations, then one batch of modules
+    assertEquals(3, statementsFor(MockMvcRequestBuilders.get("/students/all")));
+  }
+
+  @Test
+  public void testAddGradeIsUpsertAndReload() throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("student_id", String.valueOf(student.getId()));
+    params.put("module_code", module.getCode());
+    params.put("score", "90");
+
+    // the student's lock, the upsert, the resulting grade with its details, then the replaced
+    // score is taken out of the student's totals and the new one added
+    assertEquals(5, statementsFor(MockMvcRequestBuilders.post("/grades/addGrade")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params))));
+  }
+}
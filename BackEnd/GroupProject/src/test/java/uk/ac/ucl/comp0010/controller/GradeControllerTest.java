@@ -4,11 +4,16 @@ import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,6 +27,8 @@ import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
 import uk.ac.ucl.comp0010.model.Grade;
 import uk.ac.ucl.comp0010.model.Module;
 import uk.ac.ucl.comp0010.model.Registration;
@@ -30,6 +37,7 @@ import uk.ac.ucl.comp0010.repository.GradeRepository;
 import uk.ac.ucl.comp0010.repository.ModuleRepository;
 import uk.ac.ucl.comp0010.repository.RegistrationRepository;
 import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.service.GradeSnapshot;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
 @AutoConfigureMockMvc
@@ -53,6 +61,9 @@ public class GradeControllerTest {
   @Autowired
   private RegistrationRepository registrationRepository;
 
+  @Autowired
+  private GradeSnapshot gradeSnapshot;
+
   Student student;
   Module module;
 
@@ -119,11 +130,133 @@ public class GradeControllerTest {
     assertEquals(test_grade.getScore(), grade.getScore());
     assertEquals(test_grade.getModule().getCode(), grade.getModule().getCode());
     assertEquals(test_grade.getStudent().getFirstName(), "John");
-    Optional<Student> test_student = studentRepository.findById(student.getId());
+    Optional<Student> test_student = studentRepository.findWithGradesById(student.getId());
     assertThat(test_student).isPresent();
     assertEquals(test_student.get().getGrade(grade.getModule()).getScore(), grade.getScore());
   }
 
+  @Test
+  public void testAddGradeReplacesExistingScore() throws Exception {
+    Grade existing = gradeRepository.save(new Grade(40, student, module));
+
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("student_id", String.valueOf(student.getId()));
+    params.put("module_code", module.getCode());
+    params.put("score", "65");
+
+    MvcResult result = mockMvc.perform(
+        MockMvcRequestBuilders.post("/grades/addGrade").contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(params)))
+        .andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    Grade grade = objectMapper.readValue(result.getResponse().getContentAsString(), Grade.class);
+    // The existing grade is updated in place
+    assertEquals(existing.getId(), grade.getId());
+    assertEquals(65, grade.getScore());
+    assertEquals(1, gradeRepository.count());
+  }
+
+  @Test
+  public void testAddGradeConcurrentlyKeepsOneGrade() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> statuses = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      Map<String, String> params = new HashMap<String, String>();
+      params.put("student_id", String.valueOf(student.getId()));
+      params.put("module_code", module.getCode());
+      params.put("score", String.valueOf(i));
+      String content = objectMapper.writeValueAsString(params);
+      statuses.add(executor.submit(() -> mockMvc.perform(MockMvcRequestBuilders
+          .post("/grades/addGrade").contentType(MediaType.APPLICATION_JSON).content(content))
+          .andReturn().getResponse().getStatus()));
+    }
+    for (Future<Integer> status : statuses) {
+      assertEquals(HttpStatus.OK.value(), status.get());
+    }
+    executor.shutdown();
+
+    // Every submission hit the same (student, module) grade
+    assertEquals(1, gradeRepository.count());
+  }
+
+  @Test
+  public void testPatchGradeConcurrentlyKeepsStats() throws Exception {
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("student_id", String.valueOf(student.getId()));
+    params.put("module_code", module.getCode());
+    params.put("score", "40");
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/grades/addGrade")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)))
+        .andReturn();
+    Long gradeId =
+        objectMapper.readValue(result.getResponse().getContentAsString(), Grade.class).getId();
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<Integer>> statuses = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      String content = String.valueOf(50 + i);
+      statuses.add(executor.submit(() -> mockMvc.perform(MockMvcRequestBuilders
+          .patch("/grades/" + gradeId).contentType(MediaType.APPLICATION_JSON).content(content))
+          .andReturn().getResponse().getStatus()));
+    }
+    for (Future<Integer> status : statuses) {
+      assertEquals(HttpStatus.OK.value(), status.get());
+    }
+    executor.shutdown();
+
+    // Each patch replaced the score it read, so the stats hold only the last one
+    int score = gradeRepository.findById(gradeId).get().getScore();
+    assertStats(1, score, score, score);
+  }
+
+  @Test
+  public void testGradeWritesMaintainStudentStats() throws Exception {
+    Module module2 = moduleRepository.save(new Module("COMP00020", "Algorithms", false));
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("student_id", String.valueOf(student.getId()));
+    params.put("module_code", module.getCode());
+    params.put("score", "60");
+    mockMvc.perform(MockMvcRequestBuilders.post("/grades/addGrade")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)));
+    params.put("module_code", module2.getCode());
+    params.put("score", "80");
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/grades/addGrade")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)))
+        .andReturn();
+    Long gradeId =
+        objectMapper.readValue(result.getResponse().getContentAsString(), Grade.class).getId();
+    assertStats(2, 140, 60, 80);
+
+    // Replacing a score through addGrade
+    params.put("score", "50");
+    mockMvc.perform(MockMvcRequestBuilders.post("/grades/addGrade")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)));
+    assertStats(2, 110, 50, 60);
+
+    // Patching away the minimum brings back the other score as minimum
+    mockMvc.perform(MockMvcRequestBuilders.patch("/grades/" + gradeId)
+        .contentType(MediaType.APPLICATION_JSON).content("95"));
+    assertStats(2, 155, 60, 95);
+
+    params.put("score", "70");
+    mockMvc.perform(MockMvcRequestBuilders.put("/grades/" + gradeId)
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)));
+    assertStats(2, 130, 60, 70);
+  }
+
+  private void assertStats(long count, long sum, Integer min, Integer max) throws Exception {
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders.get("/students/{id}/stats", student.getId())).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    Map<String, Object> stats = objectMapper.readValue(result.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Object>>() {});
+    assertEquals(count, ((Number) stats.get("count")).longValue());
+    assertEquals(sum, ((Number) stats.get("sum")).longValue());
+    assertEquals(min, stats.get("min"));
+    assertEquals(max, stats.get("max"));
+  }
+
   @Test
   public void testGetAllGrades() throws Exception {
     // Ensure unique student data
@@ -170,6 +303,215 @@ public class GradeControllerTest {
     assertEquals(80, (int) grades.get(1).get("score"));
   }
 
+  @Test
+  public void testGetAllGradesEmbedded() throws Exception {
+    Grade grade = new Grade(75, student, module);
+    gradeRepository.save(grade);
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/grades")
+        .param("view", "embedded").contentType(MediaType.APPLICATION_JSON)).andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+    Map<String, Object> responseMap = objectMapper.readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    Map<String, Object> embedded = (Map<String, Object>) responseMap.get("_embedded");
+    List<Map<String, Object>> grades = (List<Map<String, Object>>) embedded.get("grades");
+    assertEquals(1, grades.size());
+
+    // Student and module summaries are returned inline instead of as links
+    Map<String, Object> gradeMap = grades.get(0);
+    assertEquals(75, (int) gradeMap.get("score"));
+    assertThat(gradeMap).doesNotContainKey("_links");
+    Map<String, Object> studentMap = (Map<String, Object>) gradeMap.get("student");
+    assertEquals(student.getId(), ((Number) studentMap.get("id")).longValue());
+    assertEquals("John", studentMap.get("firstName"));
+    assertEquals("Doe", studentMap.get("lastName"));
+    Map<String, Object> moduleMap = (Map<String, Object>) gradeMap.get("module");
+    assertEquals(module.getCode(), moduleMap.get("code"));
+    assertEquals(module.getName(), moduleMap.get("name"));
+  }
+
+  @Test
+  public void testGetAllGradesWithInvalidView() throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/grades")
+        .param("view", "unknown").contentType(MediaType.APPLICATION_JSON)).andReturn();
+
+    assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+  }
+
+  @Test
+  public void testGetAllGradesAnswersUnchangedPollWithNotModified() throws Exception {
+    Grade grade = gradeRepository.save(new Grade(70, student, module));
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/grades")).andReturn();
+    String etag = result.getResponse().getHeader("ETag");
+    assertThat(etag).isNotNull();
+    assertEquals("no-cache", result.getResponse().getHeader("Cache-Control"));
+
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/grades").header("If-None-Match", etag))
+        .andReturn();
+    assertEquals(HttpStatus.NOT_MODIFIED.value(), result.getResponse().getStatus());
+    assertEquals("", result.getResponse().getContentAsString());
+
+    mockMvc.perform(MockMvcRequestBuilders.patch("/grades/" + grade.getId())
+        .contentType(MediaType.APPLICATION_JSON).content("80"));
+
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/grades").header("If-None-Match", etag))
+        .andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    assertThat(result.getResponse().getHeader("ETag")).isNotEqualTo(etag);
+  }
+
+  @Test
+  public void testGetAllGradesInBinaryEncodings() throws Exception {
+    gradeRepository.save(new Grade(70, student, module));
+    MvcResult json = mockMvc.perform(MockMvcRequestBuilders.get("/grades")
+        .param("view", "embedded").accept(MediaType.APPLICATION_JSON)).andReturn();
+    Map<String, Object> expected = objectMapper.readValue(json.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Object>>() {});
+
+    for (ObjectMapper mapper : List.of(new CBORMapper(), new SmileMapper())) {
+      String contentType = mapper instanceof CBORMapper ? "application/cbor"
+          : "application/x-jackson-smile";
+      MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/grades")
+          .param("view", "embedded").accept(contentType)).andReturn();
+
+      assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+      assertEquals(contentType, result.getResponse().getContentType());
+      assertThat(result.getResponse().getContentAsByteArray().length)
+          .isLessThan(json.getResponse().getContentAsByteArray().length);
+      assertEquals(expected, mapper.readValue(result.getResponse().getContentAsByteArray(),
+          new TypeReference<Map<String, Object>>() {}));
+      // one weak ETag for every encoding, which caches tell apart by the Accept header
+      assertEquals(json.getResponse().getHeader("ETag"), result.getResponse().getHeader("ETag"));
+      assertThat(result.getResponse().getHeader("ETag")).startsWith("W/");
+      assertThat(result.getResponse().getHeaders("Vary")).contains("Accept");
+    }
+  }
+
+  private Map<String, Object> gradeChanges(Object since) throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/grades/changes")
+        .param("since", String.valueOf(since))).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    return objectMapper.readValue(result.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Object>>() {});
+  }
+
+  @Test
+  public void testGetGradeChangesSinceVersion() throws Exception {
+    Grade grade = gradeRepository.save(new Grade(60, student, module));
+
+    // a first sync returns every grade
+    Map<String, Object> changes = gradeChanges(0);
+    assertEquals(true, changes.get("reset"));
+    List<Map<String, Object>> changed = (List<Map<String, Object>>) changes.get("changed");
+    assertEquals(1, changed.size());
+    assertEquals(grade.getId().intValue(), changed.get(0).get("id"));
+    Object version = changes.get("version");
+
+    changes = gradeChanges(version);
+    assertEquals(false, changes.get("reset"));
+    assertEquals(List.of(), changes.get("changed"));
+    assertEquals(List.of(), changes.get("deleted"));
+    assertEquals(version, changes.get("version"));
+
+    // the upsert of /grades/addGrade is logged like any other write
+    Map<String, String> params = new HashMap<>();
+    params.put("student_id", String.valueOf(student.getId()));
+    params.put("module_code", module.getCode());
+    params.put("score", "70");
+    mockMvc.perform(MockMvcRequestBuilders.post("/grades/addGrade")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)));
+
+    changes = gradeChanges(version);
+    assertEquals(false, changes.get("reset"));
+    changed = (List<Map<String, Object>>) changes.get("changed");
+    assertEquals(1, changed.size());
+    assertEquals(70, changed.get(0).get("score"));
+    version = changes.get("version");
+
+    mockMvc.perform(MockMvcRequestBuilders.delete("/grades/" + grade.getId()));
+
+    changes = gradeChanges(version);
+    assertEquals(List.of(), changes.get("changed"));
+    assertEquals(List.of(grade.getId().intValue()), changes.get("deleted"));
+  }
+
+  @Test
+  public void testGetAllGradesPagedByScore() throws Exception {
+    Student student1 = new Student("Abc", "Def", "ad", "abc@gmail.com");
+    Student student2 = new Student("Pqr", "Stu", "ps", "pqr@gmail.com");
+    studentRepository.saveAll(Arrays.asList(student1, student2));
+    gradeRepository.saveAll(Arrays.asList(new Grade(90, student1, module),
+        new Grade(60, student2, module), new Grade(75, student, module)));
+
+    // First page holds the two lowest scores and points at the next one
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/grades")
+        .param("limit", "2").param("sort", "score")).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    Map<String, Object> responseMap = objectMapper.readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    List<Map<String, Object>> grades = (List<Map<String, Object>>) ((Map<String, Object>) responseMap
+        .get("_embedded")).get("grades");
+    assertEquals(2, grades.size());
+    assertEquals(60, (int) grades.get(0).get("score"));
+    assertEquals(75, (int) grades.get(1).get("score"));
+    Map<String, Object> page = (Map<String, Object>) responseMap.get("page");
+    assertThat(page.get("next")).isInstanceOf(String.class);
+    assertTrue(responseMap.containsKey("_links"));
+
+    // Second page resumes after the cursor, even with the grade it was taken from deleted, and is
+    // the last one
+    gradeRepository.deleteById(((Number) grades.get(1).get("id")).longValue());
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/grades").param("limit", "2")
+        .param("sort", "score").param("after", String.valueOf(page.get("next")))).andReturn();
+    responseMap = objectMapper.readValue(result.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Object>>() {});
+    grades = (List<Map<String, Object>>) ((Map<String, Object>) responseMap.get("_embedded"))
+        .get("grades");
+    assertEquals(1, grades.size());
+    assertEquals(90, (int) grades.get(0).get("score"));
+    assertEquals(null, ((Map<String, Object>) responseMap.get("page")).get("next"));
+  }
+
+  @Test
+  public void testGetAllGradesPagedWithInvalidParameters() throws Exception {
+    assertEquals(HttpStatus.BAD_REQUEST.value(), mockMvc
+        .perform(MockMvcRequestBuilders.get("/grades").param("limit", "0")).andReturn()
+        .getResponse().getStatus());
+    assertEquals(HttpStatus.BAD_REQUEST.value(), mockMvc
+        .perform(MockMvcRequestBuilders.get("/grades").param("limit", "2").param("sort", "name"))
+        .andReturn().getResponse().getStatus());
+    assertEquals(HttpStatus.BAD_REQUEST.value(), mockMvc
+        .perform(MockMvcRequestBuilders.get("/grades").param("after", "999").param("sort", "score"))
+        .andReturn().getResponse().getStatus());
+  }
+
+  @Test
+  public void testExportGrades() throws Exception {
+    Student student1 = new Student("Abc", "Def", "ad", "abc@gmail.com");
+    studentRepository.save(student1);
+    gradeRepository.saveAll(Arrays.asList(new Grade(70, student, module),
+        new Grade(65, student1, module)));
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/grades/export")).andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    assertThat(result.getResponse().getContentType()).startsWith("application/x-ndjson");
+
+    // One JSON object per line, in id order
+    String[] lines = result.getResponse().getContentAsString().split("\n");
+    assertEquals(2, lines.length);
+    Map<String, Object> first =
+        objectMapper.readValue(lines[0], new TypeReference<Map<String, Object>>() {});
+    Map<String, Object> second =
+        objectMapper.readValue(lines[1], new TypeReference<Map<String, Object>>() {});
+    assertEquals(70, (int) first.get("score"));
+    assertEquals("John", ((Map<String, Object>) first.get("student")).get("firstName"));
+    assertEquals(module.getCode(), ((Map<String, Object>) first.get("module")).get("code"));
+    assertEquals(65, (int) second.get("score"));
+  }
+
   @Test
   public void testGetGradeById() throws Exception {
     // Create and save a grade
@@ -233,6 +575,28 @@ public class GradeControllerTest {
     assertEquals(module.getCode(), updatedGrade.getModule().getCode());
   }
 
+  @Test
+  public void testUpdateGradesWithoutStudentOrModule() throws Exception {
+    // grades created without a student or module through the repository endpoints
+    Grade withoutStudent = gradeRepository.save(new Grade(70, module));
+    Grade withoutModule = gradeRepository.save(new Grade(60, student, null));
+    Map<String, String> params = new HashMap<>();
+    params.put("student_id", student.getId().toString());
+    params.put("module_code", module.getCode());
+    params.put("score", "80");
+
+    int status = mockMvc.perform(MockMvcRequestBuilders.put("/grades/" + withoutStudent.getId())
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)))
+        .andReturn().getResponse().getStatus();
+    assertEquals(HttpStatus.OK.value(), status);
+    status = mockMvc.perform(MockMvcRequestBuilders.patch("/grades/" + withoutModule.getId())
+        .contentType(MediaType.APPLICATION_JSON).content("65")).andReturn().getResponse()
+        .getStatus();
+    assertEquals(HttpStatus.OK.value(), status);
+
+    assertTrue(gradeSnapshot.current().get().studentsBelow(81).contains(student.getId()));
+  }
+
   @Test
   public void testUpdateGradeWithInvalidId() throws Exception {
     // Prepare request parameters for updating the grade
@@ -527,6 +891,80 @@ public class GradeControllerTest {
     assertEquals(String.valueOf(student.getId()), responseContent);
   }
 
+  @Test
+  public void testGetStudentPropertyByGradeId_Invalid() throws Exception {
+    Grade grade = gradeRepository.save(new Grade(85, student, module));
+
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders.get("/grades/" + grade.getId() + "/student/first,email"))
+        .andReturn();
+    assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+  }
+
+  @Test
+  public void testGetGradeFields() throws Exception {
+    Grade grade = gradeRepository.save(new Grade(85, student, module));
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/grades/" + grade.getId())
+        .param("fields", "score,student.first,student.email,module.code")).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+    Map<String, Object> response = objectMapper.readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    assertEquals(Map.of("score", 85, "student",
+        Map.of("first", "John", "email", "john.doe@example.com"), "module",
+        Map.of("code", "COMP00010")), response);
+  }
+
+  @Test
+  public void testGetGradeFields_Invalid() throws Exception {
+    Grade grade = gradeRepository.save(new Grade(85, student, module));
+
+    MvcResult unknownField = mockMvc.perform(MockMvcRequestBuilders
+        .get("/grades/" + grade.getId()).param("fields", "student.password")).andReturn();
+    assertEquals(HttpStatus.BAD_REQUEST.value(), unknownField.getResponse().getStatus());
+
+    MvcResult unknownGrade = mockMvc.perform(MockMvcRequestBuilders
+        .get("/grades/" + (grade.getId() + 1)).param("fields", "score")).andReturn();
+    assertEquals(HttpStatus.NOT_FOUND.value(), unknownGrade.getResponse().getStatus());
+  }
+
+  @Test
+  public void testGetGradesFields() throws Exception {
+    Module other = moduleRepository.save(new Module("COMP0004", "Java", false));
+    Grade first = gradeRepository.save(new Grade(85, student, module));
+    Grade second = gradeRepository.save(new Grade(40, student, other));
+    long missing = second.getId() + 1;
+
+    // in the order asked for, with the unknown id reported
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/grades")
+        .param("ids", second.getId() + "," + missing + "," + first.getId())
+        .param("fields", "id,module.name")).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+    Map<String, Object> response = objectMapper.readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    Map<String, Object> embedded = (Map<String, Object>) response.get("_embedded");
+    List<Map<String, Object>> grades = (List<Map<String, Object>>) embedded.get("grades");
+    assertEquals(2, grades.size());
+    assertEquals(second.getId(), ((Number) grades.get(0).get("id")).longValue());
+    assertEquals(Map.of("name", "Java"), grades.get(0).get("module"));
+    assertEquals(first.getId(), ((Number) grades.get(1).get("id")).longValue());
+    assertEquals(Map.of("name", "Mathematics"), grades.get(1).get("module"));
+    assertEquals(List.of(missing),
+        ((List<Number>) response.get("missing")).stream().map(Number::longValue).toList());
+  }
+
+  @Test
+  public void testGetGradesFields_TooManyIds() throws Exception {
+    String ids = String.join(",", Collections.nCopies(501, "1"));
+
+    MvcResult result = mockMvc.perform(
+        MockMvcRequestBuilders.get("/grades").param("ids", ids).param("fields", "score"))
+        .andReturn();
+    assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+  }
+
   @Test
   public void testGetModuleByGradeId() throws Exception {
     // Create and save a grade
@@ -638,4 +1076,23 @@ public class GradeControllerTest {
    * moduleMap.get("code")); assertEquals(module.getName(), moduleMap.get("name"));
    * assertEquals(module.getMnc(), moduleMap.get("mnc")); }
    */
+
+  @Test
+  public void testGetGradesBatch() throws Exception {
+    Grade grade = gradeRepository.save(new Grade(85, student, module));
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/grades/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(objectMapper.writeValueAsString(List.of(grade.getId() + 1, grade.getId()))))
+        .andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+    Map<String, Object> response = objectMapper.readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    List<Map<String, Object>> grades = (List<Map<String, Object>>) ((Map<String, Object>) response
+        .get("_embedded")).get("grades");
+    assertEquals(1, grades.size());
+    assertEquals(85, grades.get(0).get("score"));
+    assertEquals(List.of((int) (grade.getId() + 1)), response.get("missing"));
+  }
 }
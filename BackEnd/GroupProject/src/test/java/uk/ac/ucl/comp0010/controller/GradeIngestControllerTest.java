@@ -0,0 +1,157 @@
+package uk.ac.ucl.comp0010.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentGradeStatsRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.service.GradeIngestQueue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+public class GradeIngestControllerTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private GradeIngestQueue gradeIngestQueue;
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  @Autowired
+  private StudentGradeStatsRepository gradeStatsRepository;
+
+  private Student student;
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+
+    moduleRepository.save(new Module("COMP0010", "Software Engineering", true));
+    student = studentRepository.save(new Student("John", "Doe", "johndoe", "john@example.com"));
+  }
+
+  @Test
+  public void testIngestGradeIsCommitted() throws Exception {
+    MvcResult result = ingest(String.valueOf(student.getId()), "COMP0010", "75");
+
+    assertEquals(HttpStatus.ACCEPTED.value(), result.getResponse().getStatus());
+    Map<String, Object> status = read(result);
+    assertThat(result.getResponse().getHeader("Location"))
+        .endsWith("/grades/ingest/" + status.get("token"));
+
+    gradeIngestQueue.flush();
+
+    assertEquals("COMMITTED", status((String) status.get("token")).get("state"));
+    Grade grade = gradeRepository.findByStudentIdAndModuleCode(student.getId(), "COMP0010").get();
+    assertEquals(75, grade.getScore());
+    assertEquals(75, gradeStatsRepository.findById(student.getId()).get().getSum());
+  }
+
+  @Test
+  public void testIngestGradeKeepsLastScore() throws Exception {
+    String first = (String) read(ingest(String.valueOf(student.getId()), "COMP0010", "40"))
+        .get("token");
+    String second = (String) read(ingest(String.valueOf(student.getId()), "COMP0010", "60"))
+        .get("token");
+
+    gradeIngestQueue.flush();
+
+    assertEquals("COMMITTED", status(first).get("state"));
+    assertEquals("COMMITTED", status(second).get("state"));
+    assertEquals(1, gradeRepository.count());
+    assertEquals(60,
+        gradeRepository.findByStudentIdAndModuleCode(student.getId(), "COMP0010").get().getScore());
+  }
+
+  @Test
+  public void testIngestGradeWithInvalidParameters() throws Exception {
+    assertEquals("Missing score",
+        read(ingest(String.valueOf(student.getId()), "COMP0010", null)).get("error"));
+    assertEquals("Invalid student_id or score",
+        read(ingest(String.valueOf(student.getId()), "COMP0010", "high")).get("error"));
+    assertEquals("Unknown student 999", read(ingest("999", "COMP0010", "75")).get("error"));
+    MvcResult result = ingest(String.valueOf(student.getId()), "COMP9999", "75");
+    assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+    assertEquals("Unknown module COMP9999", read(result).get("error"));
+  }
+
+  @Test
+  public void testGetIngestStatusNotFound() throws Exception {
+    MvcResult result =
+        mockMvc.perform(MockMvcRequestBuilders.get("/grades/ingest/{token}", "none")).andReturn();
+
+    assertEquals(HttpStatus.NOT_FOUND.value(), result.getResponse().getStatus());
+  }
+
+  @Test
+  public void testIngestMetrics() throws Exception {
+    ingest(String.valueOf(student.getId()), "COMP0010", "75");
+    gradeIngestQueue.flush();
+
+    for (String metric : new String[] {"grades.ingest.queue.depth", "grades.ingest.flush",
+        "grades.ingest.batch.size"}) {
+      MvcResult result =
+          mockMvc.perform(MockMvcRequestBuilders.get("/actuator/metrics/" + metric)).andReturn();
+      assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    }
+  }
+
+  private MvcResult ingest(String studentId, String moduleCode, String score) throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("student_id", studentId);
+    params.put("module_code", moduleCode);
+    params.put("score", score);
+    return mockMvc.perform(MockMvcRequestBuilders.post("/grades/ingest")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)))
+        .andReturn();
+  }
+
+  private Map<String, Object> status(String token) throws Exception {
+    MvcResult result =
+        mockMvc.perform(MockMvcRequestBuilders.get("/grades/ingest/{token}", token)).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    return read(result);
+  }
+
+  private Map<String, Object> read(MvcResult result) throws Exception {
+    return objectMapper.readValue(result.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Object>>() {});
+  }
+}
@@ -0,0 +1,223 @@
+package uk.ac.ucl.comp0010.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+import uk.ac.ucl.comp0010.service.GradeFeed;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+public class GradeStreamControllerTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  private Student student;
+
+  /**
+   * An event read back from the stream.
+   */
+  private record Event(String name, String id, Map<String, Object> data) {
+  }
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+
+    Module module = moduleRepository.save(new Module("COMP0010", "Software Engineering", true));
+    student = new Student("John", "Doe", "johndoe", "john@example.com");
+    student.registerModule(module);
+    student = studentRepository.save(student);
+  }
+
+  private MvcResult subscribe(String lastEventId) throws Exception {
+    MockHttpServletRequestBuilder request =
+        MockMvcRequestBuilders.get("/grades/stream").accept(MediaType.TEXT_EVENT_STREAM);
+    if (lastEventId != null) {
+      request.header("Last-Event-ID", lastEventId);
+    }
+    MvcResult result = mockMvc.perform(request).andReturn();
+    assertTrue(result.getRequest().isAsyncStarted());
+    return result;
+  }
+
+  // waits for the stream to hold a number of events and returns them
+  private List<Event> await(MvcResult stream, int count) throws Exception {
+    List<Event> events = List.of();
+    for (int i = 0; i < 250 && events.size() < count; i++) {
+      Thread.sleep(20);
+      events = events(stream.getResponse().getContentAsString());
+    }
+    assertEquals(count, events.size());
+    return events;
+  }
+
+  private List<Event> events(String content) throws Exception {
+    List<Event> events = new ArrayList<>();
+    for (String block : content.split("\n\n")) {
+      String name = null;
+      String id = null;
+      Map<String, Object> data = null;
+      for (String line : block.split("\n")) {
+        if (line.startsWith("event:")) {
+          name = line.substring("event:".length());
+        } else if (line.startsWith("id:")) {
+          id = line.substring("id:".length());
+        } else if (line.startsWith("data:")) {
+          data = objectMapper.readValue(line.substring("data:".length()),
+              new TypeReference<Map<String, Object>>() {});
+        }
+      }
+      if (name != null) {
+        events.add(new Event(name, id, data));
+      }
+    }
+    return events;
+  }
+
+  private void addGrade(String score) throws Exception {
+    Map<String, String> params = new HashMap<>();
+    params.put("student_id", String.valueOf(student.getId()));
+    params.put("module_code", "COMP0010");
+    params.put("score", score);
+    mockMvc.perform(MockMvcRequestBuilders.post("/grades/addGrade")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)));
+  }
+
+  @Test
+  public void testCommittedChangesAreStreamed() throws Exception {
+    MvcResult stream = subscribe(null);
+    addGrade("60");
+    addGrade("65");
+    Long gradeId =
+        gradeRepository.findByStudentIdAndModuleCode(student.getId(), "COMP0010").get().getId();
+    mockMvc.perform(MockMvcRequestBuilders.patch("/grades/" + gradeId)
+        .contentType(MediaType.APPLICATION_JSON).content("70"));
+    mockMvc.perform(MockMvcRequestBuilders.delete("/grades/" + gradeId));
+
+    List<Event> events = await(stream, 4);
+    assertThat(stream.getResponse().getContentType()).startsWith("text/event-stream");
+    assertEquals(List.of("grade-created", "grade-updated", "grade-updated", "grade-deleted"),
+        events.stream().map(Event::name).toList());
+    Map<String, Object> created = events.get(0).data();
+    assertEquals(gradeId.intValue(), created.get("id"));
+    assertEquals(student.getId().intValue(), created.get("student_id"));
+    assertEquals("COMP0010", created.get("module_code"));
+    assertEquals(60, created.get("score"));
+    assertEquals(70, events.get(2).data().get("score"));
+    assertEquals(null, events.get(3).data().get("score"));
+  }
+
+  @Test
+  public void testBulkUploadsAndStudentDeletionsAreStreamed() throws Exception {
+    MvcResult stream = subscribe(null);
+    for (String score : new String[] {"70", "75"}) {
+      mockMvc.perform(MockMvcRequestBuilders.post("/grades/bulk").contentType("text/csv")
+          .content("student_id,module_code,score\n" + student.getId() + ",COMP0010," + score));
+    }
+    Long gradeId =
+        gradeRepository.findByStudentIdAndModuleCode(student.getId(), "COMP0010").get().getId();
+    mockMvc.perform(MockMvcRequestBuilders.delete("/students/delete/" + student.getId()));
+
+    List<Event> events = await(stream, 3);
+    assertEquals(List.of("grade-created", "grade-updated", "grade-deleted"),
+        events.stream().map(Event::name).toList());
+    for (Event event : events) {
+      assertEquals(gradeId.intValue(), event.data().get("id"));
+      assertEquals("COMP0010", event.data().get("module_code"));
+    }
+    assertEquals(75, events.get(1).data().get("score"));
+  }
+
+  @Test
+  public void testIngestedGradesAndGradesDeletedWithTheirStudentAreStreamed() throws Exception {
+    moduleRepository.save(new Module("COMP0020", "Algorithms", false));
+    MvcResult stream = subscribe(null);
+    for (String module : new String[] {"COMP0010", "COMP0020"}) {
+      Map<String, String> params = new HashMap<>();
+      params.put("student_id", String.valueOf(student.getId()));
+      params.put("module_code", module);
+      params.put("score", "60");
+      mockMvc.perform(MockMvcRequestBuilders.post("/grades/ingest")
+          .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)));
+    }
+    List<Event> created = await(stream, 2);
+    assertEquals(List.of("grade-created", "grade-created"),
+        created.stream().map(Event::name).toList());
+
+    // deleting one grade deletes its student, and the student's other grade with it
+    Object gradeId = created.get(0).data().get("id");
+    mockMvc.perform(MockMvcRequestBuilders.delete("/grades/" + gradeId));
+
+    List<Event> deleted = await(stream, 4).subList(2, 4);
+    assertEquals(List.of("grade-deleted", "grade-deleted"),
+        deleted.stream().map(Event::name).toList());
+    assertThat(deleted.stream().map(event -> event.data().get("id")).toList())
+        .containsExactlyInAnyOrderElementsOf(
+            created.stream().map(event -> event.data().get("id")).toList());
+  }
+
+  @Test
+  public void testResumingSubscriberIsSentWhatItMissed() throws Exception {
+    MvcResult stream = subscribe(null);
+    addGrade("50");
+    String lastEventId = await(stream, 1).get(0).id();
+
+    addGrade("55");
+    addGrade("58");
+    await(stream, 3);
+
+    List<Event> missed = await(subscribe(lastEventId), 2);
+    assertEquals(55, missed.get(0).data().get("score"));
+    assertEquals(58, missed.get(1).data().get("score"));
+  }
+
+  @Test
+  public void testSubscriberResumingFromUnknownEventIsReset() throws Exception {
+    MvcResult stream = subscribe("0123abcd-42");
+    assertEquals(GradeFeed.RESET, await(stream, 1).get(0).name());
+
+    addGrade("90");
+    assertEquals("grade-created", await(stream, 2).get(1).name());
+  }
+}
@@ -0,0 +1,180 @@
+package uk.ac.ucl.comp0010.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
+@AutoConfigureMockMvc
+@AutoConfigureObservability
+public class MetricsTest {
+
+  @Autowired
+  private MockMvc mockMvc;
+
+  @Autowired
+  private ObjectMapper objectMapper;
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  private Student student;
+
+  @TestConfiguration
+  static class StreamingConfig {
+    @Bean
+    StreamedStudentsController streamedStudentsController(StudentRepository studentRepository) {
+      return new StreamedStudentsController(studentRepository);
+    }
+  }
+
+  @RestController
+  static class StreamedStudentsController {
+    private final StudentRepository studentRepository;
+
+    StreamedStudentsController(StudentRepository studentRepository) {
+      this.studentRepository = studentRepository;
+    }
+
+    @GetMapping("/test/streamed-students")
+    StreamingResponseBody streamedStudents() {
+      studentRepository.count();
+      return out -> out.write(
+          String.valueOf(studentRepository.count()).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+
+    Module module = moduleRepository.save(new Module("COMP0010", "Software Engineering", true));
+    student = new Student("John", "Doe", "johndoe", "john@example.com");
+    student.registerModule(module);
+    student = studentRepository.save(student);
+  }
+
+  // the value of one statistic of a metric, or 0 if nothing was recorded with these tags yet
+  private double measurement(String metric, String statistic, String... tags) throws Exception {
+    MockHttpServletRequestBuilder request =
+        MockMvcRequestBuilders.get("/actuator/metrics/" + metric);
+    for (String tag : tags) {
+      request.param("tag", tag);
+    }
+    MvcResult result = mockMvc.perform(request).andReturn();
+    if (result.getResponse().getStatus() == HttpStatus.NOT_FOUND.value()) {
+      return 0;
+    }
+    Map<String, Object> body = objectMapper.readValue(result.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Object>>() {});
+    for (Object measurement : (List<?>) body.get("measurements")) {
+      Map<?, ?> values = (Map<?, ?>) measurement;
+      if (statistic.equals(values.get("statistic"))) {
+        return ((Number) values.get("value")).doubleValue();
+      }
+    }
+    return 0;
+  }
+
+  @Test
+  public void testHibernateWorkIsRecordedPerEndpointAndOutcome() throws Exception {
+    String[] tags = {"uri:/students/{student_id}", "method:GET", "outcome:SUCCESS"};
+    double requests = measurement("http.server.requests.statements", "COUNT", tags);
+    double statements = measurement("http.server.requests.statements", "TOTAL", tags);
+    double entities = measurement("http.server.requests.entities.loaded", "TOTAL", tags);
+
+    MvcResult result = mockMvc.perform(
+        MockMvcRequestBuilders.get("/students/" + student.getId())).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+    assertEquals(requests + 1, measurement("http.server.requests.statements", "COUNT", tags));
+    // the student, its registration and its module are fetched together
+    assertEquals(statements + 1, measurement("http.server.requests.statements", "TOTAL", tags));
+    assertEquals(entities + 3, measurement("http.server.requests.entities.loaded", "TOTAL", tags));
+    assertEquals(0, measurement("http.server.requests.collections.fetched", "TOTAL", tags));
+
+    mockMvc.perform(MockMvcRequestBuilders.get("/students/999999"));
+    assertThat(measurement("http.server.requests.statements", "COUNT",
+        "uri:/students/{student_id}", "outcome:CLIENT_ERROR")).isGreaterThanOrEqualTo(1);
+  }
+
+  @Test
+  public void testStreamedResponseWorkIsRecordedOnce() throws Exception {
+    String[] tags = {"uri:/test/streamed-students", "method:GET", "outcome:SUCCESS"};
+    double requests = measurement("http.server.requests.statements", "COUNT", tags);
+    double statements = measurement("http.server.requests.statements", "TOTAL", tags);
+
+    MvcResult started = mockMvc.perform(
+        MockMvcRequestBuilders.get("/test/streamed-students")).andReturn();
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.asyncDispatch(started)).andReturn();
+    assertEquals("1", result.getResponse().getContentAsString());
+
+    assertEquals(requests + 1, measurement("http.server.requests.statements", "COUNT", tags));
+    // one count before the response is streamed and one while it is
+    assertEquals(statements + 2, measurement("http.server.requests.statements", "TOTAL", tags));
+  }
+
+  @Test
+  public void testJdbcRepositoryCallsAreTimed() throws Exception {
+    String[] tags = {"repository:GradeBatchRepository", "method:upsertAll", "state:SUCCESS"};
+    double calls = measurement("spring.data.repository.invocations", "COUNT", tags);
+
+    mockMvc.perform(MockMvcRequestBuilders.post("/grades/bulk").contentType("text/csv")
+        .content("student_id,module_code,score\n" + student.getId() + ",COMP0010,70\n"));
+
+    assertEquals(calls + 1, measurement("spring.data.repository.invocations", "COUNT", tags));
+    assertThat(measurement("spring.data.repository.invocations", "COUNT",
+        "repository:StudentRepository", "state:SUCCESS")).isGreaterThanOrEqualTo(1);
+  }
+
+  @Test
+  public void testPrometheusScrape() throws Exception {
+    mockMvc.perform(MockMvcRequestBuilders.get("/students/" + student.getId()));
+
+    MvcResult result =
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/prometheus")).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    String scrape = result.getResponse().getContentAsString();
+    assertThat(scrape).contains("http_server_requests_seconds_bucket",
+        "http_server_requests_statements_bucket", "http_server_requests_entities_loaded_count",
+        "spring_data_repository_invocations_seconds_bucket", "hikaricp_connections_active");
+  }
+}
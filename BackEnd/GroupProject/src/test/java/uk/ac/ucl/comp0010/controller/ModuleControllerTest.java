@@ -2,7 +2,9 @@ package uk.ac.ucl.comp0010.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,8 +18,11 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.ac.ucl.comp0010.model.Grade;
 import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
 import uk.ac.ucl.comp0010.repository.GradeRepository;
 import uk.ac.ucl.comp0010.repository.ModuleRepository;
 import uk.ac.ucl.comp0010.repository.RegistrationRepository;
@@ -131,4 +136,239 @@ public class ModuleControllerTest {
     assertEquals("Advanced Mathematics", module.getName());
     assertEquals(false, module.getMnc());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testGetModuleStats() throws Exception {
+    Module module = moduleRepository.findByCode("1").get();
+    for (int score : new int[] {30, 50, 70, 90, 100}) {
+      Student student = studentRepository.save(
+          new Student("First" + score, "Last", "user" + score, "user" + score + "@example.com"));
+      gradeRepository.save(new Grade(score, student, module));
+    }
+
+    MvcResult result =
+        mockMvc.perform(MockMvcRequestBuilders.get("/modules/{code}/stats", "1")).andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    Map<String, Object> stats = new ObjectMapper().readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    assertEquals("1", stats.get("code"));
+    assertEquals(5, stats.get("count"));
+    assertEquals(68.0, stats.get("mean"));
+    assertEquals(Math.sqrt(656), (Double) stats.get("stddev"), 1e-9);
+    assertEquals(70.0, stats.get("median"));
+    assertEquals(38.0, (Double) stats.get("p10"), 1e-9);
+    assertEquals(96.0, (Double) stats.get("p90"), 1e-9);
+    assertEquals(30, stats.get("min"));
+    assertEquals(100, stats.get("max"));
+    assertEquals(0.8, stats.get("passRate"));
+    assertEquals(Arrays.asList(0, 0, 0, 1, 0, 1, 0, 1, 0, 2), stats.get("histogram"));
+  }
+
+  @Test
+  public void testGetModuleStatsWithoutGrades() throws Exception {
+    MvcResult result =
+        mockMvc.perform(MockMvcRequestBuilders.get("/modules/{code}/stats", "1")).andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    Map<String, Object> stats = new ObjectMapper().readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    assertEquals(0, stats.get("count"));
+    assertEquals(null, stats.get("mean"));
+    assertEquals(null, stats.get("passRate"));
+  }
+
+  @Test
+  public void testGetModuleStatsNotFound() throws Exception {
+    MvcResult result =
+        mockMvc.perform(MockMvcRequestBuilders.get("/modules/{code}/stats", "404")).andReturn();
+
+    assertEquals(HttpStatus.NOT_FOUND.value(), result.getResponse().getStatus());
+  }
+
+  @Test
+  public void testGetModulesStats() throws Exception {
+    Module module = moduleRepository.findByCode("1").get();
+    Module other = moduleRepository.save(new Module("2", "Physics", false));
+    Student student =
+        studentRepository.save(new Student("John", "Doe", "johndoe", "john@example.com"));
+    gradeRepository.save(new Grade(65, student, module));
+    gradeRepository.save(new Grade(35, student, other));
+    moduleRepository.save(new Module("3", "Chemistry", false));
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/modules/stats")
+        .param("codes", "2", "1", "404")).andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    List<Map<String, Object>> stats = new ObjectMapper().readValue(
+        result.getResponse().getContentAsString(),
+        new TypeReference<List<Map<String, Object>>>() {});
+    // unknown codes are left out and the rest come back in code order
+    assertEquals(2, stats.size());
+    assertEquals("1", stats.get(0).get("code"));
+    assertEquals(1.0, stats.get(0).get("passRate"));
+    assertEquals("2", stats.get(1).get("code"));
+    assertEquals(0.0, stats.get(1).get("passRate"));
+
+    // without codes every module is included
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/modules/stats")).andReturn();
+    stats = new ObjectMapper().readValue(result.getResponse().getContentAsString(),
+        new TypeReference<List<Map<String, Object>>>() {});
+    assertEquals(3, stats.size());
+    assertEquals(0, stats.get(2).get("count"));
+  }
+
+  @Test
+  public void testAddModuleRefreshesCachedCatalogue() throws Exception {
+    // Load the catalogue and a missing code into the cache
+    mockMvc.perform(MockMvcRequestBuilders.get("/modules/all"));
+    assertThat(moduleRepository.findByCode("COMP0100")).isEmpty();
+
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("code", "COMP0100");
+    params.put("name", "Software Engineering");
+    params.put("mnc", "false");
+    mockMvc.perform(MockMvcRequestBuilders.post("/modules/addModule")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(new ObjectMapper().writeValueAsString(params)));
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/modules/all")).andReturn();
+    Module[] modules =
+        new ObjectMapper().readValue(result.getResponse().getContentAsString(), Module[].class);
+    assertEquals(2, modules.length);
+    assertThat(moduleRepository.findByCode("COMP0100")).isPresent();
+  }
+
+  @Test
+  public void testCachedModulesAreNotShared() throws Exception {
+    Module cached = moduleRepository.findByCode("1").orElseThrow();
+    cached.setName("Changed by one caller");
+
+    assertEquals("Mathematics", moduleRepository.findByCode("1").orElseThrow().getName());
+    assertThat(moduleRepository.findByCode("1").orElseThrow())
+        .isNotSameAs(moduleRepository.findByCode("1").orElseThrow());
+  }
+
+  @Test
+  public void testCatalogueCacheMetrics() throws Exception {
+    mockMvc.perform(MockMvcRequestBuilders.get("/modules/all"));
+    mockMvc.perform(MockMvcRequestBuilders.get("/modules/all"));
+
+    for (String metric : new String[] {"cache.gets", "cache.evictions"}) {
+      MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/actuator/metrics/" + metric)
+          .param("tag", "cache:modules")).andReturn();
+      assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    }
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/actuator/metrics/cache.gets")
+        .param("tag", "cache:modules").param("tag", "result:hit")).andReturn();
+    Map<String, Object> metric = new ObjectMapper().readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    List<?> measurements = (List<?>) metric.get("measurements");
+    assertThat(((Number) ((Map<?, ?>) measurements.get(0)).get("value")).doubleValue())
+        .isGreaterThanOrEqualTo(1);
+  }
+
+  @Test
+  public void testGetAllModulesAnswersUnchangedPollWithNotModified() throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/modules/all")).andReturn();
+    String etag = result.getResponse().getHeader("ETag");
+    assertThat(etag).isNotNull();
+    assertEquals("no-cache", result.getResponse().getHeader("Cache-Control"));
+
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/modules/all")
+        .header("If-None-Match", etag)).andReturn();
+    assertEquals(HttpStatus.NOT_MODIFIED.value(), result.getResponse().getStatus());
+    assertEquals("", result.getResponse().getContentAsString());
+
+    Map<String, String> params = new HashMap<String, String>();
+    params.put("code", "COMP0100");
+    params.put("name", "Software Engineering");
+    params.put("mnc", "false");
+    mockMvc.perform(MockMvcRequestBuilders.post("/modules/addModule")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(new ObjectMapper().writeValueAsString(params)));
+
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/modules/all")
+        .header("If-None-Match", etag)).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    assertThat(result.getResponse().getHeader("ETag")).isNotEqualTo(etag);
+  }
+
+  @Test
+  public void testRepositoryEndpointWritesChangeCatalogueEtag() throws Exception {
+    Module module = moduleRepository.findByCode("1").get();
+    String etag = mockMvc.perform(MockMvcRequestBuilders.get("/modules/all")).andReturn()
+        .getResponse().getHeader("ETag");
+
+    mockMvc.perform(MockMvcRequestBuilders.patch("/modules/{id}", module.getId())
+        .contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"Pure Mathematics\"}"));
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/modules/all")
+        .header("If-None-Match", etag)).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    Module[] modules =
+        new ObjectMapper().readValue(result.getResponse().getContentAsString(), Module[].class);
+    assertEquals("Pure Mathematics", modules[0].getName());
+    etag = result.getResponse().getHeader("ETag");
+
+    mockMvc.perform(MockMvcRequestBuilders.delete("/modules/{id}", module.getId()));
+
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/modules/all")
+        .header("If-None-Match", etag)).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    assertEquals("[]", result.getResponse().getContentAsString());
+  }
+
+  private Map<String, Object> moduleChanges(Object since) throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/modules/changes")
+        .param("since", String.valueOf(since))).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    return new ObjectMapper().readValue(result.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Object>>() {});
+  }
+
+  @Test
+  public void testGetModuleChangesSinceVersion() throws Exception {
+    Module module = moduleRepository.findByCode("1").get();
+    Map<String, Object> changes = moduleChanges(0);
+    assertEquals(true, changes.get("reset"));
+    assertEquals(1, ((List<?>) changes.get("changed")).size());
+    Object version = changes.get("version");
+
+    // writes through the repository endpoints are logged too
+    mockMvc.perform(MockMvcRequestBuilders.patch("/modules/{id}", module.getId())
+        .contentType(MediaType.APPLICATION_JSON).content("{\"name\": \"Pure Mathematics\"}"));
+
+    changes = moduleChanges(version);
+    assertEquals(false, changes.get("reset"));
+    List<Map<String, Object>> changed = (List<Map<String, Object>>) changes.get("changed");
+    assertEquals(1, changed.size());
+    assertEquals("Pure Mathematics", changed.get(0).get("name"));
+    version = changes.get("version");
+
+    mockMvc.perform(MockMvcRequestBuilders.delete("/modules/{id}", module.getId()));
+
+    changes = moduleChanges(version);
+    assertEquals(List.of(), changes.get("changed"));
+    assertEquals(List.of(module.getId().intValue()), changes.get("deleted"));
+  }
+
+  @Test
+  public void testGetModulesBatch() throws Exception {
+    moduleRepository.save(new Module("COMP0004", "Java", false));
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/modules/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .content(new ObjectMapper().writeValueAsString(List.of("COMP0004", "NONE", "1"))))
+        .andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+    Map<String, Object> response = new ObjectMapper().readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    List<Map<String, Object>> modules = (List<Map<String, Object>>) ((Map<String, Object>) response
+        .get("_embedded")).get("modules");
+    assertEquals(List.of("COMP0004", "1"),
+        modules.stream().map(module -> module.get("code")).toList());
+    assertEquals(List.of("NONE"), response.get("missing"));
+  }
+}
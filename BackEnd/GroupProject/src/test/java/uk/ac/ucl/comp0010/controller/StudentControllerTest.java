@@ -2,20 +2,28 @@ package uk.ac.ucl.comp0010.controller;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import uk.ac.ucl.comp0010.model.Module;
 import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.model.StudentGradeStats;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
 import uk.ac.ucl.comp0010.repository.StudentRepository;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.MOCK)
@@ -26,6 +34,10 @@ public class StudentControllerTest {
   private MockMvc mockMvc;
   @Autowired
   private StudentRepository studentRepository;
+  @Autowired
+  private ModuleRepository moduleRepository;
+  @Autowired
+  private RegistrationRepository registrationRepository;
 
   @Autowired
   private ObjectMapper objectMapper;
@@ -80,6 +92,150 @@ public class StudentControllerTest {
     assertEquals(1, students.length);
   }
 
+  @Test
+  public void testGetAllStudentsPagedByName() throws Exception {
+    studentRepository.save(new Student("Anna", "Adams", "annaadams", "anna@example.com"));
+    studentRepository.save(new Student("Zoe", "Doe", "zoedoe", "zoe@example.com"));
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/students/all")
+        .param("limit", "2").param("sort", "name")).andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    Student[] students = objectMapper.readValue(result.getResponse().getContentAsString(),
+        Student[].class);
+    assertEquals(2, students.length);
+    assertEquals("Adams", students[0].getLastName());
+    assertEquals("John", students[1].getFirstName());
+    String link = result.getResponse().getHeader(HttpHeaders.LINK);
+    assertThat(link).contains("rel=\"next\"");
+    String after = link.replaceAll(".*after=([^&>]*).*", "$1");
+
+    // the cursor holds the name, so the page resumes even with the student it was taken from gone
+    studentRepository.deleteById(students[1].getId());
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/students/all").param("limit", "2")
+        .param("sort", "name").param("after", after)).andReturn();
+
+    students = objectMapper.readValue(result.getResponse().getContentAsString(), Student[].class);
+    assertEquals(1, students.length);
+    assertEquals("Zoe", students[0].getFirstName());
+    assertThat(result.getResponse().getHeader(HttpHeaders.LINK)).isNull();
+  }
+
+  @Test
+  public void testGetAllStudentsPagedWithInvalidSort() throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/students/all")
+        .param("limit", "2").param("sort", "score")).andReturn();
+
+    assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+  }
+
+  @Test
+  public void testGetAllStudentsAnswersUnchangedPollWithNotModified() throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/students/all")
+        .param("limit", "1")).andReturn();
+    String etag = result.getResponse().getHeader(HttpHeaders.ETAG);
+    assertThat(etag).isNotNull();
+
+    // Every page of an unchanged table is answered without a body
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/students/all").param("limit", "1")
+        .header(HttpHeaders.IF_NONE_MATCH, etag)).andReturn();
+    assertEquals(HttpStatus.NOT_MODIFIED.value(), result.getResponse().getStatus());
+    assertEquals("", result.getResponse().getContentAsString());
+
+    mockMvc.perform(MockMvcRequestBuilders.delete("/students/delete/{studentId}", student.getId()));
+
+    result = mockMvc.perform(MockMvcRequestBuilders.get("/students/all").param("limit", "1")
+        .header(HttpHeaders.IF_NONE_MATCH, etag)).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    assertThat(result.getResponse().getHeader(HttpHeaders.ETAG)).isNotEqualTo(etag);
+    assertEquals("[]", result.getResponse().getContentAsString());
+  }
+
+  private Map<String, Object> studentChanges(Object since) throws Exception {
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.get("/students/changes")
+        .param("since", String.valueOf(since))).andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    return objectMapper.readValue(result.getResponse().getContentAsString(),
+        new TypeReference<Map<String, Object>>() {});
+  }
+
+  @Test
+  public void testGetStudentChangesSinceVersion() throws Exception {
+    Map<String, Object> changes = studentChanges(0);
+    assertEquals(true, changes.get("reset"));
+    assertEquals(1, ((List<?>) changes.get("changed")).size());
+    long version = ((Number) changes.get("version")).longValue();
+
+    // a version ahead of this database's is not one of its versions either
+    assertEquals(true, studentChanges(version + 1).get("reset"));
+
+    Map<String, String> params = new HashMap<>();
+    params.put("firstName", "John Updated");
+    params.put("lastName", "Doe");
+    params.put("username", "johndoe");
+    params.put("email", "john.doe@example.com");
+    mockMvc.perform(MockMvcRequestBuilders.put("/students/update/{student_id}", student.getId())
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(params)));
+    Student added = studentRepository.save(new Student("Jane", "Smith", "janesmith", "j@x.com"));
+
+    changes = studentChanges(version);
+    assertEquals(false, changes.get("reset"));
+    List<Map<String, Object>> changed = (List<Map<String, Object>>) changes.get("changed");
+    assertEquals(2, changed.size());
+    assertEquals("John Updated", changed.get(0).get("firstName"));
+    assertEquals(added.getId().intValue(), changed.get(1).get("id"));
+    version = ((Number) changes.get("version")).longValue();
+
+    mockMvc.perform(MockMvcRequestBuilders.delete("/students/delete/{studentId}", student.getId()));
+
+    changes = studentChanges(version);
+    assertEquals(List.of(), changes.get("changed"));
+    assertEquals(List.of(student.getId().intValue()), changes.get("deleted"));
+  }
+
+  @Test
+  public void testRegistrationShowsInStudentChanges() throws Exception {
+    Module module = moduleRepository.save(new Module("COMP0310", "Registered Module", false));
+    long version = ((Number) studentChanges(0).get("version")).longValue();
+
+    // registers the module through the repository endpoints, linking the student and module
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/registrations")
+        .contentType(MediaType.APPLICATION_JSON).content("{}")).andReturn();
+    assertEquals(HttpStatus.CREATED.value(), result.getResponse().getStatus());
+    String registration = result.getResponse().getHeader(HttpHeaders.LOCATION);
+    mockMvc.perform(MockMvcRequestBuilders.put(registration + "/module")
+        .contentType("text/uri-list").content("http://localhost/modules/" + module.getId()));
+    result = mockMvc.perform(MockMvcRequestBuilders.put(registration + "/student")
+        .contentType("text/uri-list").content("http://localhost/students/" + student.getId()))
+        .andReturn();
+    assertEquals(HttpStatus.NO_CONTENT.value(), result.getResponse().getStatus());
+
+    Map<String, Object> changes = studentChanges(version);
+    List<Map<String, Object>> changed = (List<Map<String, Object>>) changes.get("changed");
+    assertEquals(1, changed.size());
+    assertEquals(student.getId().intValue(), changed.get(0).get("id"));
+
+    registrationRepository.deleteAll();
+    moduleRepository.delete(module);
+  }
+
+  @Test
+  public void testExportStudents() throws Exception {
+    studentRepository.save(new Student("Anna", "Adams", "annaadams", "anna@example.com"));
+
+    MvcResult result =
+        mockMvc.perform(MockMvcRequestBuilders.get("/students/export")).andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    assertThat(result.getResponse().getContentType()).startsWith("application/x-ndjson");
+
+    // One JSON object per line, in id order
+    String[] lines = result.getResponse().getContentAsString().split("\n");
+    assertEquals(2, lines.length);
+    assertEquals("John", objectMapper.readValue(lines[0], Student.class).getFirstName());
+    assertEquals("Anna", objectMapper.readValue(lines[1], Student.class).getFirstName());
+  }
+
   @Test
   public void testGetStudentById() throws Exception {
     MvcResult result =
@@ -93,6 +249,27 @@ public class StudentControllerTest {
     assertEquals(student.getId(), foundStudent.getId());
   }
 
+  @Test
+  public void testGetStudentStatsWithoutGrades() throws Exception {
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders.get("/students/{student_id}/stats", student.getId()))
+        .andReturn();
+
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+    StudentGradeStats stats =
+        objectMapper.readValue(result.getResponse().getContentAsString(), StudentGradeStats.class);
+    assertEquals(0, stats.getCount());
+    assertEquals(null, stats.getAverage());
+  }
+
+  @Test
+  public void testGetStudentStatsNotFound() throws Exception {
+    MvcResult result = mockMvc
+        .perform(MockMvcRequestBuilders.get("/students/{student_id}/stats", 999L)).andReturn();
+
+    assertEquals(HttpStatus.NOT_FOUND.value(), result.getResponse().getStatus());
+  }
+
   @Test
   public void testUpdateStudent() throws Exception {
     Map<String, String> params = new HashMap<String, String>();
@@ -159,4 +336,39 @@ public class StudentControllerTest {
     assertEquals(HttpStatus.NOT_FOUND.value(), result.getResponse().getStatus());
     assertEquals("Student not found", result.getResponse().getContentAsString());
   }
+
+  @Test
+  public void testGetStudentsBatch() throws Exception {
+    Student other = studentRepository.save(new Student("Jane", "Smith", "janesmith", "j@x.com"));
+    long missing = other.getId() + 1;
+
+    // in the order asked for, each once, with the unknown id reported
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/students/batch")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(
+            List.of(other.getId(), missing, student.getId(), other.getId()))))
+        .andReturn();
+    assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+
+    Map<String, Object> response = objectMapper.readValue(
+        result.getResponse().getContentAsString(), new TypeReference<Map<String, Object>>() {});
+    List<Map<String, Object>> students = (List<Map<String, Object>>) ((Map<String, Object>) response
+        .get("_embedded")).get("students");
+    assertEquals(2, students.size());
+    assertEquals("Jane", students.get(0).get("firstName"));
+    assertEquals("John", students.get(1).get("firstName"));
+    assertEquals(List.of((int) missing), response.get("missing"));
+  }
+
+  @Test
+  public void testGetStudentsBatch_TooManyIds() throws Exception {
+    List<Long> ids = new ArrayList<>();
+    for (long id = 1; id <= 1001; id++) {
+      ids.add(id);
+    }
+
+    MvcResult result = mockMvc.perform(MockMvcRequestBuilders.post("/students/batch")
+        .contentType(MediaType.APPLICATION_JSON).content(objectMapper.writeValueAsString(ids)))
+        .andReturn();
+    assertEquals(HttpStatus.BAD_REQUEST.value(), result.getResponse().getStatus());
+  }
 }
@@ -0,0 +1,95 @@
+package uk.ac.ucl.comp0010.load;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+
+/**
+ * The requests, errors and latency histogram of one endpoint during a load run. Latencies are kept
+ * in microseconds with three significant digits.
+ */
+final class EndpointStats {
+
+  private static final long MICROS_PER_MILLI = 1000;
+
+  private final String endpoint;
+  private final Histogram latencies = new ConcurrentHistogram(3);
+  private final AtomicLong errors = new AtomicLong();
+
+  EndpointStats(String endpoint) {
+    this.endpoint = endpoint;
+  }
+
+  /**
+   * Records a completed request.
+   *
+   * @param nanos the time from when the request was due until its response arrived
+   * @param ok whether the request succeeded
+   */
+  void record(long nanos, boolean ok) {
+    latencies.recordValue(Math.max(nanos / 1000, 1));
+    if (!ok) {
+      errors.incrementAndGet();
+    }
+  }
+
+  static void printHeader() {
+    System.out.printf(Locale.ROOT, "%-28s %9s %7s %9s %9s %9s %9s%n", "endpoint", "requests",
+        "errors", "req/s", "p50 ms", "p99 ms", "p999 ms");
+  }
+
+  void print(int seconds) {
+    System.out.printf(Locale.ROOT, "%-28s %9d %7d %9.1f %9.2f %9.2f %9.2f%n", endpoint,
+        latencies.getTotalCount(), errors.get(), (double) latencies.getTotalCount() / seconds,
+        millisAt(50), millisAt(99), millisAt(99.9));
+  }
+
+  /**
+   * Returns the results in the form written to the result file.
+   *
+   * @param seconds the length of the measured run
+   * @return the endpoint's throughput, error rate, latency percentiles and latency histogram
+   */
+  Map<String, Object> toMap(int seconds) {
+    long requests = latencies.getTotalCount();
+    Map<String, Object> latency = new LinkedHashMap<>();
+    List<Map<String, Object>> histogram = new ArrayList<>();
+    if (requests > 0) {
+      latency.put("p50", millisAt(50));
+      latency.put("p99", millisAt(99));
+      latency.put("p999", millisAt(99.9));
+      latency.put("max", (double) latencies.getMaxValue() / MICROS_PER_MILLI);
+      // doubling buckets from 1 ms
+      for (HistogramIterationValue bucket : latencies.logarithmicBucketValues(MICROS_PER_MILLI,
+          2)) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("upToMs", (double) bucket.getValueIteratedTo() / MICROS_PER_MILLI);
+        entry.put("count", bucket.getCountAddedInThisIterationStep());
+        histogram.add(entry);
+      }
+    }
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("endpoint", endpoint);
+    result.put("requests", requests);
+    result.put("errors", errors.get());
+    result.put("errorRate", requests == 0 ? 0.0 : (double) errors.get() / requests);
+    result.put("throughput", (double) requests / seconds);
+    result.put("latencyMs", latency);
+    result.put("histogram", histogram);
+    return result;
+  }
+
+  private double millisAt(double percentile) {
+    if (latencies.getTotalCount() == 0) {
+      return Double.NaN;
+    }
+    return (double) latencies.getValueAtPercentile(percentile) / MICROS_PER_MILLI;
+  }
+}
@@ -0,0 +1,310 @@
+package uk.ac.ucl.comp0010.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import uk.ac.ucl.comp0010.GroupProjectApplication;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeBatchRepository;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+/**
+ * An open-loop HTTP load test of the student, module and grade controllers.
+ * <p>
+ * The application is started on a random port against its in-memory H2 database and seeded with a
+ * cohort generated from a fixed seed. Requests are then sent at a fixed arrival rate, drawn from a
+ * weighted mix of endpoints, whether or not earlier requests have been answered. Latency is measured
+ * from when a request was due rather than when it was sent, so a server that falls behind shows up
+ * in the percentiles instead of slowing the load down. After a warmup, each endpoint's throughput,
+ * error rate and latency percentiles are printed, and written with its latency histogram to a JSON
+ * file so that runs can be compared.
+ * </p>
+ * <p>
+ * Run with {@code mvn -Pload-test -DskipTests test}. The run is set with the system properties
+ * {@code load.rate} (requests per second), {@code load.seconds}, {@code load.warmup-seconds},
+ * {@code load.mix} ({@code read-heavy} or {@code write-heavy}), {@code load.students},
+ * {@code load.result} (the JSON file) and {@code load.profiles}, the Spring profiles to run with in
+ * turn: {@code default,virtual} compares Tomcat's platform threads with virtual threads, which
+ * need {@code -Pjava21}.
+ * </p>
+ */
+public final class RestLoad {
+
+  private static final long SEED = 20241118L;
+  private static final int MODULES = 20;
+  private static final int GRADES_PER_STUDENT = 10;
+  private static final int PAGE_SIZE = 20;
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+  private static final int RATE = Integer.getInteger("load.rate", 100);
+  private static final int SECONDS = Integer.getInteger("load.seconds", 30);
+  private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup-seconds", 10);
+  private static final int STUDENTS = Integer.getInteger("load.students", 500);
+  private static final String MIX = System.getProperty("load.mix", "read-heavy");
+  private static final String PROFILES = System.getProperty("load.profiles", "default");
+  private static final String RESULT = System.getProperty("load.result", "load-result.json");
+
+  /**
+   * The kinds of request sent, each with its weight in the read-heavy and write-heavy mixes.
+   */
+  private enum Operation {
+    GET_STUDENT("GET /students/{id}", 25, 10) {
+      @Override
+      HttpRequest.Builder request(Cohort cohort, SplittableRandom random) {
+        return HttpRequest.newBuilder(cohort.uri("/students/" + cohort.student(random)));
+      }
+    },
+    LIST_STUDENTS("GET /students/all?after&limit", 10, 5) {
+      @Override
+      HttpRequest.Builder request(Cohort cohort, SplittableRandom random) {
+        return HttpRequest.newBuilder(cohort.uri(
+            "/students/all?limit=" + PAGE_SIZE + "&after=" + cohort.student(random)));
+      }
+    },
+    LIST_MODULES("GET /modules/all", 15, 5) {
+      @Override
+      HttpRequest.Builder request(Cohort cohort, SplittableRandom random) {
+        return HttpRequest.newBuilder(cohort.uri("/modules/all"));
+      }
+    },
+    MODULE_STATS("GET /modules/{code}/stats", 10, 5) {
+      @Override
+      HttpRequest.Builder request(Cohort cohort, SplittableRandom random) {
+        return HttpRequest.newBuilder(
+            cohort.uri("/modules/" + cohort.module(random) + "/stats"));
+      }
+    },
+    GET_GRADE("GET /grades/{id}", 20, 10) {
+      @Override
+      HttpRequest.Builder request(Cohort cohort, SplittableRandom random) {
+        return HttpRequest.newBuilder(cohort.uri("/grades/" + cohort.grade(random)));
+      }
+    },
+    LIST_GRADES("GET /grades?after&limit", 10, 5) {
+      @Override
+      HttpRequest.Builder request(Cohort cohort, SplittableRandom random) {
+        return HttpRequest.newBuilder(
+            cohort.uri("/grades?limit=" + PAGE_SIZE + "&after=" + cohort.grade(random)));
+      }
+    },
+    ADD_GRADE("POST /grades/addGrade", 7, 40) {
+      @Override
+      HttpRequest.Builder request(Cohort cohort, SplittableRandom random) {
+        String body = String.format(Locale.ROOT,
+            "{\"student_id\":\"%d\",\"module_code\":\"%s\",\"score\":\"%d\"}",
+            cohort.student(random), cohort.module(random), random.nextInt(101));
+        return HttpRequest.newBuilder(cohort.uri("/grades/addGrade"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body));
+      }
+    },
+    PATCH_GRADE("PATCH /grades/{id}", 3, 20) {
+      @Override
+      HttpRequest.Builder request(Cohort cohort, SplittableRandom random) {
+        return HttpRequest.newBuilder(cohort.uri("/grades/" + cohort.grade(random)))
+            .header("Content-Type", "application/json")
+            .method("PATCH", HttpRequest.BodyPublishers.ofString("" + random.nextInt(101)));
+      }
+    };
+
+    private final String endpoint;
+    private final int readHeavyWeight;
+    private final int writeHeavyWeight;
+
+    Operation(String endpoint, int readHeavyWeight, int writeHeavyWeight) {
+      this.endpoint = endpoint;
+      this.readHeavyWeight = readHeavyWeight;
+      this.writeHeavyWeight = writeHeavyWeight;
+    }
+
+    abstract HttpRequest.Builder request(Cohort cohort, SplittableRandom random);
+
+    int weight(String mix) {
+      switch (mix) {
+        case "read-heavy":
+          return readHeavyWeight;
+        case "write-heavy":
+          return writeHeavyWeight;
+        default:
+          throw new IllegalArgumentException("Unknown mix: " + mix);
+      }
+    }
+  }
+
+  // the seeded data requests are drawn from
+  private record Cohort(String base, List<Long> studentIds, List<String> moduleCodes,
+      List<Long> gradeIds) {
+
+    URI uri(String path) {
+      return URI.create(base + path);
+    }
+
+    Long student(SplittableRandom random) {
+      return studentIds.get(random.nextInt(studentIds.size()));
+    }
+
+    String module(SplittableRandom random) {
+      return moduleCodes.get(random.nextInt(moduleCodes.size()));
+    }
+
+    Long grade(SplittableRandom random) {
+      return gradeIds.get(random.nextInt(gradeIds.size()));
+    }
+  }
+
+  private RestLoad() {}
+
+  /**
+   * Runs the load against the application under each profile in turn.
+   *
+   * @param args ignored
+   * @throws Exception if the application cannot be started or the results cannot be written
+   */
+  public static void main(String[] args) throws Exception {
+    // devtools would otherwise restart the whole run in a new class loader
+    System.setProperty("spring.devtools.restart.enabled", "false");
+    Operation[] operations = Operation.values();
+    int[] cumulativeWeights = new int[operations.length];
+    int total = 0;
+    for (int o = 0; o < operations.length; o++) {
+      total += operations[o].weight(MIX);
+      cumulativeWeights[o] = total;
+    }
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("startedAt", Instant.now().toString());
+    result.put("java", Runtime.version().toString());
+    result.put("cpus", Runtime.getRuntime().availableProcessors());
+    result.put("rate", RATE);
+    result.put("seconds", SECONDS);
+    result.put("warmupSeconds", WARMUP_SECONDS);
+    result.put("mix", MIX);
+    result.put("students", STUDENTS);
+    result.put("seed", SEED);
+    List<Map<String, Object>> runs = new ArrayList<>();
+    result.put("runs", runs);
+
+    System.out.printf(Locale.ROOT, "%d req/s for %d s after %d s warmup, %s mix, Java %d%n", RATE,
+        SECONDS, WARMUP_SECONDS, MIX, Runtime.version().feature());
+    for (String profile : PROFILES.split(",")) {
+      try (ConfigurableApplicationContext context =
+          new SpringApplicationBuilder(GroupProjectApplication.class).profiles(profile.trim())
+              .properties("server.port=0", "spring.main.banner-mode=off",
+                  "logging.level.root=warn")
+              .run()) {
+        Cohort cohort = seed(context);
+        run(cohort, operations, cumulativeWeights, WARMUP_SECONDS);
+        EndpointStats[] stats = run(cohort, operations, cumulativeWeights, SECONDS);
+
+        System.out.println();
+        System.out.println("Profile: " + profile.trim());
+        EndpointStats.printHeader();
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+        for (EndpointStats endpoint : stats) {
+          endpoint.print(SECONDS);
+          endpoints.add(endpoint.toMap(SECONDS));
+        }
+        Map<String, Object> run = new LinkedHashMap<>();
+        run.put("profile", profile.trim());
+        run.put("endpoints", endpoints);
+        runs.add(run);
+      }
+    }
+
+    File file = new File(RESULT);
+    new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, result);
+    System.out.println();
+    System.out.println("Results written to " + file.getAbsolutePath());
+  }
+
+  private static Cohort seed(ConfigurableApplicationContext context) {
+    SplittableRandom random = new SplittableRandom(SEED);
+    List<Module> modules = new ArrayList<>();
+    for (int m = 0; m < MODULES; m++) {
+      modules.add(new Module(String.format(Locale.ROOT, "LOAD%02d", m), "Module " + m, false));
+    }
+    context.getBean(ModuleRepository.class).saveAll(modules);
+    List<Student> students = new ArrayList<>();
+    for (int s = 0; s < STUDENTS; s++) {
+      students.add(new Student("First" + s, "Last" + s, "user" + s, "user" + s + "@example.com"));
+    }
+    context.getBean(StudentRepository.class).saveAll(students);
+    List<GradeRow> rows = new ArrayList<>();
+    for (Student student : students) {
+      int first = random.nextInt(MODULES);
+      for (int g = 0; g < GRADES_PER_STUDENT; g++) {
+        rows.add(new GradeRow(student.getId(),
+            modules.get((first + g) % MODULES).getCode(), random.nextInt(101)));
+      }
+    }
+    context.getBean(GradeBatchRepository.class).upsertAll(rows);
+
+    int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+    return new Cohort("http://localhost:" + port, students.stream().map(Student::getId).toList(),
+        modules.stream().map(Module::getCode).toList(), context.getBean(JdbcTemplate.class)
+            .queryForList("select id from grade order by id", Long.class));
+  }
+
+  private static EndpointStats[] run(Cohort cohort, Operation[] operations,
+      int[] cumulativeWeights, int seconds) {
+    EndpointStats[] stats = new EndpointStats[operations.length];
+    for (int o = 0; o < operations.length; o++) {
+      stats[o] = new EndpointStats(operations[o].endpoint);
+    }
+    SplittableRandom random = new SplittableRandom(SEED);
+    int total = cumulativeWeights[cumulativeWeights.length - 1];
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    HttpClient client = HttpClient.newBuilder().executor(executor).build();
+    List<CompletableFuture<?>> responses = new ArrayList<>(RATE * seconds);
+
+    long interval = 1_000_000_000L / RATE;
+    long start = System.nanoTime();
+    long end = start + seconds * 1_000_000_000L;
+    for (long due = start; due < end; due += interval) {
+      long wait = due - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      int pick = random.nextInt(total);
+      int o = 0;
+      while (cumulativeWeights[o] <= pick) {
+        o++;
+      }
+      HttpRequest request =
+          operations[o].request(cohort, random).timeout(REQUEST_TIMEOUT).build();
+      EndpointStats endpoint = stats[o];
+      long sentFor = due;
+      responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+          .whenComplete((response, error) -> endpoint.record(System.nanoTime() - sentFor,
+              error == null && response.statusCode() < 400)));
+    }
+    // wait for the stragglers; failures were recorded as errors
+    CompletableFuture.allOf(responses.toArray(new CompletableFuture<?>[0]))
+        .exceptionally(error -> null).join();
+    executor.shutdown();
+    return stats;
+  }
+}
@@ -0,0 +1,347 @@
+package uk.ac.ucl.comp0010.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long the packaged application takes from launch to its first successful
+ * {@code GET /modules/all}, the time a new instance needs before it can take traffic, and how much
+ * memory it holds and how many requests it answers once it runs.
+ * <p>
+ * Each launch is started as its own process on a free port and polled until it answers; the time
+ * is taken from just before the process is started, so it includes JVM startup. The resident set
+ * size of the process is read from {@code /proc} once it answers. Processes run in the extracted
+ * application's directory, as the class-data-sharing archive only applies to the class path it was
+ * trained with. Launches are:
+ * </p>
+ * <ul>
+ * <li>{@code jar}: the executable jar, as deployed today;</li>
+ * <li>{@code extracted}: the jar extracted by the {@code startup} profile, which skips the
+ * nested jar class loader;</li>
+ * <li>{@code aot}: the extracted jar with the bean definitions generated by Spring AOT;</li>
+ * <li>{@code aot-cds}: the same with the class-data-sharing archive of the training run;</li>
+ * <li>{@code native}: the GraalVM native executable built by the {@code native} profile.</li>
+ * </ul>
+ * <p>
+ * The last run of each launch is then seeded over HTTP with a small cohort and driven by
+ * {@code startup.clients} closed-loop clients reading modules, students and module statistics, for
+ * a warmup and then {@code startup.throughput-seconds}. Its throughput, latencies and resident set
+ * size under load are reported with the startup times, so a launch that starts faster but serves
+ * less is seen as such.
+ * </p>
+ * <p>
+ * Run with {@code mvn -Pstartup verify -DskipTests}, which builds what the launches need first,
+ * adding the {@code native} profile for the native launch. The system properties
+ * {@code startup.launches} (a comma separated list of the above), {@code startup.runs} (per
+ * launch), {@code startup.jar}, {@code startup.dir} (the extracted application),
+ * {@code startup.native} (the native executable), {@code startup.clients},
+ * {@code startup.throughput-seconds} and {@code startup.result} (the JSON file the results are
+ * written to) set the run.
+ * </p>
+ */
+public final class StartupTime {
+
+  private static final Duration TIMEOUT = Duration.ofMinutes(3);
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+  private static final long POLL_MILLIS = 10;
+  private static final long SEED = 20241118L;
+  private static final int MODULES = 10;
+  private static final int STUDENTS = 200;
+  private static final int PAGE_SIZE = 20;
+  private static final int WARMUP_SECONDS = 10;
+
+  private static final String LAUNCHES =
+      System.getProperty("startup.launches", "jar,extracted,aot,aot-cds");
+  private static final int RUNS = Integer.getInteger("startup.runs", 3);
+  private static final String JAR =
+      System.getProperty("startup.jar", "target/GroupProject-0.0.1-SNAPSHOT.jar");
+  private static final String DIR = System.getProperty("startup.dir", "target/startup");
+  private static final String NATIVE = System.getProperty("startup.native", "target/GroupProject");
+  private static final int CLIENTS = Integer.getInteger("startup.clients", 4);
+  private static final int THROUGHPUT_SECONDS =
+      Integer.getInteger("startup.throughput-seconds", 20);
+  private static final String RESULT =
+      System.getProperty("startup.result", "target/startup-result.json");
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  // what one run of a launch measured; the load is only measured on the last run
+  private record Run(long millis, Long rssKb, Map<String, Object> load) {}
+
+  private StartupTime() {}
+
+  /**
+   * Times each launch in turn.
+   *
+   * @param args ignored
+   * @throws Exception if a launch does not answer in time or the results cannot be written
+   */
+  public static void main(String[] args) throws Exception {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("startedAt", Instant.now().toString());
+    result.put("java", Runtime.version().toString());
+    result.put("cpus", Runtime.getRuntime().availableProcessors());
+    result.put("runs", RUNS);
+    result.put("clients", CLIENTS);
+    result.put("warmupSeconds", WARMUP_SECONDS);
+    result.put("throughputSeconds", THROUGHPUT_SECONDS);
+    List<Map<String, Object>> launches = new ArrayList<>();
+    result.put("launches", launches);
+
+    System.out.printf(Locale.ROOT, "%-10s %10s %10s %10s %10s %10s %10s %10s%n", "launch",
+        "min ms", "median ms", "max ms", "rss MB", "load MB", "req/s", "p99 ms");
+    HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+    for (String launch : LAUNCHES.split(",")) {
+      List<Long> millis = new ArrayList<>();
+      List<Long> rssKb = new ArrayList<>();
+      Map<String, Object> load = null;
+      for (int run = 0; run < RUNS; run++) {
+        Run measured = run(client, launch.trim(), run == RUNS - 1);
+        millis.add(measured.millis());
+        if (measured.rssKb() != null) {
+          rssKb.add(measured.rssKb());
+        }
+        load = measured.load();
+      }
+      List<Long> sorted = millis.stream().sorted().toList();
+      Long medianRssKb = rssKb.isEmpty() ? null : rssKb.stream().sorted().toList()
+          .get(rssKb.size() / 2);
+      @SuppressWarnings("unchecked")
+      Double p99 = ((Map<String, Double>) load.get("latencyMs")).get("p99");
+      System.out.printf(Locale.ROOT, "%-10s %10d %10d %10d %10s %10s %10.1f %10s%n",
+          launch.trim(), sorted.get(0), sorted.get(sorted.size() / 2),
+          sorted.get(sorted.size() - 1), megabytes(medianRssKb),
+          megabytes((Long) load.get("rssKb")), (Double) load.get("throughput"),
+          p99 == null ? "-" : String.format(Locale.ROOT, "%.2f", p99));
+
+      Map<String, Object> times = new LinkedHashMap<>();
+      times.put("launch", launch.trim());
+      times.put("millis", millis);
+      times.put("minMillis", sorted.get(0));
+      times.put("medianMillis", sorted.get(sorted.size() / 2));
+      times.put("maxMillis", sorted.get(sorted.size() - 1));
+      times.put("rssKb", rssKb);
+      times.put("medianRssKb", medianRssKb);
+      times.put("load", load);
+      launches.add(times);
+    }
+
+    File file = new File(RESULT);
+    new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file, result);
+    System.out.println();
+    System.out.println("Results written to " + file.getAbsolutePath());
+  }
+
+  private static List<String> command(String launch, int port) {
+    String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    // extracting keeps the jar's name
+    String extracted = Path.of(JAR).getFileName().toString();
+    List<String> command = new ArrayList<>();
+    switch (launch) {
+      case "jar":
+        command.addAll(List.of(java, "-jar", Path.of(JAR).toAbsolutePath().toString()));
+        break;
+      case "extracted":
+        command.addAll(List.of(java, "-jar", extracted));
+        break;
+      case "aot":
+        command.addAll(List.of(java, "-Dspring.aot.enabled=true", "-jar", extracted));
+        break;
+      case "aot-cds":
+        command.addAll(List.of(java, "-XX:SharedArchiveFile=application.jsa",
+            "-Dspring.aot.enabled=true", "-jar", extracted));
+        break;
+      case "native":
+        command.add(Path.of(NATIVE).toAbsolutePath().toString());
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown launch: " + launch);
+    }
+    command.add("--server.port=" + port);
+    return command;
+  }
+
+  private static Run run(HttpClient client, String launch, boolean underLoad) throws Exception {
+    int port = freePort();
+    String base = "http://localhost:" + port;
+    HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/modules/all"))
+        .timeout(Duration.ofSeconds(5)).build();
+    ProcessBuilder builder = new ProcessBuilder(command(launch, port)).directory(new File(DIR))
+        .redirectErrorStream(true).redirectOutput(new File(DIR, launch + ".log"));
+
+    long start = System.nanoTime();
+    Process process = builder.start();
+    try {
+      long millis = timeToFirstRequest(client, request, process, launch, start);
+      Long rssKb = memoryKb(process, "VmRSS");
+      Map<String, Object> load = null;
+      if (underLoad) {
+        load = load(base, process);
+      }
+      return new Run(millis, rssKb, load);
+    } finally {
+      process.destroy();
+      if (!process.waitFor(30, TimeUnit.SECONDS)) {
+        process.destroyForcibly();
+      }
+    }
+  }
+
+  private static long timeToFirstRequest(HttpClient client, HttpRequest request, Process process,
+      String launch, long start) throws Exception {
+    long deadline = start + TIMEOUT.toNanos();
+    while (System.nanoTime() < deadline) {
+      if (!process.isAlive()) {
+        throw new IllegalStateException(launch + " exited with " + process.exitValue() + ", see "
+            + new File(DIR, launch + ".log"));
+      }
+      try {
+        if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+          return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+      } catch (IOException e) {
+        // not listening yet
+      }
+      Thread.sleep(POLL_MILLIS);
+    }
+    throw new IllegalStateException(launch + " did not answer within " + TIMEOUT);
+  }
+
+  private static Map<String, Object> load(String base, Process process) throws Exception {
+    HttpClient client = HttpClient.newHttpClient();
+    List<Long> studentIds = seed(client, base);
+    // the reads of a client opening the application: modules, a page of students, one student
+    // and the statistics of a module
+    List<URI> uris = new ArrayList<>();
+    uris.add(URI.create(base + "/modules/all"));
+    uris.add(URI.create(base + "/students/all?limit=" + PAGE_SIZE));
+    for (int s = 0; s < studentIds.size(); s++) {
+      uris.add(URI.create(base + "/students/" + studentIds.get(s)));
+      uris.add(URI.create(base + "/modules/" + moduleCode(s % MODULES) + "/stats"));
+    }
+
+    drive(client, uris, WARMUP_SECONDS, new EndpointStats("warmup"));
+    EndpointStats stats = new EndpointStats("steady state");
+    drive(client, uris, THROUGHPUT_SECONDS, stats);
+
+    Map<String, Object> load = stats.toMap(THROUGHPUT_SECONDS);
+    load.put("rssKb", memoryKb(process, "VmRSS"));
+    load.put("peakRssKb", memoryKb(process, "VmHWM"));
+    return load;
+  }
+
+  // closed loop: each client sends its next request once the previous one is answered
+  private static void drive(HttpClient client, List<URI> uris, int seconds, EndpointStats stats)
+      throws Exception {
+    long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    ExecutorService executor = Executors.newFixedThreadPool(CLIENTS);
+    List<Future<?>> clients = new ArrayList<>();
+    for (int c = 0; c < CLIENTS; c++) {
+      SplittableRandom random = new SplittableRandom(SEED + c);
+      clients.add(executor.submit(() -> {
+        while (System.nanoTime() < end) {
+          HttpRequest request = HttpRequest.newBuilder(uris.get(random.nextInt(uris.size())))
+              .timeout(REQUEST_TIMEOUT).build();
+          long sent = System.nanoTime();
+          boolean ok;
+          try {
+            ok = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() < 400;
+          } catch (IOException e) {
+            ok = false;
+          }
+          stats.record(System.nanoTime() - sent, ok);
+        }
+        return null;
+      }));
+    }
+    for (Future<?> future : clients) {
+      future.get();
+    }
+    executor.shutdown();
+  }
+
+  private static List<Long> seed(HttpClient client, String base) throws Exception {
+    SplittableRandom random = new SplittableRandom(SEED);
+    for (int m = 0; m < MODULES; m++) {
+      post(client, base + "/modules/addModule", "application/json", MAPPER.writeValueAsString(
+          Map.of("code", moduleCode(m), "name", "Module " + m, "mnc", "false")));
+    }
+    List<Long> studentIds = new ArrayList<>();
+    StringBuilder grades = new StringBuilder("student_id,module_code,score\n");
+    for (int s = 0; s < STUDENTS; s++) {
+      String student = post(client, base + "/students/addStudent", "application/json",
+          MAPPER.writeValueAsString(Map.of("firstName", "First" + s, "lastName", "Last" + s,
+              "username", "user" + s, "email", "user" + s + "@example.com")));
+      long id = MAPPER.readTree(student).get("id").asLong();
+      studentIds.add(id);
+      for (int m = 0; m < MODULES; m++) {
+        grades.append(id).append(',').append(moduleCode(m)).append(',')
+            .append(random.nextInt(101)).append('\n');
+      }
+    }
+    post(client, base + "/grades/bulk", "text/csv", grades.toString());
+    return studentIds;
+  }
+
+  private static String post(HttpClient client, String uri, String contentType, String body)
+      throws Exception {
+    HttpRequest request = HttpRequest.newBuilder(URI.create(uri)).timeout(REQUEST_TIMEOUT)
+        .header("Content-Type", contentType).POST(HttpRequest.BodyPublishers.ofString(body))
+        .build();
+    HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException(
+          "POST " + uri + " answered " + response.statusCode() + ": " + response.body());
+    }
+    return response.body();
+  }
+
+  private static String moduleCode(int module) {
+    return String.format(Locale.ROOT, "START%02d", module);
+  }
+
+  // a field of /proc/<pid>/status in kB, or null where there is no /proc
+  private static Long memoryKb(Process process, String field) throws IOException {
+    Path status = Path.of("/proc", Long.toString(process.pid()), "status");
+    if (!Files.isReadable(status)) {
+      return null;
+    }
+    for (String line : Files.readAllLines(status)) {
+      if (line.startsWith(field + ":")) {
+        return Long.valueOf(line.substring(field.length() + 1).replace("kB", "").trim());
+      }
+    }
+    return null;
+  }
+
+  private static String megabytes(Long kb) {
+    return kb == null ? "-" : Long.toString(kb / 1024);
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
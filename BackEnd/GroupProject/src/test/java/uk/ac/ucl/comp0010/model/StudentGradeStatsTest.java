@@ -0,0 +1,31 @@
+package uk.ac.ucl.comp0010.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Test class for StudentGradeStats entity.
+ */
+public class StudentGradeStatsTest {
+
+  @Test
+  void testConstructorAndGetters() {
+    StudentGradeStats stats = new StudentGradeStats(7L, 3, 240, 70, 90);
+
+    assertEquals(7L, stats.getStudentId());
+    assertEquals(3, stats.getCount());
+    assertEquals(240, stats.getSum());
+    assertEquals(70, stats.getMin());
+    assertEquals(90, stats.getMax());
+    assertEquals(80f, stats.getAverage());
+  }
+
+  @Test
+  void testAverageWithoutScores() {
+    StudentGradeStats stats = new StudentGradeStats(7L, 0, 0, null, null);
+
+    assertNull(stats.getAverage(), "A student without scores has no average");
+    assertNull(new StudentGradeStats().getStudentId());
+  }
+}
@@ -338,4 +338,74 @@ class StudentTest {
       Assertions.assertDoesNotThrow(() -> student.addGrade(grade));
     }
   }
+
+  @Nested
+  @DisplayName("Module Index Tests")
+  class ModuleIndexTests {
+    @Test
+    @DisplayName("Test Lookups Follow Replaced Lists")
+    void testLookupsFollowReplacedLists() throws NoGradeAvailableException {
+      student.addGrade(gradeCompSci1);
+      student.registerModule(compSci1);
+      Assertions.assertSame(gradeCompSci1, student.getGrade(compSci1));
+
+      student.setGrades(new ArrayList<>(List.of(gradeMath1)));
+      student.setRegistrations(new ArrayList<>());
+
+      Assertions.assertSame(gradeMath1, student.getGrade(math1));
+      Assertions.assertThrows(NoGradeAvailableException.class, () -> student.getGrade(compSci1));
+      Assertions.assertFalse(student.isRegisteredFor(compSci1));
+    }
+
+    @Test
+    @DisplayName("Test Lists Changed Elsewhere Do Not Affect Lookups")
+    void testListsChangedElsewhereDoNotAffectLookups() throws NoGradeAvailableException {
+      List<Grade> grades = new ArrayList<>(List.of(gradeCompSci1));
+      List<Registration> registrations =
+          new ArrayList<>(List.of(new Registration(student, compSci1)));
+      student.setGrades(grades);
+      student.setRegistrations(registrations);
+      Assertions.assertSame(gradeCompSci1, student.getGrade(compSci1));
+
+      // one removed and one added, so the sizes still match
+      grades.remove(gradeCompSci1);
+      grades.add(gradeMath1);
+      registrations.set(0, new Registration(student, math1));
+
+      Assertions.assertSame(gradeCompSci1, student.getGrade(compSci1));
+      Assertions.assertThrows(NoGradeAvailableException.class, () -> student.getGrade(math1));
+      Assertions.assertEquals(gradeCompSci1.getScore(), student.computeAverage(), 0.001);
+      Assertions.assertTrue(student.isRegisteredFor(compSci1));
+      Assertions.assertFalse(student.isRegisteredFor(math1));
+      Assertions.assertEquals(List.of(compSci1), student.getRegisteredModules());
+      student.addGrade(new Grade(10, compSci1));
+      Assertions.assertEquals(10, student.getGrade(compSci1).getScore());
+    }
+
+    @Test
+    @DisplayName("Test Duplicate Registrations Are Indexed Once")
+    void testDuplicateRegistrationsAreIndexedOnce() {
+      Registration first = new Registration(student, compSci1);
+      student.setRegistrations(List.of(first, new Registration(student, compSci1)));
+
+      Assertions.assertTrue(student.isRegisteredFor(compSci1));
+      student.registerModule(compSci1);
+      student.registerModule(math1);
+      Assertions.assertEquals(List.of(compSci1, compSci1, math1), student.getRegisteredModules());
+    }
+
+    @Test
+    @DisplayName("Test Same Module Code Is Matched Across Instances")
+    void testSameModuleCodeIsMatchedAcrossInstances() throws NoGradeAvailableException {
+      Module copy = new Module("COMP0010", "Software Engineering", true);
+      student.registerModule(compSci1);
+      student.registerModule(copy);
+      student.addGrade(gradeCompSci1);
+      student.addGrade(new Grade(40, copy));
+
+      Assertions.assertEquals(1, student.getRegisteredModules().size());
+      Assertions.assertTrue(student.isRegisteredFor(copy));
+      Assertions.assertEquals(40, student.getGrade(compSci1).getScore());
+    }
+  }
 }
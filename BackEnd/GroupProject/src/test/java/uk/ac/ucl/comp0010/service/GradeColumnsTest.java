@@ -0,0 +1,220 @@
+package uk.ac.ucl.comp0010.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+
+/**
+ * Test class for GradeColumns.
+ */
+public class GradeColumnsTest {
+
+  private final GradeColumns columns = GradeColumns.empty().withScores(List.of(
+      new GradeRow(1L, "COMP0010", 80),
+      new GradeRow(1L, "COMP0020", 60),
+      new GradeRow(2L, "COMP0010", 40),
+      new GradeRow(3L, "COMP0020", 30)));
+
+  @Test
+  void testModuleAverages() {
+    assertEquals(4, columns.size());
+    assertEquals(Map.of("COMP0010", 60.0, "COMP0020", 45.0), columns.moduleAverages());
+  }
+
+  @Test
+  void testWithScoresReplacesAddsAndRemoves() {
+    // Arrange
+    List<GradeRow> changes = List.of(
+        new GradeRow(1L, "COMP0010", 100),
+        new GradeRow(3L, "COMP0020", null),
+        new GradeRow(4L, "COMP0030", 70),
+        new GradeRow(4L, "COMP0030", 75),
+        new GradeRow(5L, "COMP0040", null));
+
+    // Act
+    GradeColumns changed = columns.withScores(changes);
+
+    // Assert
+    assertEquals(4, changed.size());
+    assertEquals(Map.of("COMP0010", 70.0, "COMP0020", 60.0, "COMP0030", 75.0),
+        changed.moduleAverages());
+    // the original copy is untouched
+    assertEquals(Map.of("COMP0010", 60.0, "COMP0020", 45.0), columns.moduleAverages());
+  }
+
+  @Test
+  void testWithScoresWithoutChanges() {
+    assertSame(columns, columns.withScores(List.of(new GradeRow(9L, "COMP0010", null))));
+  }
+
+  @Test
+  void testWithoutStudent() {
+    GradeColumns changed = columns.withoutStudent(1L);
+
+    assertEquals(2, changed.size());
+    assertEquals(Map.of("COMP0010", 40.0, "COMP0020", 30.0), changed.moduleAverages());
+    assertSame(changed, changed.withoutStudent(9L));
+  }
+
+  @Test
+  void testWriteToAndReadFrom() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    columns.writeTo(new DataOutputStream(bytes));
+
+    GradeColumns read =
+        GradeColumns.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEquals(columns.size(), read.size());
+    assertEquals(columns.moduleAverages(), read.moduleAverages());
+    assertEquals(columns.studentsBelow(50), read.studentsBelow(50));
+    // the dictionaries are read back too, so changes still find existing students and modules
+    assertEquals(Map.of("COMP0010", 90.0, "COMP0020", 45.0),
+        read.withScores(List.of(new GradeRow(2L, "COMP0010", 100))).moduleAverages());
+  }
+
+  @Test
+  void testReadFromRejectsUnknownStudent() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeInt(1);
+    out.writeInt(0);
+    out.writeInt(0);
+    out.writeInt(50);
+
+    assertThrows(IOException.class, () -> GradeColumns
+        .readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+  }
+
+  @Test
+  void testStudentsBelow() {
+    assertEquals(List.of(2L, 3L), columns.studentsBelow(50));
+    assertEquals(List.of(), columns.studentsBelow(30));
+    assertEquals(List.of(1L, 2L, 3L), columns.studentsBelow(70.5));
+  }
+
+  @Test
+  void testCompare() {
+    GradeColumns.Comparison comparison = columns.withScores(List.of(
+        new GradeRow(2L, "COMP0020", 50))).compare("COMP0010", "COMP0020");
+
+    assertEquals(2, comparison.students());
+    assertEquals(60.0, comparison.firstMean());
+    assertEquals(55.0, comparison.secondMean());
+  }
+
+  @Test
+  void testCompareWithoutCommonStudents() {
+    GradeColumns.Comparison comparison =
+        columns.withoutStudent(1L).compare("COMP0010", "COMP0020");
+    assertEquals(0, comparison.students());
+    assertNull(comparison.firstMean());
+
+    comparison = columns.compare("COMP0010", "COMP9999");
+    assertEquals(0, comparison.students());
+    assertNull(comparison.secondMean());
+  }
+
+  @Test
+  void testFoldedDropsStudentsAndModulesNoLongerGraded() throws IOException {
+    GradeColumns folded = columns.withoutStudent(3L).withScores(List.of(
+        new GradeRow(1L, "COMP0020", null))).folded();
+
+    assertFalse(folded.hasChanges());
+    assertEquals(Map.of("COMP0010", 60.0), folded.moduleAverages());
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    folded.writeTo(new DataOutputStream(bytes));
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    assertEquals(2, in.readInt());
+    in.skipBytes(2 * Long.BYTES);
+    assertEquals(1, in.readInt());
+  }
+
+  @Test
+  void testRebasedOntoKeepsLaterChanges() {
+    GradeColumns from = columns.folded().withScores(List.of(
+        new GradeRow(1L, "COMP0010", 90),
+        new GradeRow(2L, "COMP0030", 70)));
+    // changes made while the earlier copy is folded, including one back to the folded columns
+    GradeColumns later = from.withoutStudent(2L).withScores(List.of(
+        new GradeRow(2L, "COMP0030", 70),
+        new GradeRow(1L, "COMP0010", 80),
+        new GradeRow(3L, "COMP0020", 35)));
+
+    GradeColumns rebased = later.rebasedOnto(from, from.folded());
+
+    assertSameGrades(later, rebased);
+    assertSameGrades(later, rebased.folded());
+    assertSame(later, later.rebasedOnto(columns, columns.folded()));
+  }
+
+  @Test
+  void testChangesMatchTheGradesTheyDescribe() {
+    Random random = new Random(10);
+    Map<List<Object>, Integer> expected = new HashMap<>();
+    GradeColumns.Builder builder = GradeColumns.builder();
+    for (int i = 0; i < 200; i++) {
+      long studentId = random.nextInt(30);
+      String moduleCode = "COMP00" + random.nextInt(8);
+      int score = random.nextInt(101);
+      builder.add(studentId, moduleCode, score);
+      expected.put(List.of(studentId, moduleCode), score);
+    }
+    GradeColumns actual = builder.build();
+
+    for (int round = 0; round < 20; round++) {
+      GradeColumns from = actual;
+      for (int i = 0; i < 25; i++) {
+        long studentId = random.nextInt(40);
+        if (random.nextInt(10) == 0) {
+          actual = actual.withoutStudent(studentId);
+          expected.keySet().removeIf(key -> key.get(0).equals(studentId));
+          continue;
+        }
+        String moduleCode = "COMP00" + random.nextInt(10);
+        Integer score = random.nextInt(3) == 0 ? null : random.nextInt(101);
+        actual = actual.withScores(List.of(new GradeRow(studentId, moduleCode, score)));
+        if (score == null) {
+          expected.remove(List.of(studentId, moduleCode));
+        } else {
+          expected.put(List.of(studentId, moduleCode), score);
+        }
+      }
+      GradeColumns.Builder model = GradeColumns.builder();
+      expected.forEach((key, score) -> model.add((Long) key.get(0), (String) key.get(1), score));
+      assertSameGrades(model.build(), actual);
+      if (round % 2 == 0) {
+        actual = actual.rebasedOnto(from, from.folded());
+        assertSameGrades(model.build(), actual);
+      }
+    }
+  }
+
+  private static void assertSameGrades(GradeColumns expected, GradeColumns actual) {
+    assertEquals(expected.size(), actual.size());
+    assertEquals(expected.moduleAverages(), actual.moduleAverages());
+    assertEquals(expected.studentsBelow(50), actual.studentsBelow(50));
+    List<String> codes = new ArrayList<>(expected.moduleAverages().keySet());
+    codes.add("COMP9999");
+    for (String first : codes) {
+      for (String second : codes) {
+        assertEquals(expected.compare(first, second), actual.compare(first, second));
+      }
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package uk.ac.ucl.comp0010.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+public class GradeFeedTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  // a single sender thread, so a subscriber blocking it would hold back every other one
+  private final GradeFeed feed = new GradeFeed(meterRegistry, 100, 10, 1, Duration.ofMinutes(30),
+      Duration.ofMinutes(15), Duration.ofMillis(200));
+
+  @AfterEach
+  public void tearDown() {
+    feed.stop();
+  }
+
+  /**
+   * An emitter standing in for a client connection, whose writes block until it is released.
+   */
+  private static final class Connection extends SseEmitter {
+
+    private final List<String> events = new CopyOnWriteArrayList<>();
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch released;
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    private Connection(boolean blocking) {
+      released = new CountDownLatch(blocking ? 1 : 0);
+    }
+
+    @Override
+    public void send(SseEventBuilder builder) throws IOException {
+      writing.countDown();
+      try {
+        released.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      }
+      StringBuilder event = new StringBuilder();
+      builder.build().forEach(part -> event.append(part.getData()));
+      events.add(event.toString());
+    }
+
+    @Override
+    public void complete() {
+      completed.countDown();
+    }
+  }
+
+  @Test
+  public void testBlockedSubscriberDoesNotHoldBackOthers() throws Exception {
+    Connection slow = new Connection(true);
+    feed.subscribe(null, slow);
+    feed.publish(GradeFeed.Type.CREATED, 1L, 2L, "COMP0010", 60);
+    assertTrue(slow.writing.await(5, TimeUnit.SECONDS));
+
+    Connection fast = new Connection(false);
+    feed.subscribe(null, fast);
+    feed.publish(GradeFeed.Type.UPDATED, 1L, 2L, "COMP0010", 65);
+
+    for (int i = 0; i < 250 && fast.events.isEmpty(); i++) {
+      Thread.sleep(20);
+    }
+    assertEquals(1, fast.events.size());
+    assertTrue(fast.events.get(0).contains("grade-updated"));
+    assertEquals(1, feed.subscriberCount());
+    assertEquals(1, meterRegistry.counter("grades.stream.lagging").count());
+
+    // the blocked write returns once the container gives up on the connection
+    slow.released.countDown();
+    assertTrue(slow.completed.await(5, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,165 @@
+package uk.ac.ucl.comp0010.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeBatchRepository;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.GradeRow;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentGradeStatsRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+@SpringBootTest
+public class GradeIngestQueueTest {
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  @Autowired
+  private GradeBatchRepository gradeBatchRepository;
+
+  @Autowired
+  private StudentGradeStatsRepository gradeStatsRepository;
+
+  @Autowired
+  private GradeSnapshot gradeSnapshot;
+
+  @Autowired
+  private ChangeLog changeLog;
+
+  @Autowired
+  private GradeFeed gradeFeed;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  private Student student;
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+
+    moduleRepository.save(new Module("COMP0010", "Software Engineering", true));
+    moduleRepository.save(new Module("COMP0020", "Algorithms", false));
+    student = studentRepository.save(new Student("John", "Doe", "johndoe", "john@example.com"));
+  }
+
+  // a queue without its writer thread, so grades stay queued until flushed
+  private GradeIngestQueue queue(int capacity, int batchSize) {
+    return queue(capacity, batchSize, transactionManager);
+  }
+
+  private GradeIngestQueue queue(int capacity, int batchSize,
+      PlatformTransactionManager transactionManager) {
+    return new GradeIngestQueue(studentRepository, moduleRepository, gradeBatchRepository,
+        gradeStatsRepository, gradeSnapshot, new TableVersions(), changeLog, gradeFeed,
+        transactionManager, new SimpleMeterRegistry(), capacity, batchSize, Duration.ofMillis(10),
+        Duration.ofMinutes(1));
+  }
+
+  @Test
+  public void testQueueIsBounded() {
+    GradeIngestQueue queue = queue(1, 10);
+
+    assertTrue(queue.submit(new GradeRow(student.getId(), "COMP0010", 50)).isPresent());
+    // a queued student and module is replaced rather than added
+    assertTrue(queue.submit(new GradeRow(student.getId(), "COMP0010", 55)).isPresent());
+    assertTrue(queue.submit(new GradeRow(student.getId(), "COMP0020", 60)).isEmpty());
+    assertEquals(1, queue.depth());
+
+    queue.flush();
+    assertEquals(0, queue.depth());
+    assertEquals(55,
+        gradeRepository.findByStudentIdAndModuleCode(student.getId(), "COMP0010").get().getScore());
+  }
+
+  @Test
+  public void testFlushWritesInBatchesAndReportsVanishedRows() {
+    GradeIngestQueue queue = queue(10, 1);
+    Student other =
+        studentRepository.save(new Student("Jane", "Roe", "janeroe", "jane@example.com"));
+    String written = queue.submit(new GradeRow(student.getId(), "COMP0010", 70)).get().token();
+    String noStudent = queue.submit(new GradeRow(other.getId(), "COMP0010", 70)).get().token();
+    String noModule = queue.submit(new GradeRow(student.getId(), "COMP0030", 70)).get().token();
+    studentRepository.delete(other);
+
+    queue.flush();
+
+    assertEquals(GradeIngestQueue.State.COMMITTED, queue.status(written).get().state());
+    assertEquals("Unknown student " + other.getId(), queue.status(noStudent).get().error());
+    assertEquals(GradeIngestQueue.State.FAILED, queue.status(noModule).get().state());
+    assertEquals("Unknown module COMP0030", queue.status(noModule).get().error());
+  }
+
+  @Test
+  public void testFailedCommitMarksBatchFailed() {
+    // rolls back instead of committing, as when the commit itself fails
+    PlatformTransactionManager failingCommits = new PlatformTransactionManager() {
+      @Override
+      public TransactionStatus getTransaction(TransactionDefinition definition) {
+        return transactionManager.getTransaction(definition);
+      }
+
+      @Override
+      public void commit(TransactionStatus status) {
+        transactionManager.rollback(status);
+        throw new TransactionSystemException("Commit failed");
+      }
+
+      @Override
+      public void rollback(TransactionStatus status) {
+        transactionManager.rollback(status);
+      }
+    };
+    GradeIngestQueue queue = queue(10, 10, failingCommits);
+    String token = queue.submit(new GradeRow(student.getId(), "COMP0010", 70)).get().token();
+
+    queue.flush();
+
+    assertEquals(GradeIngestQueue.State.FAILED, queue.status(token).get().state());
+    assertEquals("Not written: Commit failed", queue.status(token).get().error());
+    assertEquals(0, gradeRepository.count());
+  }
+
+  @Test
+  public void testWriterThreadFlushesAndStopDrains() throws Exception {
+    GradeIngestQueue queue = queue(10, 10);
+    queue.start();
+    String token = queue.submit(new GradeRow(student.getId(), "COMP0010", 80)).get().token();
+
+    for (int i = 0; i < 100 && queue.status(token).get().state() == GradeIngestQueue.State.QUEUED;
+        i++) {
+      Thread.sleep(20);
+    }
+    assertEquals(GradeIngestQueue.State.COMMITTED, queue.status(token).get().state());
+
+    token = queue.submit(new GradeRow(student.getId(), "COMP0020", 90)).get().token();
+    queue.stop();
+    assertEquals(GradeIngestQueue.State.COMMITTED, queue.status(token).get().state());
+  }
+}
@@ -0,0 +1,124 @@
+package uk.ac.ucl.comp0010.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+@SpringBootTest
+public class GradeSnapshotStoreTest {
+
+  @Autowired
+  private GradeSnapshot gradeSnapshot;
+
+  @Autowired
+  private ChangeLog changeLog;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  @TempDir
+  private Path directory;
+
+  private Grade grade;
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+
+    Module module = moduleRepository.save(new Module("COMP0010", "Software Engineering", true));
+    Student student =
+        studentRepository.save(new Student("John", "Doe", "johndoe", "john@example.com"));
+    grade = gradeRepository.save(new Grade(60, student, module));
+    gradeSnapshot.rebuild();
+  }
+
+  // a store for a snapshot as it is when the application starts
+  private GradeSnapshotStore restarted(GradeSnapshot snapshot, Path file) {
+    return new GradeSnapshotStore(snapshot, changeLog, file.toString());
+  }
+
+  private GradeSnapshot emptySnapshot() {
+    return new GradeSnapshot(gradeRepository, transactionManager, 1000);
+  }
+
+  @Test
+  public void testSavedSnapshotIsRestored() {
+    Path file = directory.resolve("snapshot.bin");
+    new GradeSnapshotStore(gradeSnapshot, changeLog, file.toString()).save();
+    assertTrue(Files.exists(file));
+
+    // not in the change log, so only a rebuild would see it
+    jdbcTemplate.update("update grade set score = 90 where id = ?", grade.getId());
+
+    GradeSnapshot restored = emptySnapshot();
+    restarted(restored, file).load();
+    assertEquals(Map.of("COMP0010", 60.0), restored.current().get().moduleAverages());
+  }
+
+  @Test
+  public void testSnapshotIsRebuiltAfterGradesChanged() {
+    Path file = directory.resolve("snapshot.bin");
+    new GradeSnapshotStore(gradeSnapshot, changeLog, file.toString()).save();
+
+    grade.setScore(75);
+    gradeRepository.save(grade);
+
+    GradeSnapshot rebuilt = emptySnapshot();
+    restarted(rebuilt, file).load();
+    assertEquals(Map.of("COMP0010", 75.0), rebuilt.current().get().moduleAverages());
+  }
+
+  @Test
+  public void testUnreadableFileIsIgnored() throws Exception {
+    Path file = directory.resolve("snapshot.bin");
+    Files.write(file, new byte[] {1, 2, 3, 4, 5, 6});
+
+    GradeSnapshot rebuilt = emptySnapshot();
+    restarted(rebuilt, file).load();
+    assertEquals(Map.of("COMP0010", 60.0), rebuilt.current().get().moduleAverages());
+  }
+
+  @Test
+  public void testWithoutFileSnapshotIsRebuiltAndNotSaved() {
+    GradeSnapshot rebuilt = emptySnapshot();
+    GradeSnapshotStore store = new GradeSnapshotStore(rebuilt, changeLog, "");
+    store.load();
+    store.save();
+    assertEquals(1, rebuilt.current().get().size());
+    assertEquals(0, directory.toFile().list().length);
+  }
+}
@@ -0,0 +1,166 @@
+package uk.ac.ucl.comp0010.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+@SpringBootTest
+public class GradeSnapshotTest {
+
+  @Autowired
+  private GradeSnapshot gradeSnapshot;
+
+  @Autowired
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  private Student student;
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+
+    Module module = moduleRepository.save(new Module("COMP0010", "Software Engineering", true));
+    Module unscored = moduleRepository.save(new Module("COMP0020", "Algorithms", false));
+    student = studentRepository.save(new Student("John", "Doe", "johndoe", "john@example.com"));
+    gradeRepository.save(new Grade(60, student, module));
+    gradeRepository.save(new Grade(null, student, unscored));
+    gradeSnapshot.rebuild();
+  }
+
+  @Test
+  public void testRebuildLoadsScoredGrades() {
+    GradeColumns columns = gradeSnapshot.current().get();
+
+    assertEquals(1, columns.size());
+    assertEquals(Map.of("COMP0010", 60.0), columns.moduleAverages());
+  }
+
+  @Test
+  public void testChangesApplyOnlyOnCommit() {
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+
+    transaction.executeWithoutResult(status -> {
+      gradeSnapshot.recordScore(student.getId(), "COMP0010", 90);
+      // not visible before the commit
+      assertEquals(60.0, gradeSnapshot.current().get().moduleAverages().get("COMP0010"));
+    });
+    assertEquals(90.0, gradeSnapshot.current().get().moduleAverages().get("COMP0010"));
+
+    transaction.executeWithoutResult(status -> {
+      gradeSnapshot.recordStudentRemoval(student.getId());
+      status.setRollbackOnly();
+    });
+    assertEquals(1, gradeSnapshot.current().get().size());
+  }
+
+  @Test
+  public void testSnapshotIsBounded() {
+    GradeSnapshot bounded = new GradeSnapshot(gradeRepository, transactionManager, 1);
+    bounded.rebuild();
+    assertEquals(1, bounded.current().get().size());
+
+    // a second grade does not fit, so the snapshot stays unavailable until a rebuild fits
+    bounded.recordScore(student.getId(), "COMP0020", 70);
+    assertTrue(bounded.current().isEmpty());
+    bounded.recordScore(student.getId(), "COMP0020", null);
+    assertTrue(bounded.current().isEmpty());
+
+    Grade grade = gradeRepository.findByStudentIdAndModuleCode(student.getId(), "COMP0020").get();
+    grade.setScore(70);
+    gradeRepository.save(grade);
+    bounded.rebuild();
+    assertTrue(bounded.current().isEmpty());
+
+    gradeRepository.delete(grade);
+    bounded.rebuild();
+    assertEquals(1, bounded.current().get().size());
+  }
+
+  @Test
+  public void testChangesDuringRebuildAreKept() {
+    GradeSnapshot[] snapshot = new GradeSnapshot[1];
+    AtomicBoolean applied = new AtomicBoolean();
+    // another request commits a change while the rebuild reads the grades
+    PlatformTransactionManager writing = new PlatformTransactionManager() {
+      @Override
+      public TransactionStatus getTransaction(TransactionDefinition definition) {
+        TransactionStatus status = transactionManager.getTransaction(definition);
+        Thread writer = new Thread(() -> {
+          snapshot[0].recordScore(student.getId(), "COMP0020", 70);
+          applied.set(true);
+        });
+        writer.start();
+        try {
+          writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return status;
+      }
+
+      @Override
+      public void commit(TransactionStatus status) {
+        transactionManager.commit(status);
+      }
+
+      @Override
+      public void rollback(TransactionStatus status) {
+        transactionManager.rollback(status);
+      }
+    };
+    snapshot[0] = new GradeSnapshot(gradeRepository, writing, 100);
+
+    snapshot[0].rebuild();
+
+    assertTrue(applied.get());
+    assertEquals(Map.of("COMP0010", 60.0, "COMP0020", 70.0),
+        snapshot[0].current().get().moduleAverages());
+  }
+
+  @Test
+  public void testFoldKeepsGrades() {
+    gradeSnapshot.recordScore(student.getId(), "COMP0020", 70);
+    gradeSnapshot.recordStudentRemoval(student.getId());
+    gradeSnapshot.recordScore(student.getId(), "COMP0010", 50);
+
+    gradeSnapshot.fold();
+
+    GradeColumns columns = gradeSnapshot.current().get();
+    assertEquals(1, columns.size());
+    assertEquals(Map.of("COMP0010", 50.0), columns.moduleAverages());
+    assertFalse(columns.hasChanges());
+  }
+}
@@ -0,0 +1,76 @@
+package uk.ac.ucl.comp0010.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import uk.ac.ucl.comp0010.model.Grade;
+import uk.ac.ucl.comp0010.model.Module;
+import uk.ac.ucl.comp0010.model.Student;
+import uk.ac.ucl.comp0010.model.StudentGradeStats;
+import uk.ac.ucl.comp0010.repository.GradeRepository;
+import uk.ac.ucl.comp0010.repository.ModuleRepository;
+import uk.ac.ucl.comp0010.repository.RegistrationRepository;
+import uk.ac.ucl.comp0010.repository.StudentGradeStatsRepository;
+import uk.ac.ucl.comp0010.repository.StudentRepository;
+
+@SpringBootTest
+public class GradeStatsReconcilerTest {
+
+  @Autowired
+  private GradeStatsReconciler reconciler;
+
+  @Autowired
+  private StudentGradeStatsRepository gradeStatsRepository;
+
+  @Autowired
+  private StudentRepository studentRepository;
+
+  @Autowired
+  private ModuleRepository moduleRepository;
+
+  @Autowired
+  private GradeRepository gradeRepository;
+
+  @Autowired
+  private RegistrationRepository registrationRepository;
+
+  private Student student;
+
+  @BeforeEach
+  public void setUp() {
+    registrationRepository.deleteAll();
+    gradeRepository.deleteAll();
+    studentRepository.deleteAll();
+    moduleRepository.deleteAll();
+    gradeStatsRepository.deleteAll();
+
+    Module module1 = moduleRepository.save(new Module("COMP0010", "Software Engineering", true));
+    Module module2 = moduleRepository.save(new Module("COMP0020", "Algorithms", false));
+    student = studentRepository.save(new Student("John", "Doe", "johndoe", "john@example.com"));
+    // written around the controllers, so the totals are never maintained
+    gradeRepository.save(new Grade(60, student, module1));
+    gradeRepository.save(new Grade(90, student, module2));
+  }
+
+  @Test
+  public void testReconcileRepairsDriftedTotals() {
+    gradeStatsRepository.save(new StudentGradeStats(student.getId(), 1, 60, 60, 60));
+    gradeStatsRepository.save(new StudentGradeStats(-1L, 1, 50, 50, 50));
+
+    // one wrong row and one row for a student that does not exist
+    assertEquals(2, reconciler.reconcile());
+
+    StudentGradeStats stats = gradeStatsRepository.findById(student.getId()).get();
+    assertEquals(2, stats.getCount());
+    assertEquals(150, stats.getSum());
+    assertEquals(60, stats.getMin());
+    assertEquals(90, stats.getMax());
+    assertFalse(gradeStatsRepository.existsById(-1L));
+
+    // a second run finds nothing to correct
+    assertEquals(0, reconciler.reconcile());
+  }
+}
@@ -7,18 +7,7 @@ import AddGrade from "./AddGrade";
 
 function GradeRow(props) {
   const { grade } = props;
-  const [student, setStudent] = React.useState();
-  const [module, setModule] = React.useState();
-
-  React.useEffect(() => {
-    axios
-      .get(grade._links.module.href)
-      .then((response) => setModule(response.data));
-
-    axios
-      .get(grade._links.student.href)
-      .then((response) => setStudent(response.data));
-  }, [grade]);
+  const { student, module } = grade;
 
   return (
     <Grid key={grade.id} container style={{ padding: "10px 0" }}>
@@ -45,7 +34,7 @@ function Grades() {
 
   function updateGrades() {
     axios
-      .get(`${API_ENDPOINT}/grades`)
+      .get(`${API_ENDPOINT}/grades?view=embedded`)
       .then((response) => {
         setGrades(response.data._embedded.grades);
       })
@@ -78,7 +67,7 @@ function Grades() {
             </Grid>
           </Grid>
           {grades.map((g) => {
-            return <GradeRow grade={g} />;
+            return <GradeRow key={g.id} grade={g} />;
           })}
         </>
       )}